@@ -0,0 +1,130 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generator of the network files and of the data sets used by the 
+ * benchmarks.
+ * The files follow the template read by the Parser, the weights are random
+ * but generated from a fixed seed so that two runs measure the same model.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ */
+final class BenchmarkModels {
+
+	private static final long SEED = 42;
+
+	private BenchmarkModels() {
+	}
+
+	/**
+	 * Create the network schema with the given layers.
+	 *
+	 * @param	name	network name.
+	 * @param	activationFunction	function used by all the layers.
+	 * @param	units	inputs of the network followed by the outputs of 
+	 * 					each layer.
+	 * @return	the network file content.
+	 */
+	static String schema(String name, String activationFunction, int... units) {
+
+		Random rnd = new Random(SEED);
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(ParserTokens.NETWORK_NAME.toString() + name);
+		for (int l=1; l < units.length; l++) {
+			sb.append("\n");
+			sb.append(ParserTokens.START_LAYER.toString() + " ");
+			sb.append(ParserTokens.NAME.toString() + "layer" + l + " ");
+			sb.append(ParserTokens.ACTIVATION_FUNCTION.toString() + activationFunction + " ");
+			sb.append(ParserTokens.INPUT_UNITS.toString() + units[l-1] + " ");
+			sb.append(ParserTokens.OUTPUT_UNITS.toString() + units[l] + " ");
+			sb.append(ParserTokens.WEIGHTS.toString() + "[");
+			for (int n=0; n < units[l]; n++) {
+				sb.append(n == 0 ? "[" : ",[");
+				/* weights plus threshold */
+				for (int i=0; i <= units[l-1]; i++) {
+					if (i > 0)
+						sb.append(",");
+					sb.append(String.format(Locale.US, "%.4f", 
+											rnd.nextDouble() * 2 - 1));
+				}
+				sb.append("]");
+			}
+			sb.append("] ");
+			sb.append(ParserTokens.END_LAYER.toString());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Write the network schema into a temporary file.
+	 *
+	 * @param	schema	the network file content.
+	 * @return	the created file, deleted when the JVM exits.
+	 * @throws	IOException	on write errors.
+	 */
+	static File write(String schema) throws IOException {
+		File f = File.createTempFile("mynn-bench", ".net");
+		f.deleteOnExit();
+		Files.write(f.toPath(), schema.getBytes(StandardCharsets.UTF_8));
+		return f;
+	}
+
+	/**
+	 * Create and load a network.
+	 *
+	 * @param	activationFunction	function used by all the layers.
+	 * @param	units	inputs of the network followed by the outputs of 
+	 * 					each layer.
+	 * @return	the loaded network.
+	 * @throws	IOException	on write errors.
+	 * @throws	ParserException	on template errors.
+	 */
+	static NeuralNetwork load(String activationFunction, int... units) 
+			throws IOException, ParserException {
+		File f = write(schema("BenchNet", activationFunction, units));
+		return (NeuralNetwork) IReteNeurale.carica(f.getPath());
+	}
+
+	/**
+	 * Build the units array of a network with layers of the same width.
+	 *
+	 * @param	inputs	network inputs.
+	 * @param	width	outputs of the hidden layers.
+	 * @param	layers	number of layers.
+	 * @param	outputs	network outputs.
+	 * @return	units array.
+	 */
+	static int[] units(int inputs, int width, int layers, int outputs) {
+		int[] units = new int[layers + 1];
+		units[0] = inputs;
+		for (int l=1; l < layers; l++)
+			units[l] = width;
+		units[layers] = outputs;
+		return units;
+	}
+
+	/**
+	 * Create a random data set.
+	 *
+	 * @param	rows	number of instances.
+	 * @param	columns	values of each instance.
+	 * @param	seed	random seed.
+	 * @return	the data set.
+	 */
+	static double[][] data(int rows, int columns, long seed) {
+		Random rnd = new Random(seed);
+		double[][] d = new double[rows][columns];
+		for (int r=0; r < rows; r++)
+			for (int c=0; c < columns; c++)
+				d[r][c] = rnd.nextDouble();
+		return d;
+	}
+}
@@ -0,0 +1,29 @@
+package it.uniroma1.lcl.mynn;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark suite.
+ * Runs all the benchmarks (or the ones matching the regular expression given
+ * as first argument) with the GC profiler, so that the allocation rate is 
+ * reported together with the timing.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : 
+							 BenchmarkRunner.class.getPackage().getName() + ".*Benchmark";
+		Options opt = new OptionsBuilder()
+				.include(include)
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(opt).run();
+	}
+}
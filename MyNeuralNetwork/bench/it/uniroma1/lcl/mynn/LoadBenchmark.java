@@ -0,0 +1,65 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Model loading and serialization benchmark: Parser and IReteNeurale.carica
+ * on generated network files, NeuralNetwork.toString on the loaded model.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadBenchmark {
+
+	/* small: 2-2-1, large: 256-256-256-10 */
+	@Param({"small", "large"})
+	public String model;
+
+	private String filename;
+	private IReteNeurale network;
+
+	@Setup
+	public void setup() throws Exception {
+		int[] units = model.equals("small") ? 
+				BenchmarkModels.units(2, 2, 2, 1) : 
+				BenchmarkModels.units(256, 256, 3, 10);
+		File f = BenchmarkModels.write(
+				BenchmarkModels.schema("BenchNet", "Logistic", units));
+		filename = f.getPath();
+		network = IReteNeurale.carica(filename);
+	}
+
+	@Benchmark
+	public Parser parse() throws ParserException {
+		return new Parser(filename);
+	}
+
+	@Benchmark
+	public IReteNeurale carica() throws ParserException {
+		return IReteNeurale.carica(filename);
+	}
+
+	@Benchmark
+	public String serialize() {
+		return network.toString();
+	}
+}
@@ -0,0 +1,69 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Inference benchmark: NeuralNetwork.process on a single instance and on a
+ * batch of instances, for small and wide layers.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessBenchmark {
+
+	private static final int BATCH = 64;
+
+	@Param({"2", "16", "128"})
+	public int width;
+
+	@Param({"1", "3"})
+	public int layers;
+
+	@Param({"Logistic", "Step"})
+	public String activationFunction;
+
+	private NeuralNetwork network;
+	private double[] single;
+	private double[][] batch;
+
+	@Setup
+	public void setup() throws Exception {
+		network = BenchmarkModels.load(activationFunction, 
+				BenchmarkModels.units(width, width, layers, width));
+		single = BenchmarkModels.data(1, width, 1)[0];
+		batch = BenchmarkModels.data(BATCH, width, 2);
+	}
+
+	@Benchmark
+	public double[] processSingle() {
+		return network.process(single);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void processBatch(Blackhole bh) {
+		for (int i=0; i < batch.length; i++) {
+			bh.consume(network.process(batch[i]));
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Training benchmark: a single trainIstanza and a full epoch over a 
+ * training set.
+ * The epoch is the body of the NeuralNetwork.train loop, train itself runs
+ * until the errors threshold is reached and can't be measured per call.
+ * The network is reloaded for each iteration so that the weights don't 
+ * drift too far from the initial model.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TrainBenchmark {
+
+	private static final int SET_SIZE = 32;
+
+	@Param({"2", "16", "64"})
+	public int width;
+
+	@Param({"1", "2"})
+	public int layers;
+
+	private NeuralNetwork network;
+	private double[][] inputs;
+	private double[][] outputs;
+
+	@Setup(Level.Iteration)
+	public void setup() throws Exception {
+		network = BenchmarkModels.load("Logistic", 
+				BenchmarkModels.units(width, width, layers, width));
+		inputs = BenchmarkModels.data(SET_SIZE, width, 1);
+		outputs = BenchmarkModels.data(SET_SIZE, width, 2);
+	}
+
+	@Benchmark
+	public double trainIstanza() {
+		return network.trainIstanza(inputs[0], outputs[0]);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SET_SIZE)
+	public double trainEpoch() {
+		double errors = 0;
+		for (int x=0; x < inputs.length; x++) {
+			errors += network.trainIstanza(inputs[x], outputs[x]);
+		}
+		return errors;
+	}
+}
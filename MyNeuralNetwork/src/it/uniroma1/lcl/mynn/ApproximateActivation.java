@@ -0,0 +1,98 @@
+package it.uniroma1.lcl.mynn;
+
+/**
+ * Table interpolated "logistic" and "tanh" functions.
+ * The logistic function is sampled on [-16, 16] every 1/32 and the value
+ * is linearly interpolated between the two nearest samples, out of the
+ * range the function is saturated to the first or the last sample.
+ * The tanh function is derived from the same table, being
+ * tanh(x) = 2 logistic(2x) - 1.
+ * The maximum absolute error, over the whole double range, is
+ * MAX_ERROR for the functions and MAX_ERROR_F1 for the derivates computed
+ * from the approximated values.
+ * The functions are available to the layers as the "FastLogistic" and
+ * "FastTanh" activation functions.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			Neuron#fastlogistic(double)
+ * @see			Neuron#fasttanh(double)
+ */
+public final class ApproximateActivation {
+
+	/**
+	 * Maximum absolute error of logistic and tanh.
+	 */
+	public static final double MAX_ERROR = 5e-5;
+
+	/**
+	 * Maximum absolute error of the derivates.
+	 */
+	public static final double MAX_ERROR_F1 = 1e-4;
+
+	private static final double RANGE = 16;
+	private static final double SAMPLES_PER_UNIT = 32;
+	private static final double[] TABLE = new double[(int) (2 * RANGE * SAMPLES_PER_UNIT) + 1];
+
+	static {
+		for (int i=0; i < TABLE.length; i++) {
+			double x = i / SAMPLES_PER_UNIT - RANGE;
+			TABLE[i] = 1 / (1 + Math.exp(-x));
+		}
+	}
+
+	private ApproximateActivation() {
+	}
+
+	/**
+	 * Calculate the approximated "logistic" function.
+	 *
+	 * @param	x	input.
+	 * @return	output.
+	 */
+	public static double logistic(double x) {
+		if (x != x)
+			return x;
+		if (x <= -RANGE)
+			return TABLE[0];
+		if (x >= RANGE)
+			return TABLE[TABLE.length - 1];
+
+		double u = (x + RANGE) * SAMPLES_PER_UNIT;
+		int i = (int) u;
+		if (i >= TABLE.length - 1)
+			return TABLE[TABLE.length - 1];
+		double a = TABLE[i];
+		return a + (u - i) * (TABLE[i + 1] - a);
+	}
+
+	/**
+	 * Calculate the approximated "tanh" function.
+	 *
+	 * @param	x	input.
+	 * @return	output.
+	 */
+	public static double tanh(double x) {
+		return 2 * logistic(2 * x) - 1;
+	}
+
+	/**
+	 * Calculate the "logistic" derivate from the function value.
+	 *
+	 * @param	s	logistic value.
+	 * @return	derivate.
+	 */
+	public static double logisticF1(double s) {
+		return s * (1 - s);
+	}
+
+	/**
+	 * Calculate the "tanh" derivate from the function value.
+	 *
+	 * @param	t	tanh value.
+	 * @return	derivate.
+	 */
+	public static double tanhF1(double t) {
+		return 1 - t * t;
+	}
+}
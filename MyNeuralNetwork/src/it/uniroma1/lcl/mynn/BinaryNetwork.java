@@ -0,0 +1,360 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Locale;
+
+/**
+ * Bit-packed execution of a network with "step" layers.
+ * The outputs of a step layer are only 0 and 1: they are packed into long
+ * bitsets, 64 for each word, and the next layer reads them as bits. The
+ * same happens for the network inputs when all of them are 0 or 1.
+ * A neuron reading bits sums only the weights of the set bits. When its
+ * weights are binary, each one is +A, -A or 0, the sum is computed as
+ * A * (bitCount(X and P) - bitCount(X and N)) where P and N are the masks of
+ * the positive and of the negative weights.
+ * Without weights binarization only the neurons with binary weights and A
+ * power of two (exact integer sums) use the bitCount, the outputs are the
+ * same of the source network. With weights binarization all the neurons
+ * reading bits use sign(W) * mean(|W|): getReport shows the weights
+ * changed by the conversion and compare the instances with different
+ * outputs.
+ * The converted network is immutable and it can't be trained.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			NetworkCompiler class.
+ */
+public class BinaryNetwork implements IReteNeurale {
+
+	private static final Neuron FUNCTIONS = new Neuron(new double[0], new double[] {0});
+	/* the approximated derivates keep the last input into the neuron */
+	private static final ThreadLocal<Neuron> CACHED_FUNCTIONS = 
+			ThreadLocal.withInitial(() -> new Neuron(new double[0], new double[] {0}));
+
+	private static class BinaryLayer {
+		String name;
+		String activationFunction;
+		int inputs;
+		int outputs;
+		double[][] weights;
+		double[] thresholds;
+		/* neurons using the bitCount */
+		boolean[] binary;
+		long[][] positive;
+		long[][] negative;
+		double[] scale;
+		double maxWeightError;
+		int binaryNeurons;
+	}
+
+	private final String name;
+	private final BinaryLayer[] layers;
+	private final boolean binarizeWeights;
+
+	private BinaryNetwork(String name, BinaryLayer[] layers, boolean binarizeWeights) {
+		this.name = name;
+		this.layers = layers;
+		this.binarizeWeights = binarizeWeights;
+	}
+
+	/**
+	 * Convert a network to the bit-packed execution.
+	 *
+	 * @param	nn	the network to convert.
+	 * @param	binarizeWeights	true to binarize the weights of all the
+	 * 			neurons reading bits, false to keep the same outputs.
+	 * @return	the converted network.
+	 * @throws	ActivateFunctionException	on unknown activation functions.
+	 */
+	public static BinaryNetwork convert(NeuralNetwork nn, boolean binarizeWeights)
+			throws ActivateFunctionException {
+
+		LinkedList<Layer> source = nn.getLayers();
+		BinaryLayer[] layers = new BinaryLayer[source.size()];
+		for (int k=0; k < layers.length; k++) {
+			Layer l = source.get(k);
+			String af = l.getActivationFunction().toLowerCase();
+			try {
+				Neuron.class.getMethod(af, double.class);
+			} catch (NoSuchMethodException e) {
+				throw new ActivateFunctionException(l.getActivationFunction() +
+													" method not found into the object class");
+			}
+
+			BinaryLayer b = new BinaryLayer();
+			b.name = l.getName();
+			b.activationFunction = af;
+			b.inputs = l.getNeuronInputUnits_j7();
+			b.outputs = l.getOutputUnits();
+			b.weights = new double[b.outputs][];
+			b.thresholds = new double[b.outputs];
+			b.binary = new boolean[b.outputs];
+			b.positive = new long[b.outputs][];
+			b.negative = new long[b.outputs][];
+			b.scale = new double[b.outputs];
+
+			/* the first layer may receive bits, the others only from a step
+			 * layer */
+			boolean bitsInput = k == 0 || layers[k - 1].activationFunction.equals("step");
+			for (int n=0; n < b.outputs; n++) {
+				b.weights[n] = l.getNeuron(n).getWeights();
+				b.thresholds[n] = l.getNeuron(n).getThreshold();
+				if (bitsInput)
+					binarize(b, n, binarizeWeights);
+			}
+			layers[k] = b;
+		}
+		return new BinaryNetwork(nn.getNome(), layers, binarizeWeights);
+	}
+
+	private static void binarize(BinaryLayer b, int n, boolean force) {
+
+		double[] w = b.weights[n];
+		double sum = 0;
+		int nonZero = 0;
+		for (double v : w) {
+			if (v != 0) {
+				sum += Math.abs(v);
+				nonZero++;
+			}
+		}
+		double scale = nonZero == 0 ? 0 : sum / nonZero;
+
+		double error = 0;
+		for (double v : w) {
+			if (v != 0)
+				error = Math.max(error, Math.abs(Math.abs(v) - scale));
+		}
+		/* integer multiples of a power of two are exact */
+		boolean exact = error == 0 &&
+						(scale == 0 || scale == Math.scalb(1.0, Math.getExponent(scale)));
+		if (force == false && exact == false)
+			return;
+
+		long[] positive = new long[words(w.length)];
+		long[] negative = new long[words(w.length)];
+		for (int i=0; i < w.length; i++) {
+			if (w[i] > 0)
+				positive[i >>> 6] |= 1L << i;
+			else if (w[i] < 0)
+				negative[i >>> 6] |= 1L << i;
+		}
+		b.binary[n] = true;
+		b.positive[n] = positive;
+		b.negative[n] = negative;
+		b.scale[n] = scale;
+		b.maxWeightError = Math.max(b.maxWeightError, error);
+		b.binaryNeurons++;
+	}
+
+	private static int words(int bits) {
+		return (bits + 63) >>> 6;
+	}
+
+	/* the bits of the values, null if a value isn't 0 or 1 */
+	private static long[] pack(double[] values) {
+		long[] bits = new long[words(values.length)];
+		for (int i=0; i < values.length; i++) {
+			if (values[i] == 1)
+				bits[i >>> 6] |= 1L << i;
+			else if (values[i] != 0)
+				return null;
+		}
+		return bits;
+	}
+
+	private static double[] unpack(long[] bits, int size) {
+		double[] values = new double[size];
+		for (int i=0; i < size; i++)
+			values[i] = (bits[i >>> 6] >>> i) & 1;
+		return values;
+	}
+
+	private static double sum(BinaryLayer l, int n, long[] bits) {
+		if (l.binary[n]) {
+			long count = 0;
+			long[] p = l.positive[n];
+			long[] m = l.negative[n];
+			for (int w=0; w < bits.length; w++)
+				count += Long.bitCount(bits[w] & p[w]) - Long.bitCount(bits[w] & m[w]);
+			return l.scale[n] * count;
+		}
+
+		/* the weights of the set bits, in the same order of the dense sum */
+		double[] weights = l.weights[n];
+		double sum = 0;
+		for (int w=0; w < bits.length; w++) {
+			long word = bits[w];
+			while (word != 0) {
+				sum += weights[(w << 6) + Long.numberOfTrailingZeros(word)];
+				word &= word - 1;
+			}
+		}
+		return sum;
+	}
+
+	private static double sum(BinaryLayer l, int n, double[] values) {
+		double[] weights = l.weights[n];
+		double sum = 0;
+		for (int i=0; i < weights.length; i++)
+			sum += weights[i] * values[i];
+		return sum;
+	}
+
+	/* shared with HalfPrecisionNetwork */
+	static double activate(String af, double x) {
+		switch (af) {
+		case "identity":
+		case "softmax":
+			return x;
+		case "relu":
+			return FUNCTIONS.relu(x);
+		case "logistic":
+			return FUNCTIONS.logistic(x);
+		case "tanh":
+			return FUNCTIONS.tanh(x);
+		case "fastlogistic":
+			return ApproximateActivation.logistic(x);
+		case "fasttanh":
+			return ApproximateActivation.tanh(x);
+		default:
+			/* derivates and functions added to the neuron */
+			try {
+				return (double) Neuron.class.getMethod(af, double.class).invoke(
+						CACHED_FUNCTIONS.get(), x);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException(af + " invocation failed", e);
+			}
+		}
+	}
+
+	/* same steps of Layer.activateLayer */
+	static void softmax(double[] values) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (double v : values)
+			max = Math.max(max, v);
+		double sum = 0;
+		for (double v : values)
+			sum += Math.exp(v - max);
+		double logSumExp = max + Math.log(sum);
+		for (int i=0; i < values.length; i++)
+			values[i] = Math.exp(values[i] - logSumExp);
+	}
+
+	/**
+	 * Process the input data, the outputs of the step layers are passed as
+	 * bits to the next layer.
+	 *
+	 * @param	values	input data for the network.
+	 * @return	the network output.
+	 */
+	@Override
+	public double[] process(double[] values) {
+
+		double[] dense = values;
+		long[] bits = pack(values);
+
+		for (BinaryLayer l : layers) {
+			if (l.activationFunction.equals("step")) {
+				long[] out = new long[words(l.outputs)];
+				for (int n=0; n < l.outputs; n++) {
+					double x = (bits != null ? sum(l, n, bits) : sum(l, n, dense)) + l.thresholds[n];
+					/* step: x < 0 ? 0 : 1 */
+					if (!(x < 0))
+						out[n >>> 6] |= 1L << n;
+				}
+				bits = out;
+				dense = null;
+			} else {
+				double[] out = new double[l.outputs];
+				for (int n=0; n < l.outputs; n++) {
+					double x = (bits != null ? sum(l, n, bits) : sum(l, n, dense)) + l.thresholds[n];
+					out[n] = activate(l.activationFunction, x);
+				}
+				if (l.activationFunction.equals("softmax"))
+					softmax(out);
+				dense = out;
+				bits = null;
+			}
+		}
+		return dense != null ? dense : unpack(bits, layers[layers.length - 1].outputs);
+	}
+
+	/**
+	 * Compare the outputs with the source network.
+	 *
+	 * @param	source	the source network.
+	 * @param	inputs	the instances to process.
+	 * @return	the indexes of the instances with different outputs.
+	 */
+	public int[] compare(IReteNeurale source, double[][] inputs) {
+		int[] different = new int[inputs.length];
+		int count = 0;
+		for (int i=0; i < inputs.length; i++) {
+			if (Arrays.equals(source.process(inputs[i]), process(inputs[i])) == false)
+				different[count++] = i;
+		}
+		return Arrays.copyOf(different, count);
+	}
+
+	/**
+	 * Return the conversion report: for each layer the neurons using the
+	 * bitCount and the maximum change of a weight due to the binarization.
+	 *
+	 * @return	the report table.
+	 */
+	public String getReport() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.US, "%-12s %-12s %10s %10s %14s%n",
+				"layer", "function", "neurons", "bitCount", "weight error"));
+		for (BinaryLayer l : layers) {
+			sb.append(String.format(Locale.US, "%-12s %-12s %10d %10d %14.6g%n",
+					l.name, l.activationFunction, l.outputs, l.binaryNeurons,
+					l.maxWeightError));
+		}
+		if (binarizeWeights)
+			sb.append("weights binarized, the outputs may differ from the source network");
+		return sb.toString().trim();
+	}
+
+	/**
+	 * Return the current object, the converted network has no processing state.
+	 *
+	 * @return	the current object.
+	 */
+	@Override
+	public IReteNeurale replica() {
+		return this;
+	}
+
+	/**
+	 * The converted network can't be trained.
+	 *
+	 * @throws	UnsupportedOperationException	always.
+	 */
+	@Override
+	public double trainIstanza(double[] values, double[] output) {
+		throw new UnsupportedOperationException("Binary network " + name + " can't be trained");
+	}
+
+	/**
+	 * The converted network can't be trained.
+	 *
+	 * @throws	UnsupportedOperationException	always.
+	 */
+	@Override
+	public void train(double[][] inputs, double[][] outputs) {
+		throw new UnsupportedOperationException("Binary network " + name + " can't be trained");
+	}
+
+	/**
+	 * Return the network name.
+	 *
+	 * @return	network name
+	 */
+	@Override
+	public String getNome() {
+		return name;
+	}
+}
@@ -0,0 +1,284 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded memoization of the process calls of a network.
+ * The outputs are kept by input vector, two vectors are the same key when
+ * all their values have the same bits. On a hit the stored output is
+ * returned without processing the network.
+ * The cache is split into segments, each of them is an LRU map guarded by
+ * its own lock, so concurrent lookups of different keys rarely contend.
+ * Each entry keeps the version of the weights used to compute it: after a
+ * training step (or a weightsChanged notification) the old entries are no
+ * longer valid and they are recomputed on the next request.
+ * The misses are processed by each thread on its own copy of the network
+ * (see NeuralNetwork.copy), rebuilt when the weights version changes, so
+ * concurrent misses don't share the state of the layers. The training
+ * isn't thread safe and it mustn't run together with the process calls.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			NeuralNetwork#getVersion()
+ */
+public class CachedNetwork implements IReteNeurale {
+
+	private static final int MAX_SEGMENTS = 16;
+	private static final int MIN_SEGMENT_CAPACITY = 64;
+
+	private static class Key {
+		private final double[] values;
+		private final int hash;
+
+		Key(double[] values) {
+			/* the bits of small values like 0 and 1 are all into the high
+			 * word, the hash is mixed (murmur3 finalizer) to spread them */
+			int h = Arrays.hashCode(values);
+			h ^= h >>> 16;
+			h *= 0x85ebca6b;
+			h ^= h >>> 13;
+			h *= 0xc2b2ae35;
+			h ^= h >>> 16;
+			this.values = values;
+			this.hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			/* Arrays.equals compares the doubles by bits */
+			return o instanceof Key && ((Key) o).hash == hash &&
+				   Arrays.equals(((Key) o).values, values);
+		}
+	}
+
+	/* copy of the network processed by a thread */
+	private static class Replica {
+		private final NeuralNetwork nn;
+		private final long version;
+
+		Replica(NeuralNetwork nn, long version) {
+			this.nn = nn.copy();
+			this.version = version;
+		}
+	}
+
+	private static class CachedOutput {
+		private final double[] output;
+		private final long version;
+
+		CachedOutput(double[] output, long version) {
+			this.output = output;
+			this.version = version;
+		}
+	}
+
+	private class Segment extends LinkedHashMap<Key, CachedOutput> {
+
+		private static final long serialVersionUID = 1L;
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, CachedOutput> eldest) {
+			if (size() <= capacity)
+				return false;
+			evictions.increment();
+			return true;
+		}
+	}
+
+	private final NeuralNetwork nn;
+	private final Segment[] segments;
+	private final int segmentMask;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final ThreadLocal<Replica> replicas = new ThreadLocal<Replica>();
+
+	/**
+	 * Create the cache in front of a network.
+	 *
+	 * @param	nn	the network to cache.
+	 * @param	capacity	maximum number of kept outputs.
+	 */
+	public CachedNetwork(NeuralNetwork nn, int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("invalid cache capacity " + capacity);
+
+		/* small caches keep a single segment, so the LRU order is exact */
+		int n = 1;
+		while (n < MAX_SEGMENTS && n * 2 * MIN_SEGMENT_CAPACITY <= capacity)
+			n <<= 1;
+		this.nn = nn;
+		this.segments = new Segment[n];
+		for (int i=0; i < n; i++) {
+			/* the first segments take the remainder */
+			segments[i] = new Segment(capacity / n + (i < capacity % n ? 1 : 0));
+		}
+		this.segmentMask = n - 1;
+	}
+
+	private Segment segment(Key key) {
+		return segments[(key.hash >>> 16) & segmentMask];
+	}
+
+	/**
+	 * Return the output of the network for the input data, from the cache
+	 * when available.
+	 *
+	 * @param	values	input data for the network.
+	 * @return	a copy of the network output.
+	 */
+	@Override
+	public double[] process(double[] values) {
+
+		Key key = new Key(values);
+		Segment s = segment(key);
+		long version = nn.getVersion();
+		CachedOutput e;
+
+		synchronized (s) {
+			e = s.get(key);
+		}
+		if (e != null && e.version == version) {
+			hits.increment();
+			return Arrays.copyOf(e.output, e.output.length);
+		}
+
+		misses.increment();
+		Replica r = replicas.get();
+		if (r == null || r.version != version) {
+			r = new Replica(nn, version);
+			replicas.set(r);
+		}
+		double[] output = r.nn.process(values);
+		if (output == null)
+			return null;
+
+		/* the key keeps its own copy of the input */
+		Key stored = new Key(Arrays.copyOf(values, values.length));
+		synchronized (s) {
+			s.put(stored, new CachedOutput(Arrays.copyOf(output, output.length), version));
+		}
+		return output;
+	}
+
+	/**
+	 * Train the cached network, the cached outputs are invalidated.
+	 *
+	 * @param	values	inputs data to elaborate.
+	 * @param	output	expected output (training set).
+	 * @return	sum of errors.
+	 */
+	@Override
+	public double trainIstanza(double[] values, double[] output) {
+		return nn.trainIstanza(values, output);
+	}
+
+	/**
+	 * Train the cached network, the cached outputs are invalidated.
+	 *
+	 * @param	inputs	inputs data to elaborate.
+	 * @param	outputs	expected output (training set).
+	 */
+	@Override
+	public void train(double[][] inputs, double[][] outputs) {
+		nn.train(inputs, outputs);
+	}
+
+	/**
+	 * Return the name of the cached network.
+	 *
+	 * @return	network name
+	 */
+	@Override
+	public String getNome() {
+		return nn.getNome();
+	}
+
+	/**
+	 * Return the cached network.
+	 *
+	 * @return	network object.
+	 */
+	public NeuralNetwork getNetwork() {
+		return nn;
+	}
+
+	/**
+	 * Remove all the cached outputs, the statistics are kept.
+	 */
+	public void clear() {
+		for (Segment s : segments) {
+			synchronized (s) {
+				s.clear();
+			}
+		}
+	}
+
+	/**
+	 * Return the number of cached outputs, including the invalid ones not
+	 * yet replaced.
+	 *
+	 * @return	entries counter.
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment s : segments) {
+			synchronized (s) {
+				size += s.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Return the number of requests served by the cache.
+	 *
+	 * @return	hits counter.
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Return the number of requests processed by the network.
+	 *
+	 * @return	misses counter.
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Return the number of outputs removed to respect the capacity.
+	 *
+	 * @return	evictions counter.
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Return the ratio between hits and requests.
+	 *
+	 * @return	hit rate, zero without requests.
+	 */
+	public double getHitRate() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total == 0 ? 0 : (double) h / total;
+	}
+}
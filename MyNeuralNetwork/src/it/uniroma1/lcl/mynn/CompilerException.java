@@ -0,0 +1,23 @@
+package it.uniroma1.lcl.mynn;
+
+/**
+ * The exception class to raise and catch errors during the compilation of a
+ * network into a dedicated class.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ */
+public class CompilerException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Exception halted by the NetworkCompiler  
+	 *
+	 * @param  errMsg error description developed inside the compiler
+	 * @see    NetworkCompiler class
+	 */
+	public CompilerException(String errMsg) {
+		super(errMsg);
+	}
+}
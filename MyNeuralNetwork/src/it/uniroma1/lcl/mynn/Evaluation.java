@@ -0,0 +1,283 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The metrics of a network on a dataset.
+ * The dataset is split into ranges processed by the tasks of the common
+ * ForkJoin pool: each task adds its instances to its own partial
+ * evaluation, then the partial evaluations are merged. Each task takes a
+ * replica of the network (see IReteNeurale.replica) from the idle ones of
+ * the evaluation, or creates it, and gives it back at its end: the pool
+ * threads keep no replica after the evaluation. The networks without
+ * replica are evaluated by the calling thread.
+ * No object is allocated for each instance by the evaluation, only the
+ * outputs returned by the network process.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			IReteNeurale#evaluate(double[][], double[][], Metric...)
+ */
+public class Evaluation {
+
+	/* log(0) of a vanishing probability */
+	private static final double MIN_PROBABILITY = 1e-15;
+	/* minimum instances of a task */
+	private static final int MIN_SPLIT = 256;
+
+	private final EnumSet<Metric> metrics;
+	private long count;
+	private long values;
+	private double loss;
+	private double absoluteError;
+	private double squaredError;
+	private long correct;
+	private final long[][] confusion;
+
+	private Evaluation(EnumSet<Metric> metrics, int classes) {
+		this.metrics = metrics;
+		this.confusion = metrics.contains(Metric.CONFUSION) ? new long[classes][classes] : null;
+	}
+
+	private static class Task extends RecursiveTask<Evaluation> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final IReteNeurale rete;
+		private final Queue<IReteNeurale> replicas;
+		private final double[][] inputs;
+		private final double[][] outputs;
+		private final EnumSet<Metric> metrics;
+		private final int classes;
+		private final int from;
+		private final int to;
+		private final int split;
+
+		Task(IReteNeurale rete, Queue<IReteNeurale> replicas, double[][] inputs, 
+			 double[][] outputs, EnumSet<Metric> metrics, int classes, int from, 
+			 int to, int split) {
+			this.rete = rete;
+			this.replicas = replicas;
+			this.inputs = inputs;
+			this.outputs = outputs;
+			this.metrics = metrics;
+			this.classes = classes;
+			this.from = from;
+			this.to = to;
+			this.split = split;
+		}
+
+		@Override
+		protected Evaluation compute() {
+			if (to - from <= split) {
+				Evaluation e = new Evaluation(metrics, classes);
+				IReteNeurale replica = replicas.poll();
+				if (replica == null)
+					replica = rete.replica();
+				for (int i=from; i < to; i++)
+					e.add(replica.process(inputs[i]), outputs[i]);
+				replicas.offer(replica);
+				return e;
+			}
+			int middle = (from + to) >>> 1;
+			Task left = new Task(rete, replicas, inputs, outputs, metrics, classes, from, middle, split);
+			Task right = new Task(rete, replicas, inputs, outputs, metrics, classes, middle, to, split);
+			left.fork();
+			Evaluation e = right.compute();
+			e.merge(left.join());
+			return e;
+		}
+	}
+
+	/**
+	 * Evaluate the network on the dataset.
+	 *
+	 * @param	rete	the network.
+	 * @param	inputs	inputs data to elaborate.
+	 * @param	outputs	expected outputs.
+	 * @param	metrics	the metrics to compute, all if none is given.
+	 * @return	the evaluation.
+	 */
+	static Evaluation evaluate(IReteNeurale rete, double[][] inputs, double[][] outputs,
+							   Metric... metrics) {
+
+		if (inputs.length != outputs.length)
+			throw new IllegalArgumentException("Dataset with " + inputs.length +
+											   " inputs and " + outputs.length + " outputs");
+		EnumSet<Metric> set = metrics.length == 0 ? EnumSet.allOf(Metric.class) :
+													EnumSet.copyOf(Arrays.asList(metrics));
+		/* a single output is a binary classification */
+		int classes = outputs.length == 0 ? 0 : Math.max(2, outputs[0].length);
+
+		IReteNeurale replica = rete.replica();
+		if (replica == null) {
+			Evaluation e = new Evaluation(set, classes);
+			for (int i=0; i < inputs.length; i++)
+				e.add(rete.process(inputs[i]), outputs[i]);
+			return e;
+		}
+
+		/* at most a replica for each running task, dropped with the queue */
+		Queue<IReteNeurale> replicas = new ConcurrentLinkedQueue<IReteNeurale>();
+		replicas.offer(replica);
+		int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		int split = Math.max(MIN_SPLIT, inputs.length / (parallelism * 4));
+		return ForkJoinPool.commonPool().invoke(
+				new Task(rete, replicas, inputs, outputs, set, classes, 0, inputs.length, split));
+	}
+
+	private void add(double[] out, double[] expected) {
+		count++;
+		values += out.length;
+		for (int i=0; i < out.length; i++) {
+			double d = out[i] - expected[i];
+			absoluteError += Math.abs(d);
+			squaredError += d * d;
+		}
+
+		if (metrics.contains(Metric.LOSS)) {
+			if (out.length == 1) {
+				/* binary cross-entropy */
+				double y = Math.min(Math.max(out[0], MIN_PROBABILITY), 1 - MIN_PROBABILITY);
+				loss -= expected[0] * Math.log(y) + (1 - expected[0]) * Math.log(1 - y);
+			} else {
+				for (int i=0; i < out.length; i++) {
+					if (expected[i] != 0)
+						loss -= expected[i] * Math.log(Math.max(out[i], MIN_PROBABILITY));
+				}
+			}
+		}
+
+		if (metrics.contains(Metric.ACCURACY) || confusion != null) {
+			int predicted = classOf(out);
+			int actual = classOf(expected);
+			if (predicted == actual)
+				correct++;
+			if (confusion != null)
+				confusion[actual][predicted]++;
+		}
+	}
+
+	private static int classOf(double[] values) {
+		if (values.length == 1)
+			return values[0] >= 0.5 ? 1 : 0;
+		int max = 0;
+		for (int i=1; i < values.length; i++) {
+			if (values[i] > values[max])
+				max = i;
+		}
+		return max;
+	}
+
+	private void merge(Evaluation other) {
+		count += other.count;
+		values += other.values;
+		loss += other.loss;
+		absoluteError += other.absoluteError;
+		squaredError += other.squaredError;
+		correct += other.correct;
+		if (confusion != null) {
+			for (int i=0; i < confusion.length; i++) {
+				for (int j=0; j < confusion[i].length; j++)
+					confusion[i][j] += other.confusion[i][j];
+			}
+		}
+	}
+
+	private double metric(Metric m, double sum, long n) {
+		return metrics.contains(m) ? sum / n : Double.NaN;
+	}
+
+	/**
+	 * Return the number of evaluated instances.
+	 *
+	 * @return	instances counter.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Return the mean cross-entropy, binary for a single output.
+	 *
+	 * @return	the loss, NaN if not computed.
+	 */
+	public double getLoss() {
+		return metric(Metric.LOSS, loss, count);
+	}
+
+	/**
+	 * Return the fraction of the instances with the expected class.
+	 *
+	 * @return	the accuracy, NaN if not computed.
+	 */
+	public double getAccuracy() {
+		return metric(Metric.ACCURACY, correct, count);
+	}
+
+	/**
+	 * Return the mean absolute error of the outputs.
+	 *
+	 * @return	the MAE, NaN if not computed.
+	 */
+	public double getMae() {
+		return metric(Metric.MAE, absoluteError, values);
+	}
+
+	/**
+	 * Return the mean squared error of the outputs.
+	 *
+	 * @return	the MSE, NaN if not computed.
+	 */
+	public double getMse() {
+		return metric(Metric.MSE, squaredError, values);
+	}
+
+	/**
+	 * Return the confusion matrix: the element [i][j] counts the instances
+	 * of the class i classified as j.
+	 *
+	 * @return	a copy of the matrix, null if not computed.
+	 */
+	public long[][] getConfusionMatrix() {
+		if (confusion == null)
+			return null;
+		long[][] copy = new long[confusion.length][];
+		for (int i=0; i < confusion.length; i++)
+			copy[i] = Arrays.copyOf(confusion[i], confusion[i].length);
+		return copy;
+	}
+
+	/**
+	 * Print the computed metrics and the confusion matrix.
+	 *
+	 * @return	the evaluation report.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.US, "%-10s %d%n", "instances", count));
+		if (metrics.contains(Metric.LOSS))
+			sb.append(String.format(Locale.US, "%-10s %.6f%n", "loss", getLoss()));
+		if (metrics.contains(Metric.ACCURACY))
+			sb.append(String.format(Locale.US, "%-10s %.6f%n", "accuracy", getAccuracy()));
+		if (metrics.contains(Metric.MAE))
+			sb.append(String.format(Locale.US, "%-10s %.6f%n", "mae", getMae()));
+		if (metrics.contains(Metric.MSE))
+			sb.append(String.format(Locale.US, "%-10s %.6f%n", "mse", getMse()));
+		if (confusion != null) {
+			for (long[] row : confusion) {
+				for (long c : row)
+					sb.append(String.format(Locale.US, "%10d", c));
+				sb.append(String.format("%n"));
+			}
+		}
+		return sb.toString().trim();
+	}
+}
@@ -0,0 +1,451 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.Locale;
+
+/**
+ * Network with the weights and the thresholds stored as 16 bits floats,
+ * a quarter of the memory of the double values.
+ * Two formats are available: FLOAT16 (IEEE 754 binary16, 11 bits of
+ * precision, values up to 65504) and BFLOAT16 (the high half of a float,
+ * 8 bits of precision, the same range of a float). The values are expanded
+ * on the fly by the dot product, FLOAT16 with a table of the 65536 values.
+ * The same encoding is used by save and load, the file is about a quarter
+ * of a file with the double values.
+ * The network is immutable and it can't be trained: toNeuralNetwork
+ * expands it to a trainable network.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			BinaryNetwork class.
+ */
+public class HalfPrecisionNetwork implements IReteNeurale {
+
+	/**
+	 * The 16 bits formats.
+	 */
+	public enum Format {
+		FLOAT16,
+		BFLOAT16
+	}
+
+	/* "JNNH" */
+	private static final int MAGIC = 0x4A4E4E48;
+	private static final int FILE_FORMAT = 1;
+
+	/* the float value of each binary16 */
+	private static final float[] FLOAT16_VALUES = new float[1 << 16];
+
+	static {
+		for (int h=0; h < FLOAT16_VALUES.length; h++)
+			FLOAT16_VALUES[h] = float16ToFloat((short) h);
+	}
+
+	private static class HalfLayer {
+		String name;
+		String activationFunction;
+		int inputs;
+		int outputs;
+		/* neuron by neuron, the weights and then the threshold */
+		short[] parameters;
+	}
+
+	private final String name;
+	private final Format format;
+	private final HalfLayer[] layers;
+	private final double maxWeightError;
+
+	private HalfPrecisionNetwork(String name, Format format, HalfLayer[] layers,
+								 double maxWeightError) {
+		this.name = name;
+		this.format = format;
+		this.layers = layers;
+		this.maxWeightError = maxWeightError;
+	}
+
+	/**
+	 * Convert a network to the 16 bits storage.
+	 *
+	 * @param	nn	the network to convert.
+	 * @param	format	the 16 bits format.
+	 * @return	the converted network.
+	 * @throws	ActivateFunctionException	on unknown activation functions.
+	 */
+	public static HalfPrecisionNetwork convert(NeuralNetwork nn, Format format)
+			throws ActivateFunctionException {
+
+		LinkedList<Layer> source = nn.getLayers();
+		HalfLayer[] layers = new HalfLayer[source.size()];
+		double maxError = 0;
+		for (int k=0; k < layers.length; k++) {
+			Layer l = source.get(k);
+			HalfLayer h = new HalfLayer();
+			h.name = l.getName();
+			h.activationFunction = activationFunction(l.getActivationFunction());
+			h.inputs = l.getNeuronInputUnits_j7();
+			h.outputs = l.getOutputUnits();
+			h.parameters = new short[h.outputs * (h.inputs + 1)];
+			int p = 0;
+			for (Neuron n : l.getNeurons()) {
+				for (double w : n.getWeightsAndThreshold()) {
+					h.parameters[p] = encode(format, w);
+					maxError = Math.max(maxError, Math.abs(decode(format, h.parameters[p]) - w));
+					p++;
+				}
+			}
+			layers[k] = h;
+		}
+		return new HalfPrecisionNetwork(nn.getNome(), format, layers, maxError);
+	}
+
+	private static String activationFunction(String af) throws ActivateFunctionException {
+		try {
+			Neuron.class.getMethod(af.toLowerCase(), double.class);
+		} catch (NoSuchMethodException e) {
+			throw new ActivateFunctionException(af + " method not found into the object class");
+		}
+		return af.toLowerCase();
+	}
+
+	/**
+	 * Encode a value to the 16 bits format, rounding to the nearest value
+	 * (ties to even). The value is rounded to a float first.
+	 *
+	 * @param	format	the 16 bits format.
+	 * @param	value	the value to encode.
+	 * @return	the 16 bits.
+	 */
+	public static short encode(Format format, double value) {
+		float f = (float) value;
+		if (format == Format.BFLOAT16) {
+			int bits = Float.floatToRawIntBits(f);
+			if (Float.isNaN(f))
+				return (short) ((bits >>> 16) | 0x0040);
+			bits += 0x7FFF + ((bits >>> 16) & 1);
+			return (short) (bits >>> 16);
+		}
+		return floatToFloat16(f);
+	}
+
+	/**
+	 * Decode the 16 bits of a value.
+	 *
+	 * @param	format	the 16 bits format.
+	 * @param	bits	the encoded value.
+	 * @return	the value.
+	 */
+	public static double decode(Format format, short bits) {
+		if (format == Format.BFLOAT16)
+			return Float.intBitsToFloat(bits << 16);
+		return FLOAT16_VALUES[bits & 0xFFFF];
+	}
+
+	private static short floatToFloat16(float f) {
+		int bits = Float.floatToRawIntBits(f);
+		int sign = (bits >>> 16) & 0x8000;
+		if (Float.isNaN(f))
+			return (short) (sign | 0x7E00 | ((bits >>> 13) & 0x03FF));
+
+		float abs = Math.abs(f);
+		/* 65504 plus half unit in the last place */
+		if (abs >= 65520f)
+			return (short) (sign | 0x7C00);
+		/* half of the smallest subnormal, 2^-25 */
+		if (abs <= 0x1.0p-25f)
+			return (short) sign;
+
+		int exp = Math.getExponent(f);
+		int shift = 13;
+		int significand = bits & 0x007FFFFF;
+		if (exp < -14) {
+			/* subnormal: the implicit bit is explicit */
+			shift += -14 - exp;
+			significand |= 0x00800000;
+			exp = -15;
+		}
+		int half = significand >>> shift;
+		int rest = significand & ((1 << shift) - 1);
+		int middle = 1 << (shift - 1);
+		if (rest > middle || (rest == middle && (half & 1) != 0))
+			half++;
+		/* a carry of the significand increases the exponent */
+		return (short) (sign | (((exp + 15) << 10) + half));
+	}
+
+	private static float float16ToFloat(short h) {
+		int sign = (h & 0x8000) << 16;
+		int exp = (h >>> 10) & 0x1F;
+		int significand = h & 0x03FF;
+		if (exp == 0) {
+			float v = significand * 0x1.0p-24f;
+			return sign != 0 ? -v : v;
+		}
+		if (exp == 0x1F)
+			return Float.intBitsToFloat(sign | 0x7F800000 | (significand << 13));
+		return Float.intBitsToFloat(sign | ((exp - 15 + 127) << 23) | (significand << 13));
+	}
+
+	/**
+	 * Process the input data, the weights are decoded by the dot product.
+	 *
+	 * @param	values	input data for the network.
+	 * @return	the network output.
+	 */
+	@Override
+	public double[] process(double[] values) {
+
+		double[] x = values;
+		for (HalfLayer l : layers) {
+			double[] out = new double[l.outputs];
+			short[] p = l.parameters;
+			int row = 0;
+			for (int n=0; n < l.outputs; n++, row += l.inputs + 1) {
+				double sum = 0;
+				if (format == Format.FLOAT16) {
+					for (int i=0; i < l.inputs; i++)
+						sum += FLOAT16_VALUES[p[row + i] & 0xFFFF] * x[i];
+					sum += FLOAT16_VALUES[p[row + l.inputs] & 0xFFFF];
+				} else {
+					for (int i=0; i < l.inputs; i++)
+						sum += Float.intBitsToFloat(p[row + i] << 16) * x[i];
+					sum += Float.intBitsToFloat(p[row + l.inputs] << 16);
+				}
+				out[n] = BinaryNetwork.activate(l.activationFunction, sum);
+			}
+			if (l.activationFunction.equals("softmax"))
+				BinaryNetwork.softmax(out);
+			x = out;
+		}
+		return x;
+	}
+
+	/**
+	 * Return the maximum absolute difference between the outputs of the
+	 * source network and of the current one.
+	 *
+	 * @param	source	the source network.
+	 * @param	inputs	the instances to process.
+	 * @return	maximum output error.
+	 */
+	public double getMaxOutputError(IReteNeurale source, double[][] inputs) {
+		double error = 0;
+		for (double[] values : inputs) {
+			double[] expected = source.process(values);
+			double[] out = process(values);
+			for (int i=0; i < out.length; i++)
+				error = Math.max(error, Math.abs(expected[i] - out[i]));
+		}
+		return error;
+	}
+
+	/**
+	 * Expand the network to a trainable network with double weights.
+	 *
+	 * @return	the network object.
+	 */
+	public NeuralNetwork toNeuralNetwork() {
+		NeuralNetwork nn = new NeuralNetwork(name);
+		for (HalfLayer h : layers) {
+			Layer l = new Layer(h.name, h.activationFunction);
+			for (int n=0; n < h.outputs; n++) {
+				double[] wt = new double[h.inputs + 1];
+				for (int i=0; i < wt.length; i++)
+					wt[i] = decode(format, h.parameters[n * wt.length + i]);
+				l.addNeuron(new Neuron(new double[h.inputs], wt));
+			}
+			l.compact();
+			nn.addLayer(l);
+		}
+		return nn;
+	}
+
+	/**
+	 * Write the network.
+	 *
+	 * @param	os	the output stream, it isn't closed.
+	 * @throws	IOException	on write errors.
+	 */
+	public void write(OutputStream os) throws IOException {
+		DataOutputStream out = new DataOutputStream(os);
+		out.writeInt(MAGIC);
+		out.writeByte(FILE_FORMAT);
+		out.writeByte(format.ordinal());
+		out.writeUTF(name);
+		out.writeInt(layers.length);
+		for (HalfLayer l : layers) {
+			out.writeUTF(l.name);
+			out.writeUTF(l.activationFunction);
+			out.writeInt(l.inputs);
+			out.writeInt(l.outputs);
+			for (short p : l.parameters)
+				out.writeShort(p);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Read a network written by write.
+	 *
+	 * @param	is	the input stream, it isn't closed.
+	 * @return	the network.
+	 * @throws	IOException	on read errors.
+	 * @throws	ParserException	if the stream isn't a 16 bits network.
+	 */
+	public static HalfPrecisionNetwork read(InputStream is) throws IOException, ParserException {
+		DataInputStream in = new DataInputStream(is);
+		if (in.readInt() != MAGIC)
+			throw new ParserException("The stream isn't a 16 bits network");
+		int fileFormat = in.readUnsignedByte();
+		if (fileFormat != FILE_FORMAT)
+			throw new ParserException("Unknown 16 bits network format " + fileFormat);
+		int ordinal = in.readUnsignedByte();
+		if (ordinal >= Format.values().length)
+			throw new ParserException("Unknown 16 bits format " + ordinal);
+		Format format = Format.values()[ordinal];
+		String name = in.readUTF();
+
+		HalfLayer[] layers = new HalfLayer[in.readInt()];
+		for (int k=0; k < layers.length; k++) {
+			HalfLayer l = new HalfLayer();
+			l.name = in.readUTF();
+			try {
+				l.activationFunction = activationFunction(in.readUTF());
+			} catch (ActivateFunctionException e) {
+				throw new ParserException(e.getMessage());
+			}
+			l.inputs = in.readInt();
+			l.outputs = in.readInt();
+			if (l.inputs < 0 || l.outputs < 0 ||
+				(k > 0 && l.inputs != layers[k - 1].outputs))
+				throw new ParserException("Layer " + l.name + " has invalid units");
+			l.parameters = new short[Math.multiplyExact(l.outputs, l.inputs + 1)];
+			for (int p=0; p < l.parameters.length; p++)
+				l.parameters[p] = in.readShort();
+			layers[k] = l;
+		}
+		return new HalfPrecisionNetwork(name, format, layers, Double.NaN);
+	}
+
+	/**
+	 * Save the network into a file.
+	 *
+	 * @param	filename	the file name.
+	 * @throws	IOException	on write errors.
+	 */
+	public void save(String filename) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename))) {
+			write(out);
+		}
+	}
+
+	/**
+	 * Load a network saved by save.
+	 *
+	 * @param	filename	the file name.
+	 * @return	the network.
+	 * @throws	IOException	on read errors.
+	 * @throws	ParserException	if the file isn't a 16 bits network.
+	 */
+	public static HalfPrecisionNetwork load(String filename) throws IOException, ParserException {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(filename))) {
+			return read(in);
+		}
+	}
+
+	/**
+	 * Return the bytes of the weights and thresholds of all the layers.
+	 *
+	 * @return	bytes of the parameters.
+	 */
+	public long getWeightsBytes() {
+		long bytes = 0;
+		for (HalfLayer l : layers)
+			bytes += (long) l.parameters.length * Short.BYTES;
+		return bytes;
+	}
+
+	/**
+	 * Return the maximum change of a weight or of a threshold due to the
+	 * conversion, NaN for a read network.
+	 *
+	 * @return	maximum absolute error.
+	 */
+	public double getMaxWeightError() {
+		return maxWeightError;
+	}
+
+	/**
+	 * Return the 16 bits format.
+	 *
+	 * @return	the format.
+	 */
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * Return the layers of the network, one line for each layer.
+	 *
+	 * @return	the layers table.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.US, "%s %s%n", name, format));
+		for (HalfLayer l : layers) {
+			sb.append(String.format(Locale.US, "%-12s %-12s %8d %8d %10d bytes%n",
+					l.name, l.activationFunction, l.inputs, l.outputs,
+					(long) l.parameters.length * Short.BYTES));
+		}
+		return sb.toString().trim();
+	}
+
+	/**
+	 * Return the current object, the converted network has no processing state.
+	 *
+	 * @return	the current object.
+	 */
+	@Override
+	public IReteNeurale replica() {
+		return this;
+	}
+
+	/**
+	 * The converted network can't be trained, train toNeuralNetwork.
+	 *
+	 * @throws	UnsupportedOperationException	always.
+	 */
+	@Override
+	public double trainIstanza(double[] values, double[] output) {
+		throw new UnsupportedOperationException("16 bits network " + name + " can't be trained");
+	}
+
+	/**
+	 * The converted network can't be trained, train toNeuralNetwork.
+	 *
+	 * @throws	UnsupportedOperationException	always.
+	 */
+	@Override
+	public void train(double[][] inputs, double[][] outputs) {
+		throw new UnsupportedOperationException("16 bits network " + name + " can't be trained");
+	}
+
+	/**
+	 * Return the network name.
+	 *
+	 * @return	network name
+	 */
+	@Override
+	public String getNome() {
+		return name;
+	}
+}
@@ -18,6 +18,35 @@ public interface IReteNeurale {
 	
 	public String getNome();
 	
+	/**
+	 * Return a network with the same outputs of the current one and its own
+	 * processing state, used by another thread together with the current
+	 * one. The networks without state can return themselves.
+	 *
+	 * @return	the replica, null if the network must be processed by a
+	 * 			single thread.
+	 * @since	1.1
+	 */
+	public default IReteNeurale replica() {
+		return null;
+	}
+	
+	/**
+	 * Evaluate the network on a dataset, in parallel when the network has
+	 * replicas.
+	 *
+	 * @param	inputs	inputs data to elaborate.
+	 * @param	outputs	expected outputs.
+	 * @param	metrics	the metrics to compute, all if none is given.
+	 * @return	the evaluation.
+	 * @see		Evaluation class.
+	 * @since	1.1
+	 */
+	public default Evaluation evaluate(double[][] inputs, double[][] outputs, 
+									   Metric... metrics) {
+		return Evaluation.evaluate(this, inputs, outputs, metrics);
+	}
+	
 	public static IReteNeurale carica(String filename) throws ParserException {
 		
 		// change and complete 
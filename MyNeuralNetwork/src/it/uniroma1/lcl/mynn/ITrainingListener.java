@@ -0,0 +1,49 @@
+package it.uniroma1.lcl.mynn;
+
+/**
+ * Listener of the training process of a neural network.
+ * The callbacks are invoked by the training thread at the boundaries of a
+ * batch (a single trainIstanza call), of an epoch (a full walk of the 
+ * training set) and of the whole run. 
+ * The statistics object is owned by the network and reused, copy the values
+ * if they must be kept after the callback returns.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			TlConsole class for the implementation.
+ * @see			TlCsv class for the implementation.
+ */
+public interface ITrainingListener {
+
+	/**
+	 * Invoked before the first epoch of the training.
+	 *
+	 * @param	stats	training statistics.
+	 */
+	public default void onRunStart(TrainingStats stats) {
+	}
+
+	/**
+	 * Invoked after each trained instance.
+	 *
+	 * @param	stats	training statistics.
+	 */
+	public default void onBatchEnd(TrainingStats stats) {
+	}
+
+	/**
+	 * Invoked after each walk of the training set.
+	 *
+	 * @param	stats	training statistics.
+	 */
+	public default void onEpochEnd(TrainingStats stats) {
+	}
+
+	/**
+	 * Invoked when the training is completed.
+	 *
+	 * @param	stats	training statistics.
+	 */
+	public default void onRunEnd(TrainingStats stats) {
+	}
+}
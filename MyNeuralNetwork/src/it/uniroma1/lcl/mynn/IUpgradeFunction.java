@@ -17,4 +17,24 @@ public interface IUpgradeFunction {
 	double[] upgrade(LinkedList<Layer> layers, int i, double[] input, 
 					 double[] output, double lr) 
 							 throws UpgradeFunctionException;
+
+	/**
+	 * Update the weights of the first layer for a sparse inputs vector.
+	 * The implementations upgrade only the weights of the present features,
+	 * by default the vector is expanded and the dense upgrade is applied.
+	 *
+	 * @param	layers	the network layers.
+	 * @param	i		current working layer. 
+	 * @param	input	sparse inputs for the current layer.
+	 * @param	output 	the expected output for the current layer. 
+	 * @param	lr		the learning rate constant.
+	 * @return	null	reserved for future use	
+	 * @throws	UpgradeFunctionException	on upgrading errors.
+	 * @since	1.1
+	 */
+	default double[] upgrade(LinkedList<Layer> layers, int i, SparseVector input, 
+							 double[] output, double lr) 
+									 throws UpgradeFunctionException {
+		return upgrade(layers, i, input.toDense(), output, lr);
+	}
 }
@@ -0,0 +1,46 @@
+package it.uniroma1.lcl.mynn;
+
+/**
+ * The strategy generating the initial weights and thresholds of the
+ * neurons, used when the network file doesn't give the weights.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			WeightInitializer class for the implementation.
+ */
+public interface IWeightInitializer {
+
+	/**
+	 * Generate the initial value of a weight.
+	 *
+	 * @param	fanIn	number of inputs of the neuron.
+	 * @param	fanOut	number of neurons of the layer.
+	 * @return	the weight value.
+	 */
+	double weight(int fanIn, int fanOut);
+
+	/**
+	 * Generate the initial value of a threshold.
+	 *
+	 * @param	fanIn	number of inputs of the neuron.
+	 * @param	fanOut	number of neurons of the layer.
+	 * @return	the threshold value.
+	 */
+	double threshold(int fanIn, int fanOut);
+
+	/**
+	 * Generate the weights of a neuron followed by the threshold, the
+	 * format accepted by the Neuron constructor.
+	 *
+	 * @param	fanIn	number of inputs of the neuron.
+	 * @param	fanOut	number of neurons of the layer.
+	 * @return	fanIn weights and the threshold.
+	 */
+	default double[] init(int fanIn, int fanOut) {
+		double[] wt = new double[fanIn + 1];
+		for (int i=0; i < fanIn; i++)
+			wt[i] = weight(fanIn, fanOut);
+		wt[fanIn] = threshold(fanIn, fanOut);
+		return wt;
+	}
+}
@@ -0,0 +1,159 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies, in the style of the HdrHistogram.
+ * The values are stored into log-linear buckets: the values below 32 have
+ * their own bucket, the bigger ones keep their 5 most significant bits, so
+ * each bucket covers at most 1/16 (6.25%) of its value.
+ * The counters are striped by thread: each recording thread updates its own
+ * array of buckets and the stripes are summed only when the histogram is
+ * read, so the recording doesn't become a contention point.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			NetworkMetrics class.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_HALF = 1 << (SUB_BITS - 1);
+	private static final int BUCKETS = (64 - SUB_BITS + 2) * SUB_HALF;
+	private static final int MAX_STRIPES = 16;
+
+	private AtomicLongArray[] stripes;
+	private int stripeMask;
+	private LongAdder count = new LongAdder();
+	private LongAdder sum = new LongAdder();
+
+	/**
+	 * Create an empty histogram with a stripe for each processor (up to 16).
+	 */
+	public LatencyHistogram() {
+		int n = 1;
+		while (n < Runtime.getRuntime().availableProcessors() && n < MAX_STRIPES)
+			n <<= 1;
+		stripes = new AtomicLongArray[n];
+		for (int i=0; i < n; i++)
+			stripes[i] = new AtomicLongArray(BUCKETS);
+		stripeMask = n - 1;
+	}
+
+	static int bucketIndex(long value) {
+		if (value < 0)
+			value = 0;
+		int msb = 63 - Long.numberOfLeadingZeros(value | 1);
+		if (msb < SUB_BITS)
+			return (int) value;
+		int shift = msb - (SUB_BITS - 1);
+		int top = (int) (value >>> shift);
+		return (shift + 1) * SUB_HALF + (top - SUB_HALF);
+	}
+
+	static long bucketUpperBound(int index) {
+		if (index < 2 * SUB_HALF)
+			return index;
+		int shift = index / SUB_HALF - 1;
+		long top = index % SUB_HALF + SUB_HALF;
+		return ((top + 1) << shift) - 1;
+	}
+
+	private AtomicLongArray stripe() {
+		long id = Thread.currentThread().getId();
+		int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return stripes[(h >>> 16) & stripeMask];
+	}
+
+	/**
+	 * Record a value.
+	 *
+	 * @param	value	the latency, in nanoseconds.
+	 */
+	public void record(long value) {
+		stripe().getAndIncrement(bucketIndex(value));
+		count.increment();
+		sum.add(value);
+	}
+
+	/**
+	 * Clear all the counters.
+	 * Values recorded concurrently with the reset may be lost.
+	 */
+	public void reset() {
+		for (AtomicLongArray s : stripes) {
+			for (int i=0; i < BUCKETS; i++)
+				s.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+	}
+
+	/**
+	 * Return the number of recorded values.
+	 *
+	 * @return	values counter.
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Return the mean of the recorded values.
+	 *
+	 * @return	mean value, zero if the histogram is empty.
+	 */
+	public double getMean() {
+		long c = count.sum();
+		return c == 0 ? 0 : (double) sum.sum() / c;
+	}
+
+	/**
+	 * Return the value at the given percentile, as the upper bound of the
+	 * bucket containing it.
+	 *
+	 * @param	percentile	the percentile, between 0 and 100.
+	 * @return	the value, zero if the histogram is empty.
+	 */
+	public long getValueAtPercentile(double percentile) {
+
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (AtomicLongArray s : stripes) {
+			for (int i=0; i < BUCKETS; i++) {
+				long c = s.get(i);
+				counts[i] += c;
+				total += c;
+			}
+		}
+		if (total == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int i=0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return bucketUpperBound(i);
+		}
+		return bucketUpperBound(BUCKETS - 1);
+	}
+
+	/**
+	 * Return the maximum recorded value, as the upper bound of its bucket.
+	 *
+	 * @return	the value, zero if the histogram is empty.
+	 */
+	public long getMax() {
+		for (int i=BUCKETS-1; i >= 0; i--) {
+			for (AtomicLongArray s : stripes) {
+				if (s.get(i) != 0)
+					return bucketUpperBound(i);
+			}
+		}
+		return 0;
+	}
+}
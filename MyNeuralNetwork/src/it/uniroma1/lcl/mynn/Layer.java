@@ -4,14 +4,15 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.DoubleUnaryOperator;
 import java.util.stream.Collectors;
 
-import com.sun.org.apache.bcel.internal.generic.RETURN;
-
 /**
  * Representation of a layer from the neural network scheme.
  * A layer object keep inside a set of neurons of the same family.
@@ -25,11 +26,24 @@ import com.sun.org.apache.bcel.internal.generic.RETURN;
 
 public class Layer {
 
+	/**
+	 * Density of the weights below which the sparse (CSR) product is used.
+	 */
+	public static final double SPARSE_BREAK_EVEN = 0.3;
+
+	/* output of a released layer, see releaseActivations */
+	private static final Double RELEASED = Double.NaN;
+
 	private String name;
 	private String activationFunction;
 	private LinkedList<Neuron> neurons;
 	private double[] inputs;
 	private ArrayList<Double> processedOutput;
+	private double[] logits;
+	private double logSumExp;
+	private SparseWeights sparse;
+	private double[] releasedInputs;
+	private boolean frozen;
 	
 	/**
 	 * Create a layer object able to keep inside a set of neurons 
@@ -47,6 +61,26 @@ public class Layer {
 		processedOutput = new ArrayList<Double>();
 	}
 	
+	/**
+	 * Create a copy of the current object layer. The neurons are copied
+	 * sharing their weights, see Neuron.copy; the processed outputs aren't
+	 * copied.
+	 *
+	 * @return	the new layer.
+	 */
+	public Layer copy() {
+		Layer l = new Layer(name, activationFunction);
+		for (Neuron n : neurons) {
+			l.neurons.add(n.copy());
+			l.processedOutput.add(0.0);
+		}
+		/* the CSR weights are immutable, the rows are bound to the neurons
+		 * versions */
+		l.sparse = sparse;
+		l.frozen = frozen;
+		return l;
+	}
+
 	/**
 	 * Returns the name of the activation function used by the current object
 	 * layer.
@@ -68,6 +102,27 @@ public class Layer {
 		return;
 	}
 
+	/**
+	 * Freeze the current object layer: the training doesn't upgrade its
+	 * weights and stops the backward on it, so the layers before it aren't
+	 * upgraded too.
+	 *
+	 * @param	frozen	true to freeze the layer.
+	 * @see		NeuralNetwork#train(double[][], double[][])
+	 */
+	public void setFrozen(boolean frozen) {
+		this.frozen = frozen;
+	}
+
+	/**
+	 * Check if the current object layer is frozen.
+	 *
+	 * @return	true if the training doesn't upgrade the layer.
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
 	/**
 	 * Returns the name of the current object layer 
 	 * object.
@@ -126,6 +181,132 @@ public class Layer {
 		return weights;
 	}
 
+	/**
+	 * Returns the sum of the squared changes applied to the weights and 
+	 * thresholds of all the neurons since the last call. 
+	 *
+	 * @return	sum of the squared updates.
+	 * @see		Neuron#pollSquaredUpdate()
+	 */
+	public double pollSquaredUpdate() {
+		double sum = 0;
+		for (Neuron n : neurons) {
+			sum += n.pollSquaredUpdate();
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns the number of parameters of the current object layer: the 
+	 * weights and the threshold of each neuron.
+	 *
+	 * @return	number of parameters.
+	 */
+	public long getParameterCount() {
+		return (long) getOutputUnits() * (getNeuronInputUnits_j7() + 1);
+	}
+
+	/**
+	 * Returns the estimated floating point operations needed to process one
+	 * instance: a multiply and an add for each weight (each non zero weight
+	 * with the sparse weights), the threshold add and the activation function
+	 * for each neuron.
+	 *
+	 * @return	floating point operations per instance.
+	 */
+	public long getForwardFlops() {
+		if (isSparse())
+			return 2 * sparse.getNonZeroCount() + 2L * getOutputUnits();
+		return (long) getOutputUnits() * (2 * getNeuronInputUnits_j7() + 2);
+	}
+
+	/**
+	 * Returns the bytes of the weights and thresholds kept on the heap: the
+	 * thresholds, the CSR arrays of the compacted neurons and the dense 
+	 * weights of the others, built again by the training.
+	 *
+	 * @return	bytes of the parameters.
+	 */
+	public long getWeightsHeapBytes() {
+		long bytes = (long) getOutputUnits() * Double.BYTES;
+		Set<SparseWeights> compacted = new HashSet<SparseWeights>();
+		for (Neuron n : neurons) {
+			SparseWeights s = n.getCompactedWeights();
+			if (s == null)
+				bytes += (long) n.getInputsCount() * Double.BYTES;
+			else if (compacted.add(s))
+				bytes += s.getBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the bytes of the weights and thresholds read by the 
+	 * processing of one instance, the CSR arrays with the sparse weights.
+	 *
+	 * @return	bytes of the parameters.
+	 */
+	public long getWeightsBytes() {
+		if (isSparse())
+			return sparse.getBytes() + (long) getOutputUnits() * Double.BYTES;
+		return getParameterCount() * Double.BYTES;
+	}
+
+	/**
+	 * Returns the bytes of the values produced by the processing of one 
+	 * instance: the outputs of the neurons.
+	 *
+	 * @return	bytes of the activations.
+	 */
+	public long getActivationBytes() {
+		return (long) getOutputUnits() * Double.BYTES;
+	}
+
+	/**
+	 * Returns the estimated heap used by the current object layer: the 
+	 * parameters, the copy of the inputs kept by each neuron and the boxed 
+	 * outputs (object header plus reference). With the sparse weights the
+	 * CSR arrays are added and the inputs aren't copied.
+	 *
+	 * @return	estimated bytes.
+	 */
+	public long getFootprintBytes() {
+		if (isSparse()) {
+			/* the CSR arrays are the weights, the inputs aren't copied */
+			long boxedOutputs = (long) getOutputUnits() * (Double.BYTES + 16);
+			return getWeightsHeapBytes() + boxedOutputs;
+		}
+		long inputsCopy = (long) getOutputUnits() * getNeuronInputUnits_j7() * Double.BYTES;
+		long boxedOutputs = (long) getOutputUnits() * (Double.BYTES + 16);
+		return getWeightsBytes() + inputsCopy + boxedOutputs;
+	}
+
+	/* bytes kept for the backward by a training step: the copy of the 
+	 * inputs of each neuron (only the reference with the sparse weights) 
+	 * and the boxed outputs */
+	long getTrainingActivationBytes() {
+		long boxedOutputs = (long) getOutputUnits() * (Double.BYTES + 16);
+		if (isSparse())
+			return boxedOutputs;
+		return (long) getOutputUnits() * getNeuronInputUnits_j7() * Double.BYTES + boxedOutputs;
+	}
+
+	/* gradient checkpointing: drop the values kept by the last processing,
+	 * the neurons share one array of zero inputs and the outputs are NaN 
+	 * until the layer is processed again */
+	void releaseActivations() {
+		int units = getNeuronInputUnits_j7();
+		if (releasedInputs == null || releasedInputs.length != units)
+			releasedInputs = new double[units];
+		for (Neuron n : neurons) {
+			n.releaseInputs(releasedInputs);
+		}
+		for (int i=0; i < processedOutput.size(); i++) {
+			processedOutput.set(i, RELEASED);
+		}
+		inputs = null;
+	}
+
 	/**
 	 * Returns the number of neurons mantained by the current object layer. 
 	 *
@@ -146,6 +327,68 @@ public class Layer {
 	public void addNeuron(Neuron n) {
 		neurons.add(n);
 		processedOutput.add(0.0);
+		sparse = null;
+	}
+
+	/**
+	 * Build the CSR weights when their density is below SPARSE_BREAK_EVEN,
+	 * from now on the neurons multiply only the non zero weights and the CSR
+	 * arrays are the storage of the weights: the neurons drop their dense
+	 * weights and their copy of the inputs. Each neuron builds its dense
+	 * weights again on the first change, call again compact after the
+	 * training.
+	 *
+	 * @return	true if the sparse weights are used.
+	 * @see		SparseWeights class.
+	 */
+	public boolean compact() {
+		sparse = null;
+		if (neurons.isEmpty())
+			return false;
+		int units = getNeuronInputUnits_j7();
+		SparseWeights s = new SparseWeights(neurons, units);
+		if (s.getDensity() >= SPARSE_BREAK_EVEN)
+			return false;
+		if (releasedInputs == null || releasedInputs.length != units)
+			releasedInputs = new double[units];
+		for (int i=0; i < neurons.size(); i++) {
+			neurons.get(i).compact(s, i);
+			neurons.get(i).releaseInputs(releasedInputs);
+		}
+		sparse = s;
+		return true;
+	}
+
+	/**
+	 * Check if the current object layer uses the sparse weights.
+	 *
+	 * @return	true if the CSR weights are current.
+	 */
+	public boolean isSparse() {
+		SparseWeights s = sparse;
+		if (s == null)
+			return false;
+		for (int i=0; i < neurons.size(); i++) {
+			if (s.isCurrent(i, neurons.get(i)) == false)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of weights different from zero.
+	 *
+	 * @return	non zero weights.
+	 */
+	public long getNonZeroCount() {
+		long count = 0;
+		for (Neuron n : neurons) {
+			for (int i=0; i < n.getInputsCount(); i++) {
+				if (n.getWeight(i) != 0)
+					count++;
+			}
+		}
+		return count;
 	}
 	
 	/**
@@ -228,6 +471,75 @@ public class Layer {
 	public void setLayerInputs(double[] inputs) {
 		this.inputs = inputs;
 	}
+
+	/**
+	 * Check if the activation function of the current object layer works on
+	 * the whole layer (softmax) instead of on the single neuron.
+	 *
+	 * @return	true for the softmax layer.
+	 */
+	public boolean isSoftmax() {
+		return getActivationFunction().toLowerCase().compareTo("softmax") == 0;
+	}
+
+	/**
+	 * Complete the activation of the current object layer once all the 
+	 * neurons have stored their output.
+	 * For the softmax layer the stored values are the logits and they are 
+	 * normalized together, the max logit is subtracted before the exponential
+	 * in order to avoid overflow. The log-sum-exp is kept for the 
+	 * cross-entropy. For the other activation functions nothing happens.
+	 *
+	 * @see		#crossEntropy(double[])
+	 */
+	public void activateLayer() {
+
+		if (isSoftmax() == false || processedOutput.isEmpty())
+			return;
+
+		if (logits == null || logits.length != processedOutput.size())
+			logits = new double[processedOutput.size()];
+
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i=0; i < logits.length; i++) {
+			logits[i] = processedOutput.get(i);
+			if (logits[i] > max)
+				max = logits[i];
+		}
+
+		double sum = 0;
+		for (int i=0; i < logits.length; i++) {
+			sum += Math.exp(logits[i] - max);
+		}
+		logSumExp = max + Math.log(sum);
+
+		/* Yi = exp(Zi - LSE) */
+		for (int i=0; i < logits.length; i++) {
+			processedOutput.set(i, Math.exp(logits[i] - logSumExp));
+		}
+	}
+
+	/**
+	 * Calculate the cross-entropy between the last softmax output of the 
+	 * current object layer and the expected output. 
+	 * The value is taken from the log-sum-exp computed during the activation,
+	 * log(Yi) = Zi - LSE, so no logarithm of a vanishing probability is 
+	 * calculated:
+	 * 			crossEntropy = -E(Oi * log(Yi)) = E(Oi * (LSE - Zi))
+	 *
+	 * @param	output	the expected output (a probability distribution).
+	 * @return	the cross-entropy value.
+	 * @see		#activateLayer()
+	 */
+	public double crossEntropy(double[] output) {
+
+		double loss = 0;
+		for (int i=0; i < output.length; i++) {
+			if (output[i] != 0)
+				loss += output[i] * (logSumExp - logits[i]);
+		}
+		return loss;
+	}
 	
 	/**
 	 * Activate a neuron from the current object layer. 
@@ -247,6 +559,96 @@ public class Layer {
 		double neuronOutput = 0;
 		Neuron n = getNeuron(i);
 
+		//System.out.println("calculating transferOuput from values " + Arrays.toString(values) + " threshold " + n.getThreshold());
+		double transferOuput;
+		SparseWeights s = sparse;
+		if (s != null && s.isCurrent(i, n)) {
+			transferOuput = n.transferFunction(values, s, i) + n.getThreshold();
+		} else {
+			/* the weights have been changed, back to the dense product */
+			transferOuput = n.transferFunction(values) + n.getThreshold();
+		}
+		//System.out.println("transferOuput " + transferOuput);
+		
+		neuronOutput = invokeActivationFunction(n, transferOuput);
+		// follow do the same work but cycle on all methods, more slow.
+		/*
+		for (Method m : Neuron.class.getMethods()) {
+			if (m.getName().toLowerCase().compareTo(getActivationFunction().toLowerCase()) == 0) {
+				double transferOuput = n.transferFunction(values) + n.getThreshold();
+				neuronOutput = (double) m.invoke(n, transferOuput);
+				processedOutput.set(i, neuronOutput);
+				break;
+			}
+		}*/
+		return neuronOutput;
+	}
+	
+	/**
+	 * Activate a neuron from the current object layer with sparse inputs,
+	 * only the weights of the present features are multiplied.
+	 *
+	 * @param	i	neuron index to activate.
+	 * @param	values sparse inputs of the neuron.
+	 * @return	neuron output value.
+	 * @see		ActivateFunctionException class for error management.
+	 * 
+	 */
+	public double activateNeuron(int i, SparseVector values) throws ActivateFunctionException {
+		Neuron n = getNeuron(i);
+		return invokeActivationFunction(n, n.transferFunction(values) + n.getThreshold());
+	}
+
+	/**
+	 * Return the derivate F1 of the activation function of a neuron, to be
+	 * applied to the transfer value (weighted sum plus threshold).
+	 * The upgrading functions resolve it once for each neuron and keep the
+	 * transfer value up to date while they change the weights, instead of
+	 * activating the neuron again for each weight.
+	 *
+	 * @param	i	neuron index.
+	 * @return	the derivate.
+	 * @see		ActivateFunctionException class for error management.
+	 */
+	DoubleUnaryOperator getNeuronF1(int i) throws ActivateFunctionException {
+		Neuron n = getNeuron(i);
+		String af = getActivationFunction().toLowerCase();
+		switch (af) {
+		case "identity":
+			return n::identity_f1;
+		case "logistic":
+			return n::logistic_f1;
+		case "tanh":
+			return n::tanh_f1;
+		case "fastlogistic":
+			return n::fastlogistic_f1;
+		case "fasttanh":
+			return n::fasttanh_f1;
+		case "relu":
+			return n::relu_f1;
+		case "softmax":
+			return n::softmax_f1;
+		default:
+			/* derivates added to the neuron */
+			Method m;
+			try {
+				m = Neuron.class.getMethod(af + "_f1", double.class);
+			} catch (NoSuchMethodException e) {
+				throw new ActivateFunctionException(af + "_F1 method not found into the object class");
+			}
+			return x -> {
+				try {
+					return (double) m.invoke(n, x);
+				} catch (ReflectiveOperationException e) {
+					throw new IllegalStateException(af + "_F1 invocation failed", e);
+				}
+			};
+		}
+	}
+
+	/* resolve the activation function by name and invoke it on the neuron */
+	private double invokeActivationFunction(Neuron n, double x) throws ActivateFunctionException {
+
 		Method m;
 		try {
 			m = Neuron.class.getMethod(getActivationFunction().toLowerCase(), double.class);
@@ -255,13 +657,9 @@ public class Layer {
 		} catch (SecurityException e) {
 			throw new ActivateFunctionException(getActivationFunction() + " access denied");
 		}
-		
-		//System.out.println("calculating transferOuput from values " + Arrays.toString(values) + " threshold " + n.getThreshold());
-		double transferOuput = n.transferFunction(values) + n.getThreshold();
-		//System.out.println("transferOuput " + transferOuput);
-		
+
 		try {
-			neuronOutput = (double) m.invoke(n, transferOuput);
+			return (double) m.invoke(n, x);
 		} catch (IllegalAccessException e) {
 			throw new ActivateFunctionException(getActivationFunction() + " access denied");
 		} catch (IllegalArgumentException e) {
@@ -269,17 +667,6 @@ public class Layer {
 		} catch (InvocationTargetException e) {
 			throw new ActivateFunctionException(getActivationFunction() + " invocation failed");
 		}
-		// follow do the same work but cycle on all methods, more slow.
-		/*
-		for (Method m : Neuron.class.getMethods()) {
-			if (m.getName().toLowerCase().compareTo(getActivationFunction().toLowerCase()) == 0) {
-				double transferOuput = n.transferFunction(values) + n.getThreshold();
-				neuronOutput = (double) m.invoke(n, transferOuput);
-				processedOutput.set(i, neuronOutput);
-				break;
-			}
-		}*/
-		return neuronOutput;
 	}
 	
 	/**
@@ -328,4 +715,27 @@ public class Layer {
 		this.setActivationFunction(af);		
 		return neuronOutput;
 	}
+
+	/**
+	 * Activate a neuron from the current object layer with sparse inputs. 
+	 * The activation function invoked will be the derivate F1 related to the 
+	 * activation function name stored into the layer.
+	 *
+	 * @param	i	neuron index to activate.
+	 * @param	values sparse inputs of the neuron.
+	 * @return	neuron output value.
+	 * @see		ActivateFunctionException class for error management.
+	 * 
+	 */
+	public double activateNeuronF1(int i, SparseVector values) throws ActivateFunctionException {
+
+		String af = new String(getActivationFunction());
+		this.setActivationFunction(new String(getActivationFunction() + "_F1"));
+		/* calculate the derivate */
+		try {
+			return activateNeuron(i, values);
+		} finally {
+			this.setActivationFunction(af);
+		}
+	}
 }
@@ -0,0 +1,483 @@
+package it.uniroma1.lcl.mynn;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Full-batch L-BFGS training of small networks.
+ * The weights and the thresholds of all the layers are one parameter
+ * vector; each iteration evaluates the loss and its gradient on the whole
+ * dataset (the instances are split between the threads of the common
+ * pool), the direction is given by the last pairs of parameter and
+ * gradient changes and the step by a Wolfe line search.
+ * The loss is the half squared error, the cross-entropy for a softmax
+ * output layer, averaged on the instances. The layers up to the last
+ * frozen one aren't changed, as by the train.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			NeuralNetwork#train(double[][], double[][])
+ */
+public class LbfgsOptimizer {
+
+	/* minimum instances of a parallel task */
+	private static final int MIN_SPLIT = 64;
+	/* Wolfe conditions: sufficient decrease and curvature */
+	private static final double C1 = 1e-4;
+	private static final double C2 = 0.9;
+	private static final int MAX_LINE_SEARCH = 40;
+
+	private final int history;
+	private final int maxIterations;
+	private final double tolerance;
+
+	private int iterations;
+	private int evaluations;
+	private double gradientNorm;
+
+	/**
+	 * Create the optimizer with 10 pairs of history, 1000 iterations at
+	 * most and 1e-6 of tolerance.
+	 */
+	public LbfgsOptimizer() {
+		this(10, 1000, 1e-6);
+	}
+
+	/**
+	 * Create the optimizer.
+	 *
+	 * @param	history	number of pairs approximating the inverse Hessian.
+	 * @param	maxIterations	maximum number of iterations.
+	 * @param	tolerance	the optimization stops when the largest component
+	 * 			of the gradient is below it.
+	 */
+	public LbfgsOptimizer(int history, int maxIterations, double tolerance) {
+		this.history = history < 1 ? 1 : history;
+		this.maxIterations = maxIterations;
+		this.tolerance = tolerance;
+	}
+
+	/* the network as a function of the parameter vector */
+	private static class Problem {
+
+		private final double[][] inputs;
+		private final double[][] outputs;
+		private final int[] in;
+		private final int[] out;
+		private final int[] offset;
+		private final Method[] function;
+		private final Method[] derivate;
+		private final boolean softmax;
+		private final int trained;
+		private final int size;
+
+		Problem(NeuralNetwork nn, double[][] inputs, double[][] outputs)
+				throws ActivateFunctionException {
+
+			if (inputs.length == 0 || inputs.length != outputs.length)
+				throw new IllegalArgumentException("Dataset with " + inputs.length +
+												   " inputs and " + outputs.length + " outputs");
+			LinkedList<Layer> layers = nn.getLayers();
+			int count = layers.size();
+			this.inputs = inputs;
+			this.outputs = outputs;
+			in = new int[count];
+			out = new int[count];
+			offset = new int[count + 1];
+			function = new Method[count];
+			derivate = new Method[count];
+
+			int k = 0;
+			int frozen = -1;
+			for (Layer l : layers) {
+				String af = l.getActivationFunction().toLowerCase();
+				if (af.equals("softmax") && k != count - 1)
+					throw new IllegalArgumentException("Softmax layer " + l.getName() +
+													   " must be the output layer");
+				function[k] = resolve(af);
+				derivate[k] = resolve(af + "_f1");
+				in[k] = l.getNeuronInputUnits_j7();
+				out[k] = l.getOutputUnits();
+				offset[k + 1] = offset[k] + out[k] * (in[k] + 1);
+				if (l.isFrozen())
+					frozen = k;
+				k++;
+			}
+			softmax = layers.getLast().isSoftmax();
+			trained = frozen + 1;
+			size = offset[count];
+		}
+
+		private static Method resolve(String name) throws ActivateFunctionException {
+			try {
+				return Neuron.class.getMethod(name, double.class);
+			} catch (NoSuchMethodException e) {
+				throw new ActivateFunctionException(name + " method not found into the object class");
+			} catch (SecurityException e) {
+				throw new ActivateFunctionException(name + " access denied");
+			}
+		}
+
+		double[] get(NeuralNetwork nn) {
+			double[] x = new double[size];
+			int p = 0;
+			for (Layer l : nn.getLayers()) {
+				for (Neuron n : l.getNeurons()) {
+					double[] wt = n.getWeightsAndThreshold();
+					System.arraycopy(wt, 0, x, p, wt.length);
+					p += wt.length;
+				}
+			}
+			return x;
+		}
+
+		void set(NeuralNetwork nn, double[] x) {
+			int k = 0;
+			for (Layer l : nn.getLayers()) {
+				/* the frozen layers aren't touched */
+				if (k >= trained) {
+					int p = offset[k];
+					for (Neuron n : l.getNeurons()) {
+						double[] w = new double[in[k]];
+						System.arraycopy(x, p, w, 0, w.length);
+						n.setWeights(w);
+						n.setThreshold(x[p + in[k]]);
+						p += in[k] + 1;
+					}
+				}
+				k++;
+			}
+			nn.weightsChanged();
+		}
+
+		/* average loss on the dataset, the gradient is stored into grad */
+		double evaluate(double[] x, double[] grad) {
+			int parallelism = ForkJoinPool.getCommonPoolParallelism();
+			int split = Math.max(MIN_SPLIT, inputs.length / (parallelism * 4));
+			Partial p = ForkJoinPool.commonPool().invoke(new Task(this, x, 0, inputs.length, split));
+			for (int i=0; i < size; i++)
+				grad[i] = (i < offset[trained]) ? 0 : p.grad[i] / inputs.length;
+			return p.loss / inputs.length;
+		}
+
+		/* loss of one instance, its gradient is added to grad */
+		double instance(double[] x, double[] input, double[] expected, double[] grad,
+						double[][] z, double[][] a, double[][] delta, Neuron neuron) {
+
+			int count = in.length;
+			for (int k=0; k < count; k++) {
+				double[] prev = (k == 0) ? input : a[k - 1];
+				for (int j=0; j < out[k]; j++) {
+					int p = offset[k] + j * (in[k] + 1);
+					double sum = x[p + in[k]];
+					for (int i=0; i < in[k]; i++)
+						sum += x[p + i] * prev[i];
+					z[k][j] = sum;
+					a[k][j] = invoke(function[k], neuron, sum);
+				}
+			}
+
+			int last = count - 1;
+			double loss = 0;
+			if (softmax) {
+				double max = Double.NEGATIVE_INFINITY;
+				for (int j=0; j < out[last]; j++)
+					max = Math.max(max, z[last][j]);
+				double sum = 0;
+				for (int j=0; j < out[last]; j++)
+					sum += Math.exp(z[last][j] - max);
+				double lse = max + Math.log(sum);
+				for (int j=0; j < out[last]; j++) {
+					a[last][j] = Math.exp(z[last][j] - lse);
+					if (expected[j] != 0)
+						loss += expected[j] * (lse - z[last][j]);
+					delta[last][j] = a[last][j] - expected[j];
+				}
+			} else {
+				for (int j=0; j < out[last]; j++) {
+					double d = a[last][j] - expected[j];
+					loss += 0.5 * d * d;
+					delta[last][j] = d * invoke(derivate[last], neuron, z[last][j]);
+				}
+			}
+
+			for (int k=last; k >= trained; k--) {
+				double[] prev = (k == 0) ? input : a[k - 1];
+				for (int j=0; j < out[k]; j++) {
+					int p = offset[k] + j * (in[k] + 1);
+					for (int i=0; i < in[k]; i++)
+						grad[p + i] += delta[k][j] * prev[i];
+					grad[p + in[k]] += delta[k][j];
+				}
+				if (k > trained) {
+					for (int i=0; i < in[k]; i++) {
+						double sum = 0;
+						for (int j=0; j < out[k]; j++)
+							sum += x[offset[k] + j * (in[k] + 1) + i] * delta[k][j];
+						delta[k - 1][i] = sum * invoke(derivate[k - 1], neuron, z[k - 1][i]);
+					}
+				}
+			}
+			return loss;
+		}
+
+		private static double invoke(Method m, Neuron neuron, double x) {
+			try {
+				return (double) m.invoke(neuron, x);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				/* the methods are resolved by the constructor */
+				throw new IllegalStateException(m.getName() + " invocation failed", e);
+			}
+		}
+	}
+
+	private static class Partial {
+		private double loss;
+		private final double[] grad;
+
+		Partial(int size) {
+			grad = new double[size];
+		}
+	}
+
+	private static class Task extends RecursiveTask<Partial> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Problem problem;
+		private final double[] x;
+		private final int from;
+		private final int to;
+		private final int split;
+
+		Task(Problem problem, double[] x, int from, int to, int split) {
+			this.problem = problem;
+			this.x = x;
+			this.from = from;
+			this.to = to;
+			this.split = split;
+		}
+
+		@Override
+		protected Partial compute() {
+			if (to - from <= split) {
+				Problem pb = problem;
+				Partial p = new Partial(pb.size);
+				double[][] z = new double[pb.out.length][];
+				double[][] a = new double[pb.out.length][];
+				double[][] delta = new double[pb.out.length][];
+				for (int k=0; k < pb.out.length; k++) {
+					z[k] = new double[pb.out[k]];
+					a[k] = new double[pb.out[k]];
+					delta[k] = new double[pb.out[k]];
+				}
+				/* the approximated functions keep a cache, one neuron for
+				 * each task */
+				Neuron neuron = new Neuron(new double[0], new double[1]);
+				for (int i=from; i < to; i++)
+					p.loss += pb.instance(x, pb.inputs[i], pb.outputs[i], p.grad, z, a, delta, neuron);
+				return p;
+			}
+			int middle = (from + to) >>> 1;
+			Task left = new Task(problem, x, from, middle, split);
+			Task right = new Task(problem, x, middle, to, split);
+			left.fork();
+			Partial p = right.compute();
+			Partial l = left.join();
+			p.loss += l.loss;
+			for (int i=0; i < p.grad.length; i++)
+				p.grad[i] += l.grad[i];
+			return p;
+		}
+	}
+
+	/**
+	 * Train the network on the dataset, its weights are overwritten by the
+	 * best parameters found.
+	 *
+	 * @param	nn	the network.
+	 * @param	inputs	inputs data.
+	 * @param	outputs	expected outputs.
+	 * @return	the final loss.
+	 * @throws	ActivateFunctionException	if an activation function hasn't
+	 * 			the derivate.
+	 * @throws	IllegalArgumentException	if the dataset is empty or a
+	 * 			softmax layer isn't the output one.
+	 */
+	public double optimize(NeuralNetwork nn, double[][] inputs, double[][] outputs)
+			throws ActivateFunctionException {
+
+		Problem pb = new Problem(nn, inputs, outputs);
+		int size = pb.size;
+		double[] x = pb.get(nn);
+		double[] g = new double[size];
+		double f = pb.evaluate(x, g);
+		evaluations = 1;
+		iterations = 0;
+
+		double[][] s = new double[history][];
+		double[][] y = new double[history][];
+		double[] rho = new double[history];
+		double[] alpha = new double[history];
+		int pairs = 0;
+		int newest = -1;
+
+		double[] d = new double[size];
+		double[] xt = new double[size];
+		double[] gt = new double[size];
+
+		while (iterations < maxIterations && norm(g) > tolerance) {
+
+			/* two-loop recursion: d = -H g */
+			for (int i=0; i < size; i++)
+				d[i] = -g[i];
+			for (int k=0; k < pairs; k++) {
+				int m = Math.floorMod(newest - k, history);
+				alpha[m] = rho[m] * dot(s[m], d);
+				for (int i=0; i < size; i++)
+					d[i] -= alpha[m] * y[m][i];
+			}
+			if (pairs > 0) {
+				double gamma = dot(s[newest], y[newest]) / dot(y[newest], y[newest]);
+				for (int i=0; i < size; i++)
+					d[i] *= gamma;
+			}
+			for (int k=pairs-1; k >= 0; k--) {
+				int m = Math.floorMod(newest - k, history);
+				double beta = rho[m] * dot(y[m], d);
+				for (int i=0; i < size; i++)
+					d[i] += (alpha[m] - beta) * s[m][i];
+			}
+
+			double slope = dot(g, d);
+			if (slope >= 0) {
+				/* not a descent direction, back to the gradient */
+				pairs = 0;
+				for (int i=0; i < size; i++)
+					d[i] = -g[i];
+				slope = dot(g, d);
+			}
+
+			/* Wolfe line search by bisection, the first step is scaled on the
+			 * gradient */
+			double t = (pairs == 0) ? Math.min(1, 1 / Math.sqrt(-slope)) : 1;
+			double lo = 0;
+			double hi = Double.POSITIVE_INFINITY;
+			double ft = f;
+			boolean decrease = false;
+			boolean found = false;
+			for (int k=0; k < MAX_LINE_SEARCH; k++) {
+				for (int i=0; i < size; i++)
+					xt[i] = x[i] + t * d[i];
+				ft = pb.evaluate(xt, gt);
+				evaluations++;
+				decrease = ft <= f + C1 * t * slope;
+				if (decrease == false) {
+					hi = t;
+				} else if (dot(gt, d) < C2 * slope) {
+					lo = t;
+				} else {
+					found = true;
+					break;
+				}
+				t = (hi == Double.POSITIVE_INFINITY) ? 2 * lo : (lo + hi) / 2;
+			}
+			/* without the curvature the step is taken if the loss decreases */
+			if (found == false && decrease == false)
+				break;
+
+			iterations++;
+			double[] sk = new double[size];
+			double[] yk = new double[size];
+			for (int i=0; i < size; i++) {
+				sk[i] = xt[i] - x[i];
+				yk[i] = gt[i] - g[i];
+			}
+			double sy = dot(sk, yk);
+			/* the curvature keeps the approximation positive definite */
+			if (sy > 1e-10 * Math.sqrt(dot(sk, sk) * dot(yk, yk))) {
+				newest = (newest + 1) % history;
+				s[newest] = sk;
+				y[newest] = yk;
+				rho[newest] = 1 / sy;
+				pairs = Math.min(pairs + 1, history);
+			}
+
+			double previous = f;
+			System.arraycopy(xt, 0, x, 0, size);
+			System.arraycopy(gt, 0, g, 0, size);
+			f = ft;
+			if (previous - f <= 1e-15 * Math.max(1, Math.abs(f)))
+				break;
+		}
+
+		gradientNorm = norm(g);
+		pb.set(nn, x);
+		return f;
+	}
+
+	/**
+	 * Return the loss of the network on the dataset and its gradient, in
+	 * the order of the weights and threshold of each neuron.
+	 *
+	 * @param	nn	the network.
+	 * @param	inputs	inputs data.
+	 * @param	outputs	expected outputs.
+	 * @param	grad	the gradient, one value for each parameter.
+	 * @return	the loss.
+	 * @throws	ActivateFunctionException	if an activation function hasn't
+	 * 			the derivate.
+	 */
+	static double loss(NeuralNetwork nn, double[][] inputs, double[][] outputs, double[] grad)
+			throws ActivateFunctionException {
+		Problem pb = new Problem(nn, inputs, outputs);
+		return pb.evaluate(pb.get(nn), grad);
+	}
+
+	private static double dot(double[] a, double[] b) {
+		double sum = 0;
+		for (int i=0; i < a.length; i++)
+			sum += a[i] * b[i];
+		return sum;
+	}
+
+	/* largest component */
+	private static double norm(double[] a) {
+		double max = 0;
+		for (int i=0; i < a.length; i++)
+			max = Math.max(max, Math.abs(a[i]));
+		return max;
+	}
+
+	/**
+	 * Return the iterations done by the last optimization.
+	 *
+	 * @return	iterations.
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Return the evaluations of the loss and of the gradient done by the
+	 * last optimization, line search included.
+	 *
+	 * @return	evaluations.
+	 */
+	public int getEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * Return the largest component of the gradient at the end of the last
+	 * optimization.
+	 *
+	 * @return	gradient norm.
+	 */
+	public double getGradientNorm() {
+		return gradientNorm;
+	}
+}
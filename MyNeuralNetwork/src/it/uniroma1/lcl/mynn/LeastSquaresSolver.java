@@ -0,0 +1,284 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Direct least-squares fit of a single layer network.
+ * With the identity activation the weights minimizing the squared error
+ * have a closed form: the solver accumulates X'X and X'Y on the dataset in
+ * one parallel pass (the inputs are extended with 1 for the threshold) and
+ * solves the normal equations with the Cholesky factorization, optionally
+ * with the ridge regularization of the weights (the thresholds aren't
+ * regularized).
+ * With the logistic and tanh activations the expected outputs are mapped
+ * by the inverse function, clamped inside the function range, and the
+ * fit is a warm start for the training.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			UfSingleLayer class.
+ */
+public class LeastSquaresSolver {
+
+	/* minimum instances of a parallel task */
+	private static final int MIN_SPLIT = 256;
+	/* distance of the clamped outputs from the bounds of the range */
+	private static final double EPSILON = 1e-3;
+
+	private final int inputs;
+	private final int outputs;
+	/* X'X, X'Y and Y'Y of the extended inputs */
+	private final double[][] xtx;
+	private final double[][] xty;
+	private double yty;
+
+	private LeastSquaresSolver(int inputs, int outputs) {
+		this.inputs = inputs;
+		this.outputs = outputs;
+		this.xtx = new double[inputs + 1][inputs + 1];
+		this.xty = new double[inputs + 1][outputs];
+	}
+
+	private static class Task extends RecursiveTask<LeastSquaresSolver> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[][] x;
+		private final double[][] y;
+		private final String function;
+		private final int from;
+		private final int to;
+		private final int split;
+
+		Task(double[][] x, double[][] y, String function, int from, int to, int split) {
+			this.x = x;
+			this.y = y;
+			this.function = function;
+			this.from = from;
+			this.to = to;
+			this.split = split;
+		}
+
+		@Override
+		protected LeastSquaresSolver compute() {
+			if (to - from <= split) {
+				LeastSquaresSolver s = new LeastSquaresSolver(x[0].length, y[0].length);
+				double[] z = new double[s.outputs];
+				for (int i=from; i < to; i++) {
+					for (int j=0; j < z.length; j++)
+						z[j] = inverse(function, y[i][j]);
+					s.add(x[i], z);
+				}
+				return s;
+			}
+			int middle = (from + to) >>> 1;
+			Task left = new Task(x, y, function, from, middle, split);
+			Task right = new Task(x, y, function, middle, to, split);
+			left.fork();
+			LeastSquaresSolver s = right.compute();
+			s.merge(left.join());
+			return s;
+		}
+	}
+
+	/**
+	 * Fit the weights and the thresholds of a single layer network without
+	 * regularization.
+	 *
+	 * @param	nn	the network, its weights are overwritten.
+	 * @param	inputs	inputs data.
+	 * @param	outputs	expected outputs.
+	 * @return	the mean squared residual of the linear fit.
+	 * @see		#fit(NeuralNetwork, double[][], double[][], double)
+	 */
+	public static double fit(NeuralNetwork nn, double[][] inputs, double[][] outputs) {
+		return fit(nn, inputs, outputs, 0);
+	}
+
+	/**
+	 * Fit the weights and the thresholds of a single layer network.
+	 * The residual is measured before the activation function: with the
+	 * identity activation and without regularization it is the mean squared
+	 * error of the network on the dataset.
+	 * If X'X is singular (linearly dependent inputs) a minimal ridge is added
+	 * to the diagonal.
+	 *
+	 * @param	nn	the network, its weights are overwritten.
+	 * @param	inputs	inputs data.
+	 * @param	outputs	expected outputs.
+	 * @param	ridge	regularization of the weights, added to the diagonal
+	 * 			of X'X; 0 for none.
+	 * @return	the mean squared residual of the linear fit.
+	 * @throws	IllegalArgumentException	if the network has more than one
+	 * 			layer, an unsupported activation function or the dataset
+	 * 			doesn't match it.
+	 */
+	public static double fit(NeuralNetwork nn, double[][] inputs, double[][] outputs, double ridge) {
+
+		if (nn.getLayerCount() != 1)
+			throw new IllegalArgumentException("Network " + nn.getNome() + " has " +
+											   nn.getLayerCount() + " layers, expected 1");
+		Layer l = nn.getLayers().getFirst();
+		String function = l.getActivationFunction().toLowerCase();
+		if (Double.isNaN(inverse(function, 0.5)))
+			throw new IllegalArgumentException("Activation function " + function +
+											   " can't be fitted");
+		if (inputs.length == 0 || inputs.length != outputs.length)
+			throw new IllegalArgumentException("Dataset with " + inputs.length +
+											   " inputs and " + outputs.length + " outputs");
+		if (inputs[0].length != l.getNeuronInputUnits_j7() ||
+			outputs[0].length != l.getOutputUnits())
+			throw new IllegalArgumentException("Dataset of " + inputs[0].length + " inputs and " +
+											   outputs[0].length + " outputs for layer " +
+											   l.getName());
+		if (ridge < 0)
+			throw new IllegalArgumentException("Invalid ridge " + ridge);
+
+		int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		int split = Math.max(MIN_SPLIT, inputs.length / (parallelism * 4));
+		LeastSquaresSolver s = ForkJoinPool.commonPool().invoke(
+				new Task(inputs, outputs, function, 0, inputs.length, split));
+
+		double[][] w = s.solve(ridge);
+		int i = 0;
+		for (Neuron n : l.getNeurons()) {
+			double[] weights = new double[s.inputs];
+			for (int j=0; j < weights.length; j++)
+				weights[j] = w[j][i];
+			n.setWeights(weights);
+			n.setThreshold(w[s.inputs][i]);
+			i++;
+		}
+		nn.weightsChanged();
+		return s.residual(w) / ((double) inputs.length * s.outputs);
+	}
+
+	/* expected output before the activation function, NaN if the function
+	 * can't be inverted */
+	private static double inverse(String function, double y) {
+		switch (function) {
+		case "identity":
+			return y;
+		case "logistic":
+		case "fastlogistic":
+			y = Math.min(Math.max(y, EPSILON), 1 - EPSILON);
+			return Math.log(y / (1 - y));
+		case "tanh":
+		case "fasttanh":
+			y = Math.min(Math.max(y, -1 + EPSILON), 1 - EPSILON);
+			return 0.5 * Math.log((1 + y) / (1 - y));
+		default:
+			return Double.NaN;
+		}
+	}
+
+	private void add(double[] x, double[] z) {
+		for (int r=0; r <= inputs; r++) {
+			double xr = (r == inputs) ? 1 : x[r];
+			if (xr == 0)
+				continue;
+			/* upper triangle only, see solve */
+			for (int c=r; c < inputs; c++)
+				xtx[r][c] += xr * x[c];
+			xtx[r][inputs] += xr;
+			for (int j=0; j < outputs; j++)
+				xty[r][j] += xr * z[j];
+		}
+		for (int j=0; j < outputs; j++)
+			yty += z[j] * z[j];
+	}
+
+	private void merge(LeastSquaresSolver s) {
+		for (int r=0; r <= inputs; r++) {
+			for (int c=r; c <= inputs; c++)
+				xtx[r][c] += s.xtx[r][c];
+			for (int j=0; j < outputs; j++)
+				xty[r][j] += s.xty[r][j];
+		}
+		yty += s.yty;
+	}
+
+	/* Cholesky factorization of X'X + ridge, the columns of the result are
+	 * the weights of each neuron followed by the threshold */
+	private double[][] solve(double ridge) {
+
+		int d = inputs + 1;
+		double trace = 0;
+		for (int r=0; r < d; r++)
+			trace += xtx[r][r];
+		double jitter = 0;
+		double[][] lower = null;
+		while (lower == null) {
+			lower = cholesky(ridge + jitter);
+			if (lower == null) {
+				/* singular matrix, the smallest ridge that makes it definite */
+				jitter = (jitter == 0) ? 1e-12 * (trace / d + 1) : jitter * 10;
+				if (jitter > trace + 1)
+					throw new ArithmeticException("X'X isn't positive definite");
+			}
+		}
+
+		double[][] w = new double[d][outputs];
+		for (int j=0; j < outputs; j++) {
+			/* L u = X'y, then L' w = u */
+			double[] u = new double[d];
+			for (int r=0; r < d; r++) {
+				double sum = xty[r][j];
+				for (int k=0; k < r; k++)
+					sum -= lower[r][k] * u[k];
+				u[r] = sum / lower[r][r];
+			}
+			for (int r=d-1; r >= 0; r--) {
+				double sum = u[r];
+				for (int k=r+1; k < d; k++)
+					sum -= lower[k][r] * w[k][j];
+				w[r][j] = sum / lower[r][r];
+			}
+		}
+		return w;
+	}
+
+	/* lower factor of X'X + ridge on the weights, null if the matrix isn't
+	 * positive definite */
+	private double[][] cholesky(double ridge) {
+		int d = inputs + 1;
+		double[][] lower = new double[d][d];
+		for (int r=0; r < d; r++) {
+			for (int c=0; c <= r; c++) {
+				/* X'X is kept in the upper triangle */
+				double sum = xtx[c][r];
+				if (r == c && r < inputs)
+					sum += ridge;
+				for (int k=0; k < c; k++)
+					sum -= lower[r][k] * lower[c][k];
+				if (r == c) {
+					/* relative to the diagonal, the rounding of a dependent
+					 * column leaves a tiny positive pivot */
+					if (sum <= 1e-12 * Math.max(xtx[r][r], 1))
+						return null;
+					lower[r][r] = Math.sqrt(sum);
+				} else {
+					lower[r][c] = sum / lower[c][c];
+				}
+			}
+		}
+		return lower;
+	}
+
+	/* squared residual of the fit: Y'Y - 2 W'X'Y + W'X'XW */
+	private double residual(double[][] w) {
+		int d = inputs + 1;
+		double rss = yty;
+		for (int j=0; j < outputs; j++) {
+			for (int r=0; r < d; r++) {
+				rss -= 2 * w[r][j] * xty[r][j];
+				for (int c=0; c < d; c++) {
+					double g = (r <= c) ? xtx[r][c] : xtx[c][r];
+					rss += w[r][j] * g * w[c][j];
+				}
+			}
+		}
+		return Math.max(rss, 0);
+	}
+}
@@ -0,0 +1,37 @@
+package it.uniroma1.lcl.mynn;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event emitted by the Parser when a network file is loaded.
+ * The event spans the parsing of the file by the constructor and the 
+ * creation of the network by the first getNN, a failed load is committed
+ * with success false.
+ * The event is disabled by default, enable it into the recording settings
+ * with the name it.uniroma1.lcl.mynn.Load.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ */
+@Name("it.uniroma1.lcl.mynn.Load")
+@Label("Network Load")
+@Description("Parsing of a network file")
+@Category({"MyNN", "Load"})
+@Enabled(false)
+@StackTrace(false)
+class LoadEvent extends NetworkEvent {
+
+	static final EventType TYPE = EventType.getEventType(LoadEvent.class);
+
+	@Label("File Name")
+	String fileName;
+
+	@Label("Success")
+	boolean success;
+}
@@ -0,0 +1,23 @@
+package it.uniroma1.lcl.mynn;
+
+/**
+ * The metrics computed by the evaluation of a dataset.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			Evaluation class.
+ */
+public enum Metric {
+
+	/** mean cross-entropy between expected and processed output */
+	LOSS,
+	/** fraction of the instances with the expected class: the index of the
+	 *  max output, or the output rounded at 0.5 for a single output */
+	ACCURACY,
+	/** mean absolute error of the outputs */
+	MAE,
+	/** mean squared error of the outputs */
+	MSE,
+	/** counts of the instances by expected and processed class */
+	CONFUSION;
+}
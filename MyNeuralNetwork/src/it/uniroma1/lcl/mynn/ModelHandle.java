@@ -0,0 +1,330 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Handle of a network loaded from a file, replaced while it is used.
+ * The loaded network is never changed: a new version of the file is
+ * parsed and validated, then it replaces the served one with a single
+ * atomic swap. The process calls read the current version once, so the
+ * calls in progress complete on the old version, and they never wait for
+ * a loading.
+ * Each thread processes on its own copy of the version (see
+ * NeuralNetwork.copy), so the calls of different threads don't share
+ * the state of the layers. The copy is replaced by the first call of the
+ * thread on a new version, so each thread keeps a single copy and the 
+ * replaced versions are released.
+ * With startWatching the file is watched with a WatchService and every
+ * change is loaded in background; an invalid file is refused and the
+ * served version doesn't change.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			IReteNeurale#carica(String)
+ */
+public class ModelHandle implements IReteNeurale, Closeable {
+
+	/* wait for the end of a burst of writes before the loading */
+	private static final long SETTLE_MILLIS = 100;
+
+	private static class Version {
+		private final NeuralNetwork nn;
+		private final long number;
+
+		Version(NeuralNetwork nn, long number) {
+			this.nn = nn;
+			this.number = number;
+		}
+	}
+
+	/* copy of a version processed by a thread */
+	private static class Replica {
+		private final NeuralNetwork nn;
+		private final long number;
+
+		Replica(Version v) {
+			this.nn = v.nn.copy();
+			this.number = v.number;
+		}
+	}
+
+	private final Path file;
+	private final AtomicReference<Version> current = new AtomicReference<Version>();
+	private final ThreadLocal<Replica> replicas = new ThreadLocal<Replica>();
+	private volatile Exception lastError = null;
+	private volatile long failures = 0;
+	private WatchService watcher = null;
+	private Thread watchThread = null;
+
+	/**
+	 * Create the handle and load the first version of the network.
+	 *
+	 * @param	filename	the network file.
+	 * @throws	ParserException	if the file isn't a valid network.
+	 */
+	public ModelHandle(String filename) throws ParserException {
+		this.file = Paths.get(filename).toAbsolutePath();
+		reload();
+	}
+
+	/**
+	 * Load the file, validate the network and publish it.
+	 * The network must have at least a layer, each layer must have neurons,
+	 * a known activation function and as many inputs as the outputs of the
+	 * previous layer; a new version must have the same inputs and outputs
+	 * of the served one.
+	 * On errors the served version doesn't change.
+	 *
+	 * @return	the number of the published version.
+	 * @throws	ParserException	if the file isn't a valid network.
+	 */
+	public synchronized long reload() throws ParserException {
+
+		NeuralNetwork nn;
+		try {
+			nn = new Parser(file.toString()).getNN();
+			validate(nn);
+		} catch (ParserException e) {
+			failed(e);
+			throw e;
+		} catch (RuntimeException e) {
+			/* malformed numbers into the file */
+			ParserException pe = new ParserException("File " + file + " isn't a valid network: " + e);
+			failed(pe);
+			throw pe;
+		}
+
+		Version old = current.get();
+		Version v = new Version(nn, old == null ? 1 : old.number + 1);
+		current.set(v);
+		lastError = null;
+		return v.number;
+	}
+
+	private void failed(Exception e) {
+		lastError = e;
+		failures++;
+	}
+
+	private void validate(NeuralNetwork nn) throws ParserException {
+
+		if (nn == null || nn.getLayerCount() == 0)
+			throw new ParserException("File " + file + " has no layers");
+
+		LinkedList<Layer> layers = nn.getLayers();
+		int inputs = layers.getFirst().getNeuronInputUnits_j7();
+		int units = inputs;
+		for (Layer l : layers) {
+			if (l.getOutputUnits() == 0)
+				throw new ParserException("Layer " + l.getName() + " has no neurons");
+			if (l.getNeuronInputUnits_j7() != units)
+				throw new ParserException("Layer " + l.getName() + " expects " +
+										  l.getNeuronInputUnits_j7() + " inputs, " +
+										  units + " given by the previous layer");
+			try {
+				Neuron.class.getMethod(l.getActivationFunction().toLowerCase(), double.class);
+			} catch (NoSuchMethodException e) {
+				throw new ParserException("Layer " + l.getName() + " has an unknown activation " +
+										  "function " + l.getActivationFunction());
+			}
+			units = l.getOutputUnits();
+		}
+
+		Version v = current.get();
+		if (v != null) {
+			LinkedList<Layer> served = v.nn.getLayers();
+			if (served.getFirst().getNeuronInputUnits_j7() != inputs ||
+				served.getLast().getOutputUnits() != units)
+				throw new ParserException("File " + file + " changes the network inputs " +
+										  "or outputs");
+		}
+
+		/* a process on a private copy */
+		double[] out = nn.copy().process(new double[inputs]);
+		if (out == null || out.length != units)
+			throw new ParserException("File " + file + " can't be processed");
+		for (double o : out) {
+			if (Double.isNaN(o))
+				throw new ParserException("File " + file + " produces NaN outputs");
+		}
+	}
+
+	/**
+	 * Start to watch the file, each change is loaded in background.
+	 * Nothing happens if the file is already watched.
+	 *
+	 * @throws	IOException	if the directory of the file can't be watched.
+	 */
+	public synchronized void startWatching() throws IOException {
+
+		if (watcher != null)
+			return;
+
+		watcher = FileSystems.getDefault().newWatchService();
+		file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+								  StandardWatchEventKinds.ENTRY_MODIFY);
+		WatchService ws = watcher;
+		watchThread = new Thread(() -> watch(ws), "ModelHandle " + file.getFileName());
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+
+	private void watch(WatchService ws) {
+		try {
+			while (true) {
+				WatchKey key = ws.take();
+				boolean changed = changed(key);
+
+				/* the same write can raise many events */
+				while (changed) {
+					Thread.sleep(SETTLE_MILLIS);
+					key = ws.poll();
+					if (key == null)
+						break;
+					changed(key);
+				}
+
+				if (changed) {
+					try {
+						reload();
+					} catch (ParserException e) {
+						/* the served version doesn't change */
+						e.printStackTrace();
+					}
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			/* handle closed */
+		}
+	}
+
+	private boolean changed(WatchKey key) {
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (file.getFileName().equals(event.context()))
+				changed = true;
+		}
+		key.reset();
+		return changed;
+	}
+
+	/**
+	 * Stop to watch the file. The last loaded version is still served.
+	 *
+	 * @throws	IOException	on errors closing the WatchService.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (watcher == null)
+			return;
+		watcher.close();
+		watchThread.interrupt();
+		watcher = null;
+		watchThread = null;
+	}
+
+	/**
+	 * Process the input data with the current version of the network.
+	 *
+	 * @param	values	input data for the network.
+	 * @return	the network output.
+	 */
+	@Override
+	public double[] process(double[] values) {
+		Version v = current.get();
+		Replica r = replicas.get();
+		if (r == null || r.number != v.number) {
+			r = new Replica(v);
+			replicas.set(r);
+		}
+		return r.nn.process(values);
+	}
+
+	/**
+	 * Return the current object, each thread already processes its own copy.
+	 *
+	 * @return	the current object.
+	 */
+	@Override
+	public IReteNeurale replica() {
+		return this;
+	}
+
+	/**
+	 * The served versions can't be trained, train a copy from getNetwork.
+	 *
+	 * @throws	UnsupportedOperationException	always.
+	 */
+	@Override
+	public double trainIstanza(double[] values, double[] output) {
+		throw new UnsupportedOperationException("Model " + file + " can't be trained");
+	}
+
+	/**
+	 * The served versions can't be trained, train a copy from getNetwork.
+	 *
+	 * @throws	UnsupportedOperationException	always.
+	 */
+	@Override
+	public void train(double[][] inputs, double[][] outputs) {
+		throw new UnsupportedOperationException("Model " + file + " can't be trained");
+	}
+
+	/**
+	 * Return the name of the current version of the network.
+	 *
+	 * @return	network name
+	 */
+	@Override
+	public String getNome() {
+		return current.get().nn.getNome();
+	}
+
+	/**
+	 * Return a copy of the current version of the network.
+	 *
+	 * @return	network object.
+	 */
+	public NeuralNetwork getNetwork() {
+		return current.get().nn.copy();
+	}
+
+	/**
+	 * Return the number of the served version, the first loaded is 1.
+	 *
+	 * @return	version number.
+	 */
+	public long getVersion() {
+		return current.get().number;
+	}
+
+	/**
+	 * Return the error of the last failed loading, null if the last loading
+	 * has been published.
+	 *
+	 * @return	the error.
+	 */
+	public Exception getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Return the number of refused loadings.
+	 *
+	 * @return	failures counter.
+	 */
+	public long getFailureCount() {
+		return failures;
+	}
+}
@@ -0,0 +1,570 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiler of a loaded neural network into a dedicated class.
+ * The generated class implements IReteNeurale: the weights and thresholds
+ * are constants of the class, the dot products are unrolled and the
+ * activation functions are inlined, so the processing doesn't walk lists,
+ * doesn't use reflection and doesn't copy arrays.
+ * The outputs are identical to the ones of the source network: the
+ * operations are executed in the same order and the same Math functions are
+ * invoked.
+ * The compiled network is a snapshot of the weights and it can't be trained,
+ * trainIstanza and train raise an UnsupportedOperationException.
+ * The compiled network has no processing state: replica returns the network
+ * itself, so it is evaluated by all the threads.
+ * Each compiled network is defined by its own class loader, so the class is
+ * unloaded when the network isn't referenced anymore.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ *
+ */
+public class NetworkCompiler {
+
+	/* class file version 49: the verifier infers the types, no stack map
+	 * frames are needed for the branches of step and relu */
+	private static final int CLASS_VERSION = 49;
+	private static final int MAX_CODE = 65535;
+	private static final String PACKAGE = "it/uniroma1/lcl/mynn/compiled/";
+	private static final String INTERFACE = "it/uniroma1/lcl/mynn/IReteNeurale";
+	private static AtomicInteger classId = new AtomicInteger(0);
+
+	/* opcodes */
+	private static final int DCONST_0 = 0x0e;
+	private static final int DCONST_1 = 0x0f;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC_W = 0x13;
+	private static final int LDC2_W = 0x14;
+	private static final int DLOAD = 0x18;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int DALOAD = 0x31;
+	private static final int DSTORE = 0x39;
+	private static final int ASTORE = 0x3a;
+	private static final int ALOAD = 0x19;
+	private static final int DASTORE = 0x52;
+	private static final int DUP = 0x59;
+	private static final int DADD = 0x63;
+	private static final int DSUB = 0x67;
+	private static final int DMUL = 0x6b;
+	private static final int DDIV = 0x6f;
+	private static final int DNEG = 0x77;
+	private static final int DCMPG = 0x98;
+	private static final int IFLT = 0x9b;
+	private static final int GOTO = 0xa7;
+	private static final int ARETURN = 0xb0;
+	private static final int RETURN = 0xb1;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+	private static final int NEW = 0xbb;
+	private static final int NEWARRAY = 0xbc;
+	private static final int ATHROW = 0xbf;
+	private static final int WIDE = 0xc4;
+	private static final int T_DOUBLE = 7;
+
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	private NetworkCompiler() {
+	}
+
+	/**
+	 * Compile a loaded network.
+	 * On unsupported activation functions or networks too large for a
+	 * single method an exception will be raised.
+	 *
+	 * @param	nn	the network to compile.
+	 * @return	the compiled network.
+	 * @throws	CompilerException	on compilation errors.
+	 */
+	public static IReteNeurale compile(NeuralNetwork nn) throws CompilerException {
+
+		String className = PACKAGE + "CompiledNetwork" + classId.incrementAndGet();
+		byte[] bytes = new ClassBuilder(className).build(nn);
+
+		try {
+			Class<?> c = new CompiledNetworkLoader(NetworkCompiler.class.getClassLoader())
+								.define(className.replace('/', '.'), bytes);
+			return (IReteNeurale) c.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new CompilerException("Failed to define the compiled network " +
+										nn.getNome() + ": " + e);
+		}
+	}
+
+	private static class CompiledNetworkLoader extends ClassLoader {
+
+		CompiledNetworkLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * Writer of the class file: constant pool, methods and code.
+	 */
+	private static class ClassBuilder {
+
+		private String className;
+		private ByteArrayOutputStream pool = new ByteArrayOutputStream();
+		private DataOutputStream poolOut = new DataOutputStream(pool);
+		private Map<String, Integer> poolIndex = new HashMap<String, Integer>();
+		private int poolCount = 1;
+		private List<byte[]> methods = new ArrayList<byte[]>();
+
+		ClassBuilder(String className) {
+			this.className = className;
+		}
+
+		byte[] build(NeuralNetwork nn) throws CompilerException {
+
+			try {
+				/* <init> */
+				Code init = new Code();
+				init.op(ALOAD_0);
+				init.op(INVOKESPECIAL); init.u2(methodRef("java/lang/Object", "<init>", "()V"));
+				init.op(RETURN);
+				addMethod("<init>", "()V", init, 1, 1);
+
+				/* getNome */
+				Code nome = new Code();
+				nome.op(LDC_W); nome.u2(string(String.valueOf(nn.getNome())));
+				nome.op(ARETURN);
+				addMethod("getNome", "()Ljava/lang/String;", nome, 1, 1);
+
+				/* trainIstanza and train */
+				addMethod("trainIstanza", "([D[D)D", unsupported(), 3, 3);
+				addMethod("train", "([[D[[D)V", unsupported(), 3, 3);
+
+				/* replica, the process method keeps the outputs into locals */
+				Code replica = new Code();
+				replica.op(ALOAD_0);
+				replica.op(ARETURN);
+				addMethod("replica", "()L" + INTERFACE + ";", replica, 1, 1);
+
+				/* process */
+				Code process = new Code();
+				int maxLocals = process(nn, process);
+				addMethod("process", "([D)[D", process, 16, maxLocals);
+
+				return write();
+			} catch (IOException e) {
+				throw new CompilerException("Failed to write the compiled network " +
+											nn.getNome() + ": " + e.getMessage());
+			}
+		}
+
+		private Code unsupported() throws IOException {
+			Code c = new Code();
+			c.op(NEW); c.u2(classRef("java/lang/UnsupportedOperationException"));
+			c.op(DUP);
+			c.op(LDC_W); c.u2(string("A compiled network can't be trained"));
+			c.op(INVOKESPECIAL);
+			c.u2(methodRef("java/lang/UnsupportedOperationException", "<init>",
+						   "(Ljava/lang/String;)V"));
+			c.op(ATHROW);
+			return c;
+		}
+
+		/*
+		 * Locals: 0 this, 1 the inputs array, then two slots for each neuron
+		 * output of the current and of the previous layer, then the scratch
+		 * values used by the softmax.
+		 */
+		private int process(NeuralNetwork nn, Code c) throws IOException, CompilerException {
+
+			LinkedList<Layer> layers = nn.getLayers();
+			if (layers.isEmpty())
+				throw new CompilerException("The network " + nn.getNome() + " has no layers");
+
+			int maxUnits = 0;
+			for (Layer l : layers)
+				maxUnits = Math.max(maxUnits, l.getOutputUnits());
+
+			int[] bank = new int[] {2, 2 + 2 * maxUnits};
+			int scratch = 2 + 4 * maxUnits;
+			int current = 0;
+			int previousUnits = -1;
+
+			for (int li=0; li < layers.size(); li++) {
+				Layer l = layers.get(li);
+				String af = l.getActivationFunction().toLowerCase();
+				int out = bank[current];
+				int in = bank[1 - current];
+
+				for (int ni=0; ni < l.getOutputUnits(); ni++) {
+					Neuron n = l.getNeuron(ni);
+					double[] w = n.getWeights();
+					if (previousUnits != -1 && w.length != previousUnits)
+						throw new CompilerException("Layer " + l.getName() +
+								" expects " + w.length + " inputs, the previous " +
+								"layer has " + previousUnits + " outputs");
+
+					/* transferFunction = 0 + E(Wi * Xi), then + threshold */
+					c.op(DCONST_0);
+					for (int i=0; i < w.length; i++) {
+						c.ldc2(doubleConst(w[i]));
+						if (li == 0) {
+							c.op(ALOAD_1);
+							c.pushInt(i, this);
+							c.op(DALOAD);
+						} else {
+							c.local(DLOAD, in + 2 * i);
+						}
+						c.op(DMUL);
+						c.op(DADD);
+					}
+					c.ldc2(doubleConst(n.getThreshold()));
+					c.op(DADD);
+					activation(af, c, out + 2 * ni, l);
+					c.local(DSTORE, out + 2 * ni);
+				}
+
+				if (l.isSoftmax())
+					softmax(c, out, l.getOutputUnits(), scratch);
+
+				previousUnits = l.getOutputUnits();
+				current = 1 - current;
+			}
+
+			/* copy the outputs of the last layer into the returned array */
+			int units = layers.getLast().getOutputUnits();
+			int last = bank[1 - current];
+			c.pushInt(units, this);
+			c.op(NEWARRAY); c.u1(T_DOUBLE);
+			c.local(ASTORE, scratch);
+			for (int i=0; i < units; i++) {
+				c.local(ALOAD, scratch);
+				c.pushInt(i, this);
+				c.local(DLOAD, last + 2 * i);
+				c.op(DASTORE);
+			}
+			c.local(ALOAD, scratch);
+			c.op(ARETURN);
+
+			if (c.size() > MAX_CODE)
+				throw new CompilerException("The network " + nn.getNome() +
+						" is too large to be compiled (" + c.size() + " bytes of code)");
+
+			return scratch + 6;
+		}
+
+		/* the value is on the stack, the local is used as scratch */
+		private void activation(String af, Code c, int tmp, Layer l)
+				throws IOException, CompilerException {
+
+			switch (af) {
+			case "identity":
+			case "softmax":
+				/* the softmax is completed on the whole layer */
+				break;
+			case "step":
+				/* x < 0 ? 0 : 1 */
+				c.op(DCONST_0);
+				c.op(DCMPG);
+				int ifStep = c.jump(IFLT);
+				c.op(DCONST_1);
+				int gotoStep = c.jump(GOTO);
+				c.patch(ifStep);
+				c.op(DCONST_0);
+				c.patch(gotoStep);
+				break;
+			case "relu":
+				/* x < 0 ? 0 : x */
+				c.local(DSTORE, tmp);
+				c.local(DLOAD, tmp);
+				c.op(DCONST_0);
+				c.op(DCMPG);
+				int ifRelu = c.jump(IFLT);
+				c.local(DLOAD, tmp);
+				int gotoRelu = c.jump(GOTO);
+				c.patch(ifRelu);
+				c.op(DCONST_0);
+				c.patch(gotoRelu);
+				break;
+			case "logistic":
+				/* 1 / (1 + Math.pow(Math.E, -x)) */
+				c.local(DSTORE, tmp);
+				c.op(DCONST_1);
+				c.op(DCONST_1);
+				c.ldc2(doubleConst(Math.E));
+				c.local(DLOAD, tmp);
+				c.op(DNEG);
+				c.op(INVOKESTATIC); c.u2(methodRef("java/lang/Math", "pow", "(DD)D"));
+				c.op(DADD);
+				c.op(DDIV);
+				break;
+			case "tanh":
+				c.op(INVOKESTATIC); c.u2(methodRef("java/lang/Math", "tanh", "(D)D"));
+				break;
+			case "fastlogistic":
+				c.op(INVOKESTATIC); c.u2(methodRef("it/uniroma1/lcl/mynn/ApproximateActivation",
+												   "logistic", "(D)D"));
+				break;
+			case "fasttanh":
+				c.op(INVOKESTATIC); c.u2(methodRef("it/uniroma1/lcl/mynn/ApproximateActivation",
+												   "tanh", "(D)D"));
+				break;
+			default:
+				throw new CompilerException("Activation function " +
+						l.getActivationFunction() + " of the layer " + l.getName() +
+						" can't be compiled");
+			}
+		}
+
+		/* same steps of Layer.activateLayer */
+		private void softmax(Code c, int base, int units, int scratch) throws IOException {
+
+			int max = scratch;
+			int lse = scratch + 2;
+
+			c.ldc2(doubleConst(Double.NEGATIVE_INFINITY));
+			for (int i=0; i < units; i++) {
+				c.local(DLOAD, base + 2 * i);
+				c.op(INVOKESTATIC); c.u2(methodRef("java/lang/Math", "max", "(DD)D"));
+			}
+			c.local(DSTORE, max);
+
+			c.op(DCONST_0);
+			for (int i=0; i < units; i++) {
+				c.local(DLOAD, base + 2 * i);
+				c.local(DLOAD, max);
+				c.op(DSUB);
+				c.op(INVOKESTATIC); c.u2(methodRef("java/lang/Math", "exp", "(D)D"));
+				c.op(DADD);
+			}
+			/* log(sum) + max */
+			c.op(INVOKESTATIC); c.u2(methodRef("java/lang/Math", "log", "(D)D"));
+			c.local(DLOAD, max);
+			c.op(DADD);
+			c.local(DSTORE, lse);
+
+			for (int i=0; i < units; i++) {
+				c.local(DLOAD, base + 2 * i);
+				c.local(DLOAD, lse);
+				c.op(DSUB);
+				c.op(INVOKESTATIC); c.u2(methodRef("java/lang/Math", "exp", "(D)D"));
+				c.local(DSTORE, base + 2 * i);
+			}
+		}
+
+		private void addMethod(String name, String descriptor, Code code,
+							   int maxStack, int maxLocals) throws IOException {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bos);
+			out.writeShort(ACC_PUBLIC);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			/* one attribute: Code */
+			out.writeShort(1);
+			out.writeShort(utf8("Code"));
+			byte[] bytes = code.toByteArray();
+			out.writeInt(12 + bytes.length);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			/* no exception table, no attributes */
+			out.writeShort(0);
+			out.writeShort(0);
+			methods.add(bos.toByteArray());
+		}
+
+		private byte[] write() throws IOException {
+			int thisClass = classRef(className);
+			int superClass = classRef("java/lang/Object");
+			int iface = classRef(INTERFACE);
+
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bos);
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(CLASS_VERSION);
+			out.writeShort(poolCount);
+			out.write(pool.toByteArray());
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(1);
+			out.writeShort(iface);
+			/* no fields */
+			out.writeShort(0);
+			out.writeShort(methods.size());
+			for (byte[] m : methods)
+				out.write(m);
+			/* no attributes */
+			out.writeShort(0);
+			return bos.toByteArray();
+		}
+
+		/* constant pool */
+
+		int utf8(String s) throws IOException {
+			Integer idx = poolIndex.get("U" + s);
+			if (idx != null)
+				return idx;
+			poolOut.writeByte(1);
+			poolOut.writeUTF(s);
+			poolIndex.put("U" + s, poolCount);
+			return poolCount++;
+		}
+
+		int classRef(String internalName) throws IOException {
+			Integer idx = poolIndex.get("C" + internalName);
+			if (idx != null)
+				return idx;
+			int name = utf8(internalName);
+			poolOut.writeByte(7);
+			poolOut.writeShort(name);
+			poolIndex.put("C" + internalName, poolCount);
+			return poolCount++;
+		}
+
+		int string(String s) throws IOException {
+			Integer idx = poolIndex.get("S" + s);
+			if (idx != null)
+				return idx;
+			int value = utf8(s);
+			poolOut.writeByte(8);
+			poolOut.writeShort(value);
+			poolIndex.put("S" + s, poolCount);
+			return poolCount++;
+		}
+
+		int intConst(int v) throws IOException {
+			Integer idx = poolIndex.get("I" + v);
+			if (idx != null)
+				return idx;
+			poolOut.writeByte(3);
+			poolOut.writeInt(v);
+			poolIndex.put("I" + v, poolCount);
+			return poolCount++;
+		}
+
+		int doubleConst(double v) throws IOException {
+			/* key on the bits: -0.0 and NaN payloads are kept */
+			String key = "D" + Double.doubleToRawLongBits(v);
+			Integer idx = poolIndex.get(key);
+			if (idx != null)
+				return idx;
+			poolOut.writeByte(6);
+			poolOut.writeLong(Double.doubleToRawLongBits(v));
+			poolIndex.put(key, poolCount);
+			int ret = poolCount;
+			/* a double takes two entries */
+			poolCount += 2;
+			return ret;
+		}
+
+		int methodRef(String owner, String name, String descriptor) throws IOException {
+			String key = "M" + owner + "." + name + descriptor;
+			Integer idx = poolIndex.get(key);
+			if (idx != null)
+				return idx;
+			int c = classRef(owner);
+			int n = utf8(name);
+			int d = utf8(descriptor);
+			poolOut.writeByte(12);
+			poolOut.writeShort(n);
+			poolOut.writeShort(d);
+			int nameAndType = poolCount++;
+			poolOut.writeByte(10);
+			poolOut.writeShort(c);
+			poolOut.writeShort(nameAndType);
+			poolIndex.put(key, poolCount);
+			return poolCount++;
+		}
+	}
+
+	/**
+	 * Buffer of the bytecode of a method.
+	 */
+	private static class Code {
+
+		private ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+		void op(int opcode) {
+			code.write(opcode);
+		}
+
+		void u1(int v) {
+			code.write(v);
+		}
+
+		void u2(int v) {
+			code.write((v >>> 8) & 0xff);
+			code.write(v & 0xff);
+		}
+
+		int size() {
+			return code.size();
+		}
+
+		void ldc2(int index) {
+			op(LDC2_W);
+			u2(index);
+		}
+
+		void local(int opcode, int index) {
+			if (index > 255) {
+				op(WIDE);
+				op(opcode);
+				u2(index);
+			} else {
+				op(opcode);
+				u1(index);
+			}
+		}
+
+		void pushInt(int v, ClassBuilder cb) throws IOException {
+			if (v >= -128 && v <= 127) {
+				op(BIPUSH);
+				u1(v & 0xff);
+			} else if (v >= -32768 && v <= 32767) {
+				op(SIPUSH);
+				u2(v & 0xffff);
+			} else {
+				op(LDC_W);
+				u2(cb.intConst(v));
+			}
+		}
+
+		/* emit a branch with a placeholder offset, return its position */
+		int jump(int opcode) {
+			int at = code.size();
+			op(opcode);
+			u2(0);
+			return at;
+		}
+
+		/* the branch at the given position jumps to the current position */
+		void patch(int at) {
+			byte[] bytes = code.toByteArray();
+			int offset = bytes.length - at;
+			bytes[at + 1] = (byte) ((offset >>> 8) & 0xff);
+			bytes[at + 2] = (byte) (offset & 0xff);
+			code.reset();
+			code.write(bytes, 0, bytes.length);
+		}
+
+		byte[] toByteArray() {
+			return code.toByteArray();
+		}
+	}
+}
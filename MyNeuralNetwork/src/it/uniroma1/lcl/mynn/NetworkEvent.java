@@ -0,0 +1,30 @@
+package it.uniroma1.lcl.mynn;
+
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Base of the Flight Recorder events emitted by the neural network.
+ * The duration of the event is the elapsed time between begin and commit.
+ * The events are disabled by default: the callers check the static 
+ * EventType of the event before creating it, so a disabled event costs a 
+ * single flag read.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			ProcessEvent class.
+ * @see			TrainIstanzaEvent class.
+ * @see			TrainEpochEvent class.
+ * @see			LoadEvent class.
+ */
+abstract class NetworkEvent extends Event {
+
+	@Label("Network Name")
+	String networkName;
+
+	@Label("Batch Size")
+	int batchSize;
+
+	@Label("Layer Count")
+	int layerCount;
+}
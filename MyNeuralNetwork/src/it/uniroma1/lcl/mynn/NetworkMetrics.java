@@ -0,0 +1,152 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live metrics of a neural network: inference calls, latency, batch sizes,
+ * training progress and memory used by the weights.
+ * The object is created and registered into the platform MBeanServer by 
+ * NeuralNetwork.registerMBean. The recording is lock-free: the latencies go
+ * into a striped histogram and the counters are LongAdder. The training 
+ * progress is received as a training listener.
+ *  
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			NeuralNetwork#registerMBean()
+ */
+public class NetworkMetrics implements NetworkMetricsMBean, ITrainingListener {
+
+	private static final double NANOS_PER_MICRO = 1000.0;
+	private static final int BATCH_BUCKETS = 32;
+
+	private NeuralNetwork network;
+	private LatencyHistogram latency = new LatencyHistogram();
+	private LongAdder[] batchSizes = new LongAdder[BATCH_BUCKETS];
+	private volatile int epoch;
+	private volatile double loss;
+
+	/**
+	 * Create the metrics of a network.
+	 *
+	 * @param	network	the monitored network.
+	 */
+	NetworkMetrics(NeuralNetwork network) {
+		this.network = network;
+		for (int i=0; i < BATCH_BUCKETS; i++)
+			batchSizes[i] = new LongAdder();
+	}
+
+	/**
+	 * Record an inference call: a process of one instance or an evaluation
+	 * of a dataset.
+	 *
+	 * @param	nanos	latency of the call.
+	 * @param	batchSize	number of processed instances.
+	 */
+	void recordInference(long nanos, int batchSize) {
+		latency.record(nanos);
+		int bucket = 31 - Integer.numberOfLeadingZeros(Math.max(1, batchSize));
+		batchSizes[bucket].increment();
+	}
+
+	@Override
+	public void onEpochEnd(TrainingStats stats) {
+		epoch = stats.getEpoch();
+		loss = stats.getEpochLoss();
+	}
+
+	@Override
+	public String getNetworkName() {
+		return network.getNome();
+	}
+
+	@Override
+	public int getLayerCount() {
+		return network.getLayerCount();
+	}
+
+	@Override
+	public long getInferenceCount() {
+		return latency.getCount();
+	}
+
+	@Override
+	public double getLatencyMeanMicros() {
+		return latency.getMean() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getLatencyP50Micros() {
+		return latency.getValueAtPercentile(50) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getLatencyP90Micros() {
+		return latency.getValueAtPercentile(90) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getLatencyP99Micros() {
+		return latency.getValueAtPercentile(99) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getLatencyP999Micros() {
+		return latency.getValueAtPercentile(99.9) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getLatencyMaxMicros() {
+		return latency.getMax() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long[] getBatchSizeDistribution() {
+		long[] ret = new long[BATCH_BUCKETS];
+		for (int i=0; i < BATCH_BUCKETS; i++)
+			ret[i] = batchSizes[i].sum();
+		return ret;
+	}
+
+	@Override
+	public int getTrainingEpoch() {
+		return epoch;
+	}
+
+	@Override
+	public double getTrainingLoss() {
+		return loss;
+	}
+
+	/**
+	 * Return the bytes of the weights and thresholds kept on the heap: the 
+	 * sparse layers keep the CSR arrays and the dense weights.
+	 *
+	 * @return	bytes of the parameters.
+	 * @see		Layer#getWeightsHeapBytes()
+	 */
+	@Override
+	public long getWeightsHeapBytes() {
+		long bytes = 0;
+		for (Layer l : network.getLayers())
+			bytes += l.getWeightsHeapBytes();
+		return bytes;
+	}
+
+	/**
+	 * Return the bytes of the weights kept out of the heap.
+	 *
+	 * @return	always zero, the weights are kept on the heap.
+	 */
+	@Override
+	public long getWeightsOffHeapBytes() {
+		return 0;
+	}
+
+	@Override
+	public void reset() {
+		latency.reset();
+		for (LongAdder a : batchSizes)
+			a.reset();
+	}
+}
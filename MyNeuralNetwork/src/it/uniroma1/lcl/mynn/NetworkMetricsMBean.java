@@ -0,0 +1,49 @@
+package it.uniroma1.lcl.mynn;
+
+/**
+ * Management interface of the metrics of a neural network, exposed through
+ * JMX. Latencies are expressed in microseconds.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			NetworkMetrics class for the implementation.
+ */
+public interface NetworkMetricsMBean {
+
+	public String getNetworkName();
+
+	public int getLayerCount();
+
+	public long getInferenceCount();
+
+	public double getLatencyMeanMicros();
+
+	public double getLatencyP50Micros();
+
+	public double getLatencyP90Micros();
+
+	public double getLatencyP99Micros();
+
+	public double getLatencyP999Micros();
+
+	public double getLatencyMaxMicros();
+
+	/**
+	 * Distribution of the batch sizes: the element i counts the calls with
+	 * a batch size between 2^i and 2^(i+1) - 1. A process call is a batch of
+	 * one instance, an evaluation a batch of the whole dataset.
+	 *
+	 * @return	counters of the batch sizes.
+	 */
+	public long[] getBatchSizeDistribution();
+
+	public int getTrainingEpoch();
+
+	public double getTrainingLoss();
+
+	public long getWeightsHeapBytes();
+
+	public long getWeightsOffHeapBytes();
+
+	public void reset();
+}
@@ -0,0 +1,281 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Optimization pass over the layers of a loaded network.
+ * The pass builds a smaller network producing the same outputs:
+ * <ul>
+ * <li>a neuron with all the incoming weights at zero produces the constant
+ * F(threshold): its contribution is moved into the thresholds of the next
+ * layer and the neuron is removed;</li>
+ * <li>a neuron with all the outgoing weights at zero doesn't contribute to
+ * the next layer and it is removed;</li>
+ * <li>an "identity" layer is folded into the next layer, the product of
+ * the two weight matrices replaces both of them, when this doesn't
+ * increase the number of parameters.</li>
+ * </ul>
+ * The output layer, the softmax layers (their neurons are normalized
+ * together) and the last neuron of a layer are never removed.
+ * Folding the layers changes the order of the floating point operations,
+ * use verify to check the outputs of the optimized network against the
+ * source one.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ *
+ */
+public class NetworkOptimizer {
+
+	/**
+	 * Weights of a layer: a row for each neuron and the thresholds.
+	 */
+	private static class LayerData {
+		String name;
+		String activationFunction;
+		double[][] weights;
+		double[] thresholds;
+
+		LayerData(Layer l) {
+			name = l.getName();
+			activationFunction = l.getActivationFunction();
+			weights = new double[l.getOutputUnits()][];
+			thresholds = new double[l.getOutputUnits()];
+			for (int n=0; n < l.getOutputUnits(); n++) {
+				weights[n] = l.getNeuron(n).getWeights();
+				thresholds[n] = l.getNeuron(n).getThreshold();
+			}
+		}
+
+		int inputs() {
+			return weights.length == 0 ? 0 : weights[0].length;
+		}
+
+		int outputs() {
+			return weights.length;
+		}
+
+		boolean isIdentity() {
+			return activationFunction.toLowerCase().compareTo("identity") == 0;
+		}
+
+		boolean isSoftmax() {
+			return activationFunction.toLowerCase().compareTo("softmax") == 0;
+		}
+
+		void removeNeuron(int n) {
+			double[][] w = new double[weights.length - 1][];
+			double[] t = new double[thresholds.length - 1];
+			for (int i=0, j=0; i < weights.length; i++) {
+				if (i == n)
+					continue;
+				w[j] = weights[i];
+				t[j] = thresholds[i];
+				j++;
+			}
+			weights = w;
+			thresholds = t;
+		}
+
+		void removeInput(int in) {
+			for (int n=0; n < weights.length; n++) {
+				double[] w = new double[weights[n].length - 1];
+				for (int i=0, j=0; i < weights[n].length; i++) {
+					if (i != in)
+						w[j++] = weights[n][i];
+				}
+				weights[n] = w;
+			}
+		}
+
+		Layer toLayer() {
+			Layer l = new Layer(name, activationFunction);
+			for (int n=0; n < weights.length; n++) {
+				double[] wt = Arrays.copyOf(weights[n], weights[n].length + 1);
+				wt[wt.length - 1] = thresholds[n];
+				l.addNeuron(new Neuron(new double[weights[n].length], wt));
+			}
+			return l;
+		}
+	}
+
+	private NetworkOptimizer() {
+	}
+
+	/**
+	 * Create the optimized copy of a network. The source network isn't
+	 * modified.
+	 *
+	 * @param	nn	the network to optimize.
+	 * @return	the optimized network.
+	 * @throws	ActivateFunctionException	if the activation function of a
+	 * 			constant neuron can't be invoked.
+	 */
+	public static NeuralNetwork optimize(NeuralNetwork nn) throws ActivateFunctionException {
+
+		List<LayerData> layers = new ArrayList<LayerData>();
+		for (Layer l : nn.getLayers())
+			layers.add(new LayerData(l));
+
+		boolean changed;
+		do {
+			changed = foldConstantNeurons(layers);
+			changed |= removeDeadNeurons(layers);
+			changed |= foldIdentityLayers(layers);
+		} while (changed);
+
+		NeuralNetwork optimized = new NeuralNetwork(nn.getNome());
+		for (LayerData l : layers)
+			optimized.addLayer(l.toLayer());
+		return optimized;
+	}
+
+	private static boolean allZero(double[] values) {
+		for (double v : values) {
+			if (v != 0)
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean foldConstantNeurons(List<LayerData> layers)
+			throws ActivateFunctionException {
+
+		boolean changed = false;
+		for (int k=0; k < layers.size() - 1; k++) {
+			LayerData l = layers.get(k);
+			LayerData next = layers.get(k + 1);
+			if (l.isSoftmax())
+				continue;
+
+			for (int n=l.outputs() - 1; n >= 0 && l.outputs() > 1; n--) {
+				if (allZero(l.weights[n]) == false)
+					continue;
+
+				/* F(0 + threshold) through the activation function of the
+				 * layer */
+				Layer constant = new Layer(l.name, l.activationFunction);
+				constant.addNeuron(new Neuron(new double[0], new double[] {l.thresholds[n]}));
+				double value = constant.activateNeuron(0, new double[0]);
+
+				for (int m=0; m < next.outputs(); m++)
+					next.thresholds[m] += next.weights[m][n] * value;
+				l.removeNeuron(n);
+				next.removeInput(n);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	private static boolean removeDeadNeurons(List<LayerData> layers) {
+
+		boolean changed = false;
+		for (int k=0; k < layers.size() - 1; k++) {
+			LayerData l = layers.get(k);
+			LayerData next = layers.get(k + 1);
+			if (l.isSoftmax())
+				continue;
+
+			for (int n=l.outputs() - 1; n >= 0 && l.outputs() > 1; n--) {
+				boolean dead = true;
+				for (int m=0; m < next.outputs() && dead; m++)
+					dead = next.weights[m][n] == 0;
+				if (dead == false)
+					continue;
+
+				l.removeNeuron(n);
+				next.removeInput(n);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	private static boolean foldIdentityLayers(List<LayerData> layers) {
+
+		boolean changed = false;
+		for (int k=0; k < layers.size() - 1; k++) {
+			LayerData l = layers.get(k);
+			LayerData next = layers.get(k + 1);
+			if (l.isIdentity() == false)
+				continue;
+
+			long before = (long) l.outputs() * (l.inputs() + 1) +
+						  (long) next.outputs() * (next.inputs() + 1);
+			long after = (long) next.outputs() * (l.inputs() + 1);
+			if (after > before)
+				continue;
+
+			/* F(W2 (W1 X + T1) + T2) = F((W2 W1) X + (W2 T1 + T2)) */
+			double[][] w = new double[next.outputs()][l.inputs()];
+			double[] t = new double[next.outputs()];
+			for (int m=0; m < next.outputs(); m++) {
+				t[m] = next.thresholds[m];
+				for (int n=0; n < l.outputs(); n++) {
+					double w2 = next.weights[m][n];
+					t[m] += w2 * l.thresholds[n];
+					for (int i=0; i < l.inputs(); i++)
+						w[m][i] += w2 * l.weights[n][i];
+				}
+			}
+			next.weights = w;
+			next.thresholds = t;
+			layers.remove(k);
+			k--;
+			changed = true;
+		}
+		return changed;
+	}
+
+	/**
+	 * Compare the outputs of two networks on the given inputs.
+	 *
+	 * @param	a	the first network.
+	 * @param	b	the second network.
+	 * @param	inputs	the instances to process.
+	 * @return	the maximum absolute difference between the outputs.
+	 */
+	public static double verify(IReteNeurale a, IReteNeurale b, double[][] inputs) {
+		double max = 0;
+		for (double[] values : inputs) {
+			double[] outA = a.process(values);
+			double[] outB = b.process(values);
+			if (outA.length != outB.length)
+				return Double.POSITIVE_INFINITY;
+			for (int i=0; i < outA.length; i++) {
+				double diff = Math.abs(outA[i] - outB[i]);
+				if (Double.isNaN(diff))
+					return Double.POSITIVE_INFINITY;
+				max = Math.max(max, diff);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Compare the outputs of the source and of the optimized network on
+	 * random instances, with values between -1 and 1.
+	 *
+	 * @param	source	the source network.
+	 * @param	optimized	the optimized network.
+	 * @param	samples	number of random instances.
+	 * @param	tolerance	maximum accepted absolute difference.
+	 * @return	true if the networks are equivalent.
+	 */
+	public static boolean verify(NeuralNetwork source, NeuralNetwork optimized,
+								 int samples, double tolerance) {
+		LinkedList<Layer> layers = source.getLayers();
+		int inputs = layers.isEmpty() ? 0 : layers.getFirst().getNeuronInputUnits_j7();
+		Random rnd = new Random(samples);
+		double[][] values = new double[samples][inputs];
+		for (int s=0; s < samples; s++)
+			for (int i=0; i < inputs; i++)
+				values[s][i] = rnd.nextDouble() * 2 - 1;
+		return verify(source, optimized, values) <= tolerance;
+	}
+}
@@ -0,0 +1,435 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.zip.CRC32;
+
+/**
+ * Weights patch between two versions of a network with the same layers.
+ * The weights and the thresholds of the network are numbered in a single
+ * sequence: layer by layer, neuron by neuron, the weights and then the
+ * threshold. The patch keeps only the changed parameters: the gaps between
+ * their indexes are written as varints, followed by the new values
+ * (8 bytes each) or, for a quantized patch, by the differences quantized
+ * to a byte with a scale for each layer.
+ * A patch records the checksum of the network it was computed from and of
+ * the network it produces: apply refuses a network with a different
+ * checksum, so the patches of a sequence are applied only in order.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			NeuralNetwork#toString()
+ */
+public class NetworkPatch {
+
+	/* "JNNP" */
+	private static final int MAGIC = 0x4A4E4E50;
+	private static final int FORMAT = 1;
+	private static final int QUANTIZATION_LEVELS = 127;
+
+	/* inputs and outputs of each layer */
+	private final int[][] shape;
+	private final long baseChecksum;
+	private final long resultChecksum;
+	private final boolean quantized;
+	private final double[] scales;
+	private final int[] indexes;
+	/* new values, quantized differences for a quantized patch */
+	private final double[] values;
+	private final double maxError;
+
+	private NetworkPatch(int[][] shape, long baseChecksum, long resultChecksum,
+						 boolean quantized, double[] scales, int[] indexes,
+						 double[] values, double maxError) {
+		this.shape = shape;
+		this.baseChecksum = baseChecksum;
+		this.resultChecksum = resultChecksum;
+		this.quantized = quantized;
+		this.scales = scales;
+		this.indexes = indexes;
+		this.values = values;
+		this.maxError = maxError;
+	}
+
+	/**
+	 * Compute the patch from base to target.
+	 *
+	 * @param	base	the network the patch is applied to.
+	 * @param	target	the network produced by the patch.
+	 * @param	tolerance	the changes up to this absolute value are
+	 * 			skipped.
+	 * @param	quantize	true to write the differences quantized to a
+	 * 			byte, the result differs from target up to getMaxError.
+	 * @return	the patch.
+	 * @throws	PatchException	if the networks have different layers.
+	 */
+	public static NetworkPatch diff(NeuralNetwork base, NeuralNetwork target,
+									double tolerance, boolean quantize)
+			throws PatchException {
+
+		int[][] shape = shape(base);
+		if (Arrays.deepEquals(shape, shape(target)) == false)
+			throw new PatchException("Networks " + base.getNome() + " and " +
+									 target.getNome() + " have different layers");
+
+		LinkedList<Layer> baseLayers = base.getLayers();
+		LinkedList<Layer> targetLayers = target.getLayers();
+		int[] indexes = new int[16];
+		double[] values = new double[16];
+		int count = 0;
+		double[] scales = new double[shape.length];
+		double maxError = 0;
+
+		int index = 0;
+		for (int k=0; k < shape.length; k++) {
+			Neuron[] bn = baseLayers.get(k).getNeurons().toArray(new Neuron[0]);
+			Neuron[] tn = targetLayers.get(k).getNeurons().toArray(new Neuron[0]);
+			int first = count;
+			double maxDelta = 0;
+			for (int n=0; n < shape[k][1]; n++) {
+				double[] b = bn[n].getWeightsAndThreshold();
+				double[] t = tn[n].getWeightsAndThreshold();
+				for (int i=0; i < b.length; i++, index++) {
+					double delta = t[i] - b[i];
+					if (t[i] == b[i] || Math.abs(delta) <= tolerance) {
+						maxError = Math.max(maxError, Math.abs(delta));
+						continue;
+					}
+					if (count == indexes.length) {
+						indexes = Arrays.copyOf(indexes, count * 2);
+						values = Arrays.copyOf(values, count * 2);
+					}
+					indexes[count] = index;
+					values[count] = quantize ? delta : t[i];
+					maxDelta = Math.max(maxDelta, Math.abs(delta));
+					count++;
+				}
+			}
+
+			if (quantize) {
+				/* differences quantized to [-127, 127] steps of the scale */
+				double scale = maxDelta / QUANTIZATION_LEVELS;
+				scales[k] = scale;
+				int kept = first;
+				for (int e=first; e < count; e++) {
+					long q = scale == 0 ? 0 : Math.round(values[e] / scale);
+					maxError = Math.max(maxError, Math.abs(values[e] - q * scale));
+					if (q != 0) {
+						indexes[kept] = indexes[e];
+						values[kept++] = q;
+					}
+				}
+				count = kept;
+			}
+		}
+
+		indexes = Arrays.copyOf(indexes, count);
+		values = Arrays.copyOf(values, count);
+
+		/* the patched network is checked by the next patch */
+		NeuralNetwork result = base.copy();
+		NetworkPatch patch = new NetworkPatch(shape, checksum(base), 0, quantize,
+											  scales, indexes, values, maxError);
+		patch.patch(result);
+		return new NetworkPatch(shape, patch.baseChecksum, checksum(result), quantize,
+								scales, indexes, values, maxError);
+	}
+
+	/**
+	 * Apply the patch to the network, the weights are changed in place.
+	 * The layers compacted before the patch are compacted again.
+	 *
+	 * @param	nn	the network to patch.
+	 * @return	the number of changed parameters.
+	 * @throws	PatchException	if the network isn't the base of the patch.
+	 */
+	public int apply(NeuralNetwork nn) throws PatchException {
+
+		if (Arrays.deepEquals(shape, shape(nn)) == false)
+			throw new PatchException("Network " + nn.getNome() + " has different layers");
+		long checksum = checksum(nn);
+		if (checksum != baseChecksum)
+			throw new PatchException(String.format("Network %s checksum %08x, the patch " +
+												   "requires %08x", nn.getNome(),
+												   checksum, baseChecksum));
+		patch(nn);
+		nn.weightsChanged();
+		return indexes.length;
+	}
+
+	private void patch(NeuralNetwork nn) {
+
+		int e = 0;
+		int offset = 0;
+		int k = 0;
+		for (Layer l : nn.getLayers()) {
+			int width = shape[k][0] + 1;
+			int end = offset + shape[k][1] * width;
+			boolean changed = e < indexes.length && indexes[e] < end;
+			/* setWeights drops the CSR weights, read it before */
+			boolean wasSparse = l.isSparse();
+			Neuron[] neurons = changed ? l.getNeurons().toArray(new Neuron[0]) : null;
+			while (e < indexes.length && indexes[e] < end) {
+				int n = (indexes[e] - offset) / width;
+				Neuron neuron = neurons[n];
+				double[] w = neuron.getWeights();
+				double threshold = neuron.getThreshold();
+				for (; e < indexes.length && indexes[e] < offset + (n + 1) * width; e++) {
+					int i = indexes[e] - offset - n * width;
+					double v = i < w.length ? w[i] : threshold;
+					v = quantized ? v + values[e] * scales[k] : values[e];
+					if (i < w.length)
+						w[i] = v;
+					else
+						threshold = v;
+				}
+				neuron.setWeights(w);
+				if (threshold != neuron.getThreshold())
+					neuron.setThreshold(threshold);
+			}
+			if (changed && wasSparse)
+				l.compact();
+			offset = end;
+			k++;
+		}
+	}
+
+	private static int[][] shape(NeuralNetwork nn) {
+		int[][] shape = new int[nn.getLayerCount()][];
+		int k = 0;
+		for (Layer l : nn.getLayers())
+			shape[k++] = new int[] {l.getNeuronInputUnits_j7(), l.getOutputUnits()};
+		return shape;
+	}
+
+	/**
+	 * Return the checksum of the layers, of the weights and of the
+	 * thresholds of the network.
+	 *
+	 * @param	nn	the network.
+	 * @return	the CRC32 value.
+	 */
+	public static long checksum(NeuralNetwork nn) {
+		CRC32 crc = new CRC32();
+		byte[] b = new byte[8];
+		for (Layer l : nn.getLayers()) {
+			update(crc, b, l.getNeuronInputUnits_j7());
+			update(crc, b, l.getOutputUnits());
+			for (Neuron n : l.getNeurons()) {
+				for (double w : n.getWeightsAndThreshold())
+					update(crc, b, Double.doubleToLongBits(w));
+			}
+		}
+		return crc.getValue();
+	}
+
+	private static void update(CRC32 crc, byte[] b, long v) {
+		for (int i=0; i < 8; i++)
+			b[i] = (byte) (v >>> (56 - 8 * i));
+		crc.update(b, 0, 8);
+	}
+
+	/**
+	 * Write the patch.
+	 *
+	 * @param	os	the output stream, it isn't closed.
+	 * @throws	IOException	on write errors.
+	 */
+	public void write(OutputStream os) throws IOException {
+		DataOutputStream out = new DataOutputStream(os);
+		out.writeInt(MAGIC);
+		out.writeByte(FORMAT);
+		out.writeBoolean(quantized);
+		writeVarint(out, shape.length);
+		for (int[] s : shape) {
+			writeVarint(out, s[0]);
+			writeVarint(out, s[1]);
+		}
+		out.writeLong(baseChecksum);
+		out.writeLong(resultChecksum);
+		if (quantized) {
+			for (double s : scales)
+				out.writeDouble(s);
+		}
+		writeVarint(out, indexes.length);
+		int previous = -1;
+		for (int e=0; e < indexes.length; e++) {
+			writeVarint(out, indexes[e] - previous - 1);
+			previous = indexes[e];
+			if (quantized)
+				out.writeByte((int) values[e]);
+			else
+				out.writeDouble(values[e]);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Read a patch written by write.
+	 *
+	 * @param	is	the input stream, it isn't closed.
+	 * @return	the patch.
+	 * @throws	IOException	on read errors.
+	 * @throws	PatchException	if the stream isn't a patch.
+	 */
+	public static NetworkPatch read(InputStream is) throws IOException, PatchException {
+		DataInputStream in = new DataInputStream(is);
+		if (in.readInt() != MAGIC)
+			throw new PatchException("The stream isn't a network patch");
+		int format = in.readUnsignedByte();
+		if (format != FORMAT)
+			throw new PatchException("Unknown patch format " + format);
+		boolean quantized = in.readBoolean();
+		int[][] shape = new int[readVarint(in)][];
+		for (int k=0; k < shape.length; k++)
+			shape[k] = new int[] {readVarint(in), readVarint(in)};
+		long baseChecksum = in.readLong();
+		long resultChecksum = in.readLong();
+		double[] scales = new double[shape.length];
+		if (quantized) {
+			for (int k=0; k < scales.length; k++)
+				scales[k] = in.readDouble();
+		}
+
+		long parameters = 0;
+		for (int[] s : shape)
+			parameters += (long) s[1] * (s[0] + 1);
+		int count = readVarint(in);
+		if (count > parameters)
+			throw new PatchException("Patch with " + count + " changes for " +
+									 parameters + " parameters");
+		int[] indexes = new int[count];
+		double[] values = new double[count];
+		long previous = -1;
+		for (int e=0; e < count; e++) {
+			previous += readVarint(in) + 1L;
+			if (previous >= parameters)
+				throw new PatchException("Patch index " + previous + " out of " +
+										 parameters + " parameters");
+			indexes[e] = (int) previous;
+			values[e] = quantized ? in.readByte() : in.readDouble();
+		}
+		return new NetworkPatch(shape, baseChecksum, resultChecksum, quantized,
+								scales, indexes, values, Double.NaN);
+	}
+
+	/**
+	 * Save the patch into a file.
+	 *
+	 * @param	filename	the file name.
+	 * @throws	IOException	on write errors.
+	 */
+	public void save(String filename) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename))) {
+			write(out);
+		}
+	}
+
+	/**
+	 * Load a patch saved by save.
+	 *
+	 * @param	filename	the file name.
+	 * @return	the patch.
+	 * @throws	IOException	on read errors.
+	 * @throws	PatchException	if the file isn't a patch.
+	 */
+	public static NetworkPatch load(String filename) throws IOException, PatchException {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(filename))) {
+			return read(in);
+		}
+	}
+
+	private static void writeVarint(DataOutputStream out, int v) throws IOException {
+		while ((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	private static int readVarint(DataInputStream in) throws IOException, PatchException {
+		int v = 0;
+		for (int shift=0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			v |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (v < 0)
+					throw new PatchException("Negative varint into the patch");
+				return v;
+			}
+		}
+		throw new PatchException("Varint too long into the patch");
+	}
+
+	/**
+	 * Return the number of parameters changed by the patch.
+	 *
+	 * @return	changes counter.
+	 */
+	public int getChangeCount() {
+		return indexes.length;
+	}
+
+	/**
+	 * Return the size of the written patch.
+	 *
+	 * @return	size in bytes.
+	 */
+	public long getBytes() {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try {
+			write(bos);
+		} catch (IOException e) {
+			/* no errors writing to memory */
+			e.printStackTrace();
+		}
+		return bos.size();
+	}
+
+	/**
+	 * Return the maximum difference between the parameters of the patched
+	 * network and of the target, NaN for a read patch.
+	 *
+	 * @return	maximum absolute error.
+	 */
+	public double getMaxError() {
+		return maxError;
+	}
+
+	/**
+	 * Return true if the differences are quantized.
+	 *
+	 * @return	true for a quantized patch.
+	 */
+	public boolean isQuantized() {
+		return quantized;
+	}
+
+	/**
+	 * Return the checksum required to the patched network.
+	 *
+	 * @return	the CRC32 value.
+	 */
+	public long getBaseChecksum() {
+		return baseChecksum;
+	}
+
+	/**
+	 * Return the checksum of the network produced by the patch.
+	 *
+	 * @return	the CRC32 value.
+	 */
+	public long getResultChecksum() {
+		return resultChecksum;
+	}
+}
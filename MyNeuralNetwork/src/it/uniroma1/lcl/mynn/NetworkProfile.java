@@ -0,0 +1,187 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Per-layer profile of a neural network.
+ * When the profiling is enabled on the network, the time spent by each layer
+ * into the processing (forward) and into the upgrading function (backward)
+ * is recorded together with the number of calls. FLOPs, weights bytes and 
+ * activations bytes are derived from the calls and the layer size.
+ * The layers added to the network after the profiling was enabled are
+ * profiled too, their counters start from zero.
+ *  
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			NeuralNetwork#setProfiling(boolean)
+ */
+public class NetworkProfile {
+
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private List<Layer> layers;
+	private long[] forwardNanos;
+	private long[] forwardCalls;
+	private long[] backwardNanos;
+	private long[] backwardCalls;
+
+	/**
+	 * Create an empty profile for the given layers.
+	 *
+	 * @param	layers	the network layers.
+	 */
+	NetworkProfile(List<Layer> layers) {
+		this.layers = layers;
+		reset();
+	}
+
+	/**
+	 * Clear all the counters.
+	 */
+	public void reset() {
+		forwardNanos = new long[layers.size()];
+		forwardCalls = new long[layers.size()];
+		backwardNanos = new long[layers.size()];
+		backwardCalls = new long[layers.size()];
+	}
+
+	/* follow the layers added to the network, the counters are kept */
+	private void fit() {
+		int size = layers.size();
+		if (size != forwardCalls.length) {
+			forwardNanos = Arrays.copyOf(forwardNanos, size);
+			forwardCalls = Arrays.copyOf(forwardCalls, size);
+			backwardNanos = Arrays.copyOf(backwardNanos, size);
+			backwardCalls = Arrays.copyOf(backwardCalls, size);
+		}
+	}
+
+	void recordForward(int layerIndex, long nanos) {
+		if (layerIndex >= forwardCalls.length)
+			fit();
+		forwardNanos[layerIndex] += nanos;
+		forwardCalls[layerIndex]++;
+	}
+
+	void recordBackward(int layerIndex, long nanos) {
+		if (layerIndex >= backwardCalls.length)
+			fit();
+		backwardNanos[layerIndex] += nanos;
+		backwardCalls[layerIndex]++;
+	}
+
+	/**
+	 * Return the time spent by a layer to process the inputs.
+	 *
+	 * @param	layerIndex	the layer position.
+	 * @return	nanoseconds.
+	 */
+	public long getForwardNanos(int layerIndex) {
+		fit();
+		return forwardNanos[layerIndex];
+	}
+
+	/**
+	 * Return the number of times a layer has processed the inputs.
+	 *
+	 * @param	layerIndex	the layer position.
+	 * @return	calls counter.
+	 */
+	public long getForwardCalls(int layerIndex) {
+		fit();
+		return forwardCalls[layerIndex];
+	}
+
+	/**
+	 * Return the time spent by the upgrading function on a layer.
+	 *
+	 * @param	layerIndex	the layer position.
+	 * @return	nanoseconds.
+	 */
+	public long getBackwardNanos(int layerIndex) {
+		fit();
+		return backwardNanos[layerIndex];
+	}
+
+	/**
+	 * Return the number of times the upgrading function has walked a layer.
+	 *
+	 * @param	layerIndex	the layer position.
+	 * @return	calls counter.
+	 */
+	public long getBackwardCalls(int layerIndex) {
+		fit();
+		return backwardCalls[layerIndex];
+	}
+
+	/**
+	 * Return the floating point operations executed by a layer.
+	 * The backward walk is estimated as twice the forward one (the 
+	 * derivates and the update of each weight).
+	 *
+	 * @param	layerIndex	the layer position.
+	 * @return	floating point operations.
+	 */
+	public long getFlops(int layerIndex) {
+		fit();
+		Layer l = layers.get(layerIndex);
+		return l.getForwardFlops() * (forwardCalls[layerIndex] + 2 * backwardCalls[layerIndex]);
+	}
+
+	/**
+	 * Return the bytes of weights touched by a layer: read by the forward 
+	 * walk, read and written by the backward walk.
+	 *
+	 * @param	layerIndex	the layer position.
+	 * @return	bytes.
+	 */
+	public long getWeightsBytes(int layerIndex) {
+		fit();
+		Layer l = layers.get(layerIndex);
+		return l.getWeightsBytes() * (forwardCalls[layerIndex] + 2 * backwardCalls[layerIndex]);
+	}
+
+	/**
+	 * Return the bytes of the activations produced by a layer.
+	 *
+	 * @param	layerIndex	the layer position.
+	 * @return	bytes.
+	 */
+	public long getActivationBytes(int layerIndex) {
+		fit();
+		return layers.get(layerIndex).getActivationBytes() * forwardCalls[layerIndex];
+	}
+
+	/**
+	 * Print the profile, one row for each layer.
+	 *
+	 * @return	the profile table.
+	 */
+	@Override
+	public String toString() {
+
+		fit();
+		StringBuilder sb = new StringBuilder();
+		long totalNanos = 0;
+		for (int i=0; i < layers.size(); i++) {
+			totalNanos += forwardNanos[i] + backwardNanos[i];
+		}
+
+		sb.append(String.format(Locale.US, "%-12s %10s %12s %10s %12s %7s %14s %14s %14s%n",
+				"layer", "fwd calls", "fwd ms", "bwd calls", "bwd ms", "time %",
+				"MFLOPs", "weights MB", "activ. KB"));
+		for (int i=0; i < layers.size(); i++) {
+			long nanos = forwardNanos[i] + backwardNanos[i];
+			sb.append(String.format(Locale.US, "%-12s %10d %12.3f %10d %12.3f %7.1f %14.3f %14.3f %14.3f%n",
+					layers.get(i).getName(), 
+					forwardCalls[i], forwardNanos[i] / NANOS_PER_MILLI,
+					backwardCalls[i], backwardNanos[i] / NANOS_PER_MILLI,
+					totalNanos == 0 ? 0 : 100.0 * nanos / totalNanos,
+					getFlops(i) / 1e6, getWeightsBytes(i) / 1e6, 
+					getActivationBytes(i) / 1e3));
+		}
+		return sb.toString().trim();
+	}
+}
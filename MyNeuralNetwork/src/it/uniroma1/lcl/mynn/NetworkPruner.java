@@ -0,0 +1,140 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Arrays;
+
+/**
+ * Magnitude pruning of the weights of a network.
+ * The pruned weights are set to zero, the thresholds are never pruned.
+ * After the pruning each layer is compacted: when the density of its
+ * weights falls below Layer.SPARSE_BREAK_EVEN the neurons multiply only the
+ * non zero weights and the dense weights are dropped from the heap.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			Layer#compact()
+ */
+public class NetworkPruner {
+
+	private NetworkPruner() {
+	}
+
+	/**
+	 * Set to zero the weights with absolute value below the threshold.
+	 *
+	 * @param	nn	the network to prune.
+	 * @param	threshold	minimum absolute value of the kept weights.
+	 * @return	number of weights set to zero by the call.
+	 */
+	public static long pruneByMagnitude(NeuralNetwork nn, double threshold) {
+
+		long pruned = 0;
+		for (Layer l : nn.getLayers()) {
+			for (Neuron n : l.getNeurons()) {
+				double[] w = n.getWeights();
+				int count = 0;
+				for (int i=0; i < w.length; i++) {
+					if (w[i] != 0 && Math.abs(w[i]) < threshold) {
+						w[i] = 0;
+						count++;
+					}
+				}
+				if (count > 0) {
+					n.setWeights(w);
+					pruned += count;
+				}
+			}
+		}
+		compact(nn);
+		return pruned;
+	}
+
+	/**
+	 * Keep the k weights with the biggest absolute value of each neuron, the
+	 * others are set to zero. On equal values the first inputs are kept.
+	 *
+	 * @param	nn	the network to prune.
+	 * @param	k	number of weights kept by each neuron.
+	 * @return	number of weights set to zero by the call.
+	 */
+	public static long pruneTopK(NeuralNetwork nn, int k) {
+
+		if (k < 0)
+			throw new IllegalArgumentException("invalid number of kept weights " + k);
+
+		long pruned = 0;
+		for (Layer l : nn.getLayers()) {
+			for (Neuron n : l.getNeurons()) {
+				double[] w = n.getWeights();
+				if (w.length <= k)
+					continue;
+
+				/* k-th biggest absolute value */
+				double[] magnitude = new double[w.length];
+				for (int i=0; i < w.length; i++)
+					magnitude[i] = Math.abs(w[i]);
+				Arrays.sort(magnitude);
+				double kth = k == 0 ? Double.POSITIVE_INFINITY : magnitude[w.length - k];
+
+				int bigger = 0;
+				for (int i=0; i < w.length; i++) {
+					if (Math.abs(w[i]) > kth)
+						bigger++;
+				}
+				int equals = k - bigger;
+				int count = 0;
+				for (int i=0; i < w.length; i++) {
+					double a = Math.abs(w[i]);
+					if (a > kth)
+						continue;
+					if (a == kth && equals > 0) {
+						equals--;
+						continue;
+					}
+					if (w[i] != 0) {
+						w[i] = 0;
+						count++;
+					}
+				}
+				if (count > 0) {
+					n.setWeights(w);
+					pruned += count;
+				}
+			}
+		}
+		compact(nn);
+		return pruned;
+	}
+
+	/**
+	 * Returns the bytes of the weights and thresholds kept on the heap by
+	 * the network, after the pruning the compacted layers keep only the CSR
+	 * arrays.
+	 *
+	 * @param	nn	the network.
+	 * @return	bytes of the parameters.
+	 * @see		Layer#getWeightsHeapBytes()
+	 */
+	public static long getWeightsHeapBytes(NeuralNetwork nn) {
+		long bytes = 0;
+		for (Layer l : nn.getLayers())
+			bytes += l.getWeightsHeapBytes();
+		return bytes;
+	}
+
+	/**
+	 * Compact all the layers of the network and notify the change of the
+	 * weights.
+	 *
+	 * @param	nn	the network to compact.
+	 * @return	number of layers using the sparse weights.
+	 */
+	public static int compact(NeuralNetwork nn) {
+		int sparse = 0;
+		for (Layer l : nn.getLayers()) {
+			if (l.compact())
+				sparse++;
+		}
+		nn.weightsChanged();
+		return sparse;
+	}
+}
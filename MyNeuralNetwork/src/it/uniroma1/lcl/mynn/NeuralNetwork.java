@@ -1,5 +1,6 @@
 package it.uniroma1.lcl.mynn;
 
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
@@ -12,6 +13,9 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 /**
  * Implementation of the neural network based IReteNeurale structure.
  * 
@@ -25,6 +29,24 @@ public class NeuralNetwork implements IReteNeurale {
 	private LinkedList<Layer> layers = new LinkedList<Layer>();
 	private IUpgradeFunction uf = null;
 	private double lr = 0.2;
+	private ArrayList<ITrainingListener> listeners = new ArrayList<ITrainingListener>();
+	private TrainingStats stats = new TrainingStats();
+	private NetworkProfile profile = null;
+	private NetworkMetrics metrics = null;
+	private ObjectName metricsName = null;
+	private static AtomicInteger mbeanId = new AtomicInteger(0);
+	private volatile long version = 0;
+	private volatile boolean stopRequested = false;
+	private int trainedEpochs = 0;
+	private int checkpointEvery = 1;
+	private long recomputedLayers = 0;
+	/* state of the training step with the gradient checkpointing */
+	private boolean[] released = null;
+	private double[] stepValues = null;
+	private SparseVector stepSparse = null;
+	/* outputs of the last frozen layer for each instance of the train run */
+	private double[][] frozenOutputs = null;
+	private int frozenCacheLayer = -1;
 	
 	/**
 	 * Create the network object 
@@ -35,6 +57,38 @@ public class NeuralNetwork implements IReteNeurale {
 		this.networkName = networkName;
 	}
 	
+	/**
+	 * Create a copy of the current network object. The weights are shared
+	 * between the two networks and each neuron copies its weights on the 
+	 * first change (training or manual edit), so the copies are cheap and
+	 * independent: they can be used by different threads or trained with 
+	 * different parameters.
+	 * Listeners, metrics and profiling aren't copied.
+	 *
+	 * @return	the new network.
+	 */
+	public NeuralNetwork copy() {
+		NeuralNetwork nn = new NeuralNetwork(networkName);
+		for (Layer l : layers) {
+			nn.addLayer(l.copy());
+		}
+		nn.lr = lr;
+		nn.trainedEpochs = trainedEpochs;
+		nn.checkpointEvery = checkpointEvery;
+		return nn;
+	}
+
+	/**
+	 * Return a copy of the network, each thread processes its own copy.
+	 *
+	 * @return	the new network.
+	 * @see		#copy()
+	 */
+	@Override
+	public IReteNeurale replica() {
+		return copy();
+	}
+
 	/**
 	 * Add a neurons layer to the current network object. 
 	 *
@@ -63,6 +117,16 @@ public class NeuralNetwork implements IReteNeurale {
 		return this.networkName;
 	}
 
+	/**
+	 * Return all the layers of the network, from the input to the output one.
+	 *
+	 * @return	Layer objects list.
+	 * @see		Layer class.
+	 */
+	public LinkedList<Layer> getLayers() {
+		return new LinkedList<>(layers);
+	}
+
 	/**
 	 * Return the names of all layers.
 	 *
@@ -94,6 +158,349 @@ public class NeuralNetwork implements IReteNeurale {
 		this.uf = uf;
 	}
 
+	/**
+	 * Register a listener of the training process.
+	 *
+	 * @param	listener	the listener to add.
+	 * @see		ITrainingListener interface.
+	 * @see		TlConsole class.
+	 * @see		TlCsv class.
+	 */
+	public void addTrainingListener(ITrainingListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unregister a listener of the training process.
+	 *
+	 * @param	listener	the listener to remove.
+	 */
+	public void removeTrainingListener(ITrainingListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Return the learning rate used by the training.
+	 *
+	 * @return	learning rate constant.
+	 */
+	public double getLearningRate() {
+		return lr;
+	}
+
+	/* restored from a checkpoint */
+	void setLearningRate(double lr) {
+		this.lr = lr;
+	}
+
+	/**
+	 * Return the number of epochs trained by all the train runs of the
+	 * network, the copies and the checkpoints keep the counter.
+	 *
+	 * @return	trained epochs.
+	 * @see		TlCheckpoint class.
+	 */
+	public int getTrainedEpochs() {
+		return trainedEpochs;
+	}
+
+	/* restored from a checkpoint */
+	void setTrainedEpochs(int epochs) {
+		this.trainedEpochs = epochs;
+	}
+
+	/**
+	 * Set the gradient checkpointing of the training. Between the forward
+	 * and the backward of an instance each layer keeps the copy of its 
+	 * inputs for each neuron and its outputs; with the checkpointing only
+	 * every given number of layers (and the output layer) keeps them, the 
+	 * others release them as soon as the next layer has been processed.
+	 * The backward recomputes the released layers segment by segment, from
+	 * the nearest kept layer, before their weights are upgraded: the 
+	 * trained weights are the same, the memory is one segment plus the 
+	 * kept layers instead of the whole network and each released layer is
+	 * processed twice.
+	 * After a training step the outputs of the released layers are NaN, 
+	 * they are valid again after the next process.
+	 *
+	 * @param	every	number of layers between two kept layers, 1 (the 
+	 * 			default) keeps all the layers.
+	 * @see		#getTrainingActivationBytes()
+	 */
+	public void setCheckpointEvery(int every) {
+		this.checkpointEvery = every < 1 ? 1 : every;
+	}
+
+	/**
+	 * Return the number of layers between two kept layers of the gradient
+	 * checkpointing.
+	 *
+	 * @return	1 if all the layers are kept.
+	 * @see		#setCheckpointEvery(int)
+	 */
+	public int getCheckpointEvery() {
+		return checkpointEvery;
+	}
+
+	/**
+	 * Return the number of layers processed again by the backward of the
+	 * gradient checkpointing since the network has been created.
+	 *
+	 * @return	recomputed layers.
+	 */
+	public long getRecomputedLayers() {
+		return recomputedLayers;
+	}
+
+	/**
+	 * Return the estimated peak of the bytes kept for the backward by a 
+	 * training step: the kept layers plus the largest recomputed segment.
+	 *
+	 * @return	estimated bytes.
+	 * @see		#setCheckpointEvery(int)
+	 */
+	public long getTrainingActivationBytes() {
+		long kept = 0;
+		long segment = 0;
+		long peak = 0;
+		for (int i=0; i < layers.size(); i++) {
+			long bytes = layers.get(i).getTrainingActivationBytes();
+			if (isCheckpoint(i)) {
+				kept += bytes;
+				segment = 0;
+			} else {
+				segment += bytes;
+				peak = Math.max(peak, segment);
+			}
+		}
+		return kept + peak;
+	}
+
+	/* layers keeping their activations through the training step, the
+	 * frozen ones are read by the cache of the train run */
+	private boolean isCheckpoint(int i) {
+		return checkpointEvery <= 1 || i == layers.size()-1 || (i+1) % checkpointEvery == 0 ||
+			   layers.get(i).isFrozen();
+	}
+
+	/* release the activations of a layer, if it isn't a kept one */
+	private void releaseLayer(int i) {
+		if (released == null || released[i] || isCheckpoint(i))
+			return;
+		layers.get(i).releaseActivations();
+		released[i] = true;
+	}
+
+	/* process again the released layers up to the given one, from the
+	 * nearest layer still holding its outputs: the weights of these layers
+	 * haven't been upgraded yet, so the outputs are the ones of the forward */
+	private void recomputeLayers(int i) throws ActivateFunctionException {
+		if (released == null || i < 0 || released[i] == false)
+			return;
+		int from = i;
+		while (from >= 0 && released[from])
+			from--;
+		for (int k=from+1; k <= i; k++) {
+			Layer l = layers.get(k);
+			if (k == 0 && stepSparse != null) {
+				for (int n=0; n < l.getOutputUnits(); n++) {
+					l.setLayerNeuronOutput(n, l.activateNeuron(n, stepSparse));
+				}
+				l.activateLayer();
+			} else {
+				processLayer(k, (k == 0) ? stepValues : layers.get(k-1).getProcessedLayer());
+			}
+			released[k] = false;
+			recomputedLayers++;
+		}
+	}
+
+	/* process one layer with dense inputs */
+	private void processLayer(int k, double[] in) throws ActivateFunctionException {
+		Layer l = layers.get(k);
+		l.setLayerInputs(in);
+		for (int n=0; n < l.getOutputUnits(); n++) {
+			l.setLayerNeuronOutput(n, l.activateNeuron(n, in));
+		}
+		l.activateLayer();
+	}
+
+	/* index of the last frozen layer, the backward stops on it */
+	private int getFrozenLayer() {
+		int frozen = -1;
+		int i = 0;
+		for (Layer l : layers) {
+			if (l.isFrozen())
+				frozen = i;
+			i++;
+		}
+		return frozen;
+	}
+
+	/* process the layers after a frozen one from its cached outputs */
+	private double[] processFrom(int from, double[] outputs) {
+
+		Layer frozen = layers.get(from);
+		for (int n=0; n < outputs.length; n++) {
+			frozen.setLayerNeuronOutput(n, outputs[n]);
+		}
+		try {
+			for (int k=from+1; k < layers.size(); k++) {
+				long start = (profile != null) ? System.nanoTime() : 0;
+				processLayer(k, layers.get(k-1).getProcessedLayer());
+				if (profile != null)
+					profile.recordForward(k, System.nanoTime() - start);
+				if (k-1 > from)
+					releaseLayer(k-1);
+			}
+		} catch (ActivateFunctionException e) {
+			e.printStackTrace();
+			return null;
+		}
+		return layers.getLast().getProcessedLayer();
+	}
+
+	/**
+	 * Enable or disable the per-layer profiling of process and training.
+	 * Enabling the profiling clears the previous counters.
+	 *
+	 * @param	enabled	true to record the profile.
+	 * @see		NetworkProfile class.
+	 */
+	public void setProfiling(boolean enabled) {
+		this.profile = enabled ? new NetworkProfile(layers) : null;
+	}
+
+	/**
+	 * Return the per-layer profile recorded since the profiling was enabled.
+	 *
+	 * @return	the profile or null if the profiling is disabled.
+	 */
+	public NetworkProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Print the static cost of the network, one row for each layer: 
+	 * parameters, memory footprint and floating point operations needed to
+	 * process one instance.
+	 *
+	 * @return	the cost table.
+	 */
+	public String getCostReport() {
+
+		StringBuilder sb = new StringBuilder();
+		long parameters = 0;
+		long footprint = 0;
+		long flops = 0;
+		long activations = 0;
+
+		sb.append(String.format(Locale.US, "%-12s %-12s %8s %8s %12s %14s %12s %14s%n",
+				"layer", "function", "inputs", "outputs", "parameters", 
+				"footprint KB", "FLOPs/inst", "activ. bytes"));
+		for (Layer l : layers) {
+			sb.append(String.format(Locale.US, "%-12s %-12s %8d %8d %12d %14.3f %12d %14d%n",
+					l.getName(), l.getActivationFunction(), 
+					l.getNeuronInputUnits_j7(), l.getOutputUnits(),
+					l.getParameterCount(), l.getFootprintBytes() / 1e3,
+					l.getForwardFlops(), l.getActivationBytes()));
+			parameters += l.getParameterCount();
+			footprint += l.getFootprintBytes();
+			flops += l.getForwardFlops();
+			activations += l.getActivationBytes();
+		}
+		sb.append(String.format(Locale.US, "%-12s %-12s %8s %8s %12d %14.3f %12d %14d",
+				"total", "", "", "", parameters, footprint / 1e3, flops, activations));
+		return sb.toString();
+	}
+
+	/**
+	 * Return the bytes of the weights and thresholds of all the layers.
+	 *
+	 * @return	bytes of the parameters.
+	 */
+	public long getWeightsBytes() {
+		long bytes = 0;
+		for (Layer l : layers) {
+			bytes += l.getWeightsBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Stop the running training at the end of the current epoch, also from
+	 * another thread. Nothing happens if the network isn't training.
+	 *
+	 * @see		TlValidation class.
+	 */
+	public void stopTraining() {
+		stopRequested = true;
+	}
+
+	/**
+	 * Return the version of the weights, increased by each training step
+	 * that upgrades the weights or the thresholds.
+	 * The changes done directly on the layers and neurons objects must be
+	 * notified with weightsChanged.
+	 *
+	 * @return	weights version.
+	 * @see		CachedNetwork class.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Notify a change of the weights done out of the training, the version
+	 * of the weights is increased.
+	 */
+	public synchronized void weightsChanged() {
+		version++;
+	}
+
+	/**
+	 * Register the metrics of the current network into the platform 
+	 * MBeanServer, with the name 
+	 * it.uniroma1.lcl.mynn:type=NeuralNetwork,name=(network name),id=(n).
+	 * From now on the process and evaluate calls and the training progress
+	 * are recorded.
+	 * Nothing happens if the metrics are already registered.
+	 *
+	 * @return	the registered metrics.
+	 * @throws	JMException	on registration errors.
+	 * @see		NetworkMetricsMBean interface.
+	 */
+	public synchronized NetworkMetrics registerMBean() throws JMException {
+		if (metrics != null)
+			return metrics;
+		
+		NetworkMetrics m = new NetworkMetrics(this);
+		ObjectName name = new ObjectName("it.uniroma1.lcl.mynn:type=NeuralNetwork,name=" + 
+										 ObjectName.quote(String.valueOf(getNome())) + 
+										 ",id=" + mbeanId.incrementAndGet());
+		ManagementFactory.getPlatformMBeanServer().registerMBean(m, name);
+		addTrainingListener(m);
+		metricsName = name;
+		metrics = m;
+		return m;
+	}
+
+	/**
+	 * Remove the metrics of the current network from the platform 
+	 * MBeanServer and stop the recording.
+	 *
+	 * @throws	JMException	on unregistration errors.
+	 */
+	public synchronized void unregisterMBean() throws JMException {
+		if (metrics == null)
+			return;
+		
+		removeTrainingListener(metrics);
+		metrics = null;
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+		metricsName = null;
+	}
+
 	public void setNextLayerInputs(double[] inputs, int i) {
 		if (i <= this.layers.size()-1) {
 			this.layers.get(i).setLayerInputs(inputs);
@@ -117,6 +524,7 @@ public class NeuralNetwork implements IReteNeurale {
 			//System.out.println("neuronOutput java7 " + out);
 			currentLayer.setLayerNeuronOutput(i, out);
 		}
+		currentLayer.activateLayer();
 		
 		/* recursive step */
 		processedValues = process(currentLayer.getProcessedLayer(), ++layerIndex);
@@ -124,6 +532,10 @@ public class NeuralNetwork implements IReteNeurale {
 	}
 
 	private double[] process(double[] values, int layerIndex) throws ActivateFunctionException {
+		return process(values, null);
+	}
+
+	private double[] process(double[] values, SparseVector sparse) throws ActivateFunctionException {
 		
 		/* Iterative cycle on the layers/neurons instead recursive step.
 		 * Access to the data by the streams.
@@ -132,7 +544,17 @@ public class NeuralNetwork implements IReteNeurale {
 		AtomicInteger lId = new AtomicInteger(0); 
 		
 		layers.forEach(l -> {
-			l.getNeurons().forEach(n -> {
+			long start = (profile != null) ? System.nanoTime() : 0;
+			if (sparse != null && lId.get() == 0) {
+				/* first layer, only the present features are multiplied */
+				for (int i=0; i < l.getOutputUnits(); i++) {
+					try {
+						l.setLayerNeuronOutput(i, l.activateNeuron(i, sparse));
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			} else l.getNeurons().forEach(n -> {
 				try {
 					double[] in = l.getLayerInputs();
 					//System.out.println("layerInput java8 " + Arrays.toString(in));
@@ -143,9 +565,15 @@ public class NeuralNetwork implements IReteNeurale {
 					e.printStackTrace();
 				}
 			});
+			l.activateLayer();
 		
 			double[]processedValues = l.getProcessedLayer();
+			if (profile != null)
+				profile.recordForward(lId.get(), System.nanoTime() - start);
 			this.setNextLayerInputs(processedValues, lId.incrementAndGet());
+			/* the previous layer has been consumed */
+			if (released != null && lId.get() >= 2)
+				releaseLayer(lId.get() - 2);
 		});
 		
 		double[]processedValues = layers.get(layers.size()-1).getProcessedLayer();
@@ -159,18 +587,69 @@ public class NeuralNetwork implements IReteNeurale {
 	 */
 	@Override
 	public double[] process(double[] values) {
+		return processInstance(values, null, true);
+	}
+
+	/**
+	 * Process a sparse input vector: the first layer multiplies only the
+	 * weights of the present features.
+	 *
+	 * @param	values	sparse input data for the network.
+	 * @return	the network output.
+	 * @see		SparseVector class.
+	 */
+	public double[] process(SparseVector values) {
+		return processInstance(null, values, true);
+	}
+
+	/**
+	 * Evaluate the network on a dataset. With the registered metrics the
+	 * call is recorded as one inference of a batch of all the instances.
+	 *
+	 * @param	inputs	inputs data to elaborate.
+	 * @param	outputs	expected outputs.
+	 * @param	metrics	the metrics to compute, all if none is given.
+	 * @return	the evaluation.
+	 * @see		NetworkMetricsMBean#getBatchSizeDistribution()
+	 */
+	@Override
+	public Evaluation evaluate(double[][] inputs, double[][] outputs, Metric... metrics) {
+		NetworkMetrics m = this.metrics;
+		long start = (m != null) ? System.nanoTime() : 0;
+		Evaluation e = IReteNeurale.super.evaluate(inputs, outputs, metrics);
+		if (m != null)
+			m.recordInference(System.nanoTime() - start, inputs.length);
+		return e;
+	}
+
+	/* the forward of the training isn't recorded as an inference */
+	private double[] processInstance(double[] values, SparseVector sparse, boolean inference) {
 		
 		double ret[] = null;
+		ProcessEvent event = null;
+		NetworkMetrics m = inference ? metrics : null;
+		long start = (m != null) ? System.nanoTime() : 0;
+		
+		if (ProcessEvent.TYPE.isEnabled()) {
+			event = new ProcessEvent();
+			event.begin();
+		}
 		
 		/* inputs value for the network */
-		this.layers.get(0).setLayerInputs(values);
+		if (sparse == null)
+			this.layers.get(0).setLayerInputs(values);
 		
 		try {
-			ret = process(values, 0);
+			ret = process(values, sparse);
 			//System.out.println("Network Output " + Arrays.toString(ret));
 		} catch (ActivateFunctionException e) {
 			e.printStackTrace();
 		}
+		
+		if (event != null)
+			commitEvent(event, 1);
+		if (m != null)
+			m.recordInference(System.nanoTime() - start, 1);
 	
 		return ret;
 	}
@@ -181,31 +660,58 @@ public class NeuralNetwork implements IReteNeurale {
 
 		double errors = 0;
 
-		/* exit condition */
-		if (values.length == 0 || output.length == 0 || lIndex < 0)
+		/* exit condition, the layers from the last frozen one aren't 
+		 * upgraded */
+		if (values.length == 0 || output.length == 0 || lIndex < 0 || 
+			layers.get(lIndex).isFrozen())
 			return errors;
 				
+		/* the outputs of the previous layer, processed again if released */
+		recomputeLayers(lIndex-1);
+
 		/* step base */
+		long start = (profile != null) ? System.nanoTime() : 0;
 		try {
-			this.uf.upgrade(layers, lIndex,	values,	output, lr);
+			/* each layer receives the outputs of the previous one, the 
+			 * first one the network inputs */
+			double[] inputs = (lIndex == 0) ? values : layers.get(lIndex-1).getProcessedLayer();
+			this.uf.upgrade(layers, lIndex,	inputs,	output, lr);
 		} catch (UpgradeFunctionException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
+		if (profile != null)
+			profile.recordBackward(lIndex, System.nanoTime() - start);
+		releaseLayer(lIndex);
 	
 		/* recursive call */
-		double inputs[];
-		if (lIndex == (layers.size()-1)) {
-			inputs = values;
-		} else {
-			inputs = layers.get(lIndex).getProcessedLayer();
-		}
-		
-		trainIstanza(inputs, output, --lIndex);
+		trainIstanza(values, output, --lIndex);
 
 		return errors;
 	}
 	
+	private void upgradeLayers(SparseVector values, double[] output) {
+
+		/* same walk of the recursive version, from the output layer, each
+		 * layer receives the outputs of the previous one */
+		for (int lIndex=layers.size()-1; lIndex >= 0 && layers.get(lIndex).isFrozen() == false; lIndex--) {
+			long start = (profile != null) ? System.nanoTime() : 0;
+			try {
+				recomputeLayers(lIndex-1);
+				if (lIndex == 0)
+					this.uf.upgrade(layers, lIndex, values, output, lr);
+				else
+					this.uf.upgrade(layers, lIndex, layers.get(lIndex-1).getProcessedLayer(), 
+									output, lr);
+			} catch (UpgradeFunctionException | ActivateFunctionException e) {
+				e.printStackTrace();
+			}
+			releaseLayer(lIndex);
+			if (profile != null)
+				profile.recordBackward(lIndex, System.nanoTime() - start);
+		}
+	}
+	
 	/**
 	 * Train the network in order to produce the processed output near to the
 	 * values of the inputs as much as possible.
@@ -220,23 +726,97 @@ public class NeuralNetwork implements IReteNeurale {
 	@Override
 	public double trainIstanza(double[] values, double[] output) {
 
+		if (listeners.isEmpty())
+			return trainIstanza(values, null, output, false, -1);
+
+		stats.startBatch();
+		return trainIstanza(values, null, output, true, -1);
+	}
+
+	/**
+	 * Train the network with a sparse input vector: the weights of the
+	 * first layer are upgraded only for the present features.
+	 * 
+	 * @param	values	sparse inputs data to elaborate.
+	 * @param	output	expected output (training set).
+	 * @return	sum of errors.
+	 * @see		SparseVector class.
+	 */
+	public double trainIstanza(SparseVector values, double[] output) {
+
+		if (listeners.isEmpty())
+			return trainIstanza(null, values, output, false, -1);
+
+		stats.startBatch();
+		return trainIstanza(null, values, output, true, -1);
+	}
+
+	private double trainIstanza(double[] values, SparseVector sparse, double[] output, 
+								boolean listening, int sample) {
+
 		double errors = 0;
+		long t0 = 0;
+		long t1 = 0;
+		long t2 = 0;
+		TrainIstanzaEvent event = null;
+		
+		if (TrainIstanzaEvent.TYPE.isEnabled()) {
+			event = new TrainIstanzaEvent();
+			event.begin();
+		}
 	
 		//System.out.println("trainIstanza values = " + Arrays.toString(values) +
 			//	" output = " + Arrays.toString(output));
 		
-		/* Process the network with current inputs */
-		double[] networkOutput = this.process(values);
-		for (int i=0; i < output.length; i++) {
-			errors += Math.abs(output[i] - networkOutput[i]);
-			//System.out.println("network " + getNome() + " input: " + 
-			//					 values[i] + " output: " + networkOutput[i] + 
-			//					 " expected: " + output[i] + " error distance " 
-			//					 + errors);
+		if (listening)
+			t0 = System.nanoTime();
+		
+		if (checkpointEvery > 1 && layers.size() > 1) {
+			released = new boolean[layers.size()];
+			stepValues = values;
+			stepSparse = sparse;
+		}
+		
+		/* Process the network with current inputs, the outputs of the frozen
+		 * layers are cached by the train run */
+		double[] networkOutput;
+		boolean cached = sample >= 0 && frozenOutputs != null && frozenCacheLayer == getFrozenLayer();
+		if (cached && frozenOutputs[sample] != null) {
+			networkOutput = processFrom(frozenCacheLayer, frozenOutputs[sample]);
+		} else {
+			networkOutput = processInstance(values, sparse, false);
+			if (cached)
+				frozenOutputs[sample] = layers.get(frozenCacheLayer).getProcessedLayer();
+		}
+		
+		if (listening)
+			t1 = System.nanoTime();
+		
+		if (layers.getLast().isSoftmax()) {
+			/* softmax output layer, the error is the cross-entropy */
+			errors = layers.getLast().crossEntropy(output);
+		} else {
+			for (int i=0; i < output.length; i++) {
+				errors += Math.abs(output[i] - networkOutput[i]);
+				//System.out.println("network " + getNome() + " input: " + 
+				//					 values[i] + " output: " + networkOutput[i] + 
+				//					 " expected: " + output[i] + " error distance " 
+				//					 + errors);
+			}
 		}
 		
+		if (listening)
+			t2 = System.nanoTime();
+		
 		if (errors < 0.01) {
 			/* this set value is already trained */
+			endCheckpointing();
+			if (listening)
+				fireBatchEnd(t0, t1, t2, t2, errors);
+			if (event != null) {
+				event.errors = errors;
+				commitEvent(event, 1);
+			}
 			return 0;
 		}
 
@@ -252,7 +832,10 @@ public class NeuralNetwork implements IReteNeurale {
 		
 		/* walk the network recursively in order to upgrade weights / threshold */
 		try {
-			trainIstanza(values, output, layers.size()-1);
+			if (sparse == null)
+				trainIstanza(values, output, layers.size()-1);
+			else
+				upgradeLayers(sparse, output);
 		} catch (IllegalAccessException | IllegalArgumentException
 				| InvocationTargetException | NoSuchMethodException e) {
 			/* reflection errors */
@@ -261,16 +844,68 @@ public class NeuralNetwork implements IReteNeurale {
 			/* neuron errors */
 			e.printStackTrace();
 		}
+		endCheckpointing();
+		weightsChanged();
+		
+		if (listening)
+			fireBatchEnd(t0, t1, t2, System.nanoTime(), errors);
+		if (event != null) {
+			event.errors = errors;
+			commitEvent(event, 1);
+		}
 		
 		return errors;
 	}
 	
+	private void endCheckpointing() {
+		released = null;
+		stepValues = null;
+		stepSparse = null;
+	}
+	
+	private void commitEvent(NetworkEvent event, int batchSize) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.networkName = getNome();
+			event.batchSize = batchSize;
+			event.layerCount = getLayerCount();
+			event.commit();
+		}
+	}
+	
+	private void fireBatchEnd(long t0, long t1, long t2, long t3, double errors) {
+
+		/* the update is read back from the neurons, the Uf rules don't 
+		 * return the gradient */
+		double squaredUpdate = 0;
+		for (Layer l : layers) {
+			squaredUpdate += l.pollSquaredUpdate();
+		}
+		
+		stats.addPhase(TrainingPhase.FORWARD, t1 - t0);
+		stats.addPhase(TrainingPhase.LOSS, t2 - t1);
+		stats.addPhase(TrainingPhase.UPDATE, t3 - t2);
+		stats.endBatch(errors, Math.sqrt(squaredUpdate) / lr);
+		
+		for (int i=0; i < listeners.size(); i++) {
+			listeners.get(i).onBatchEnd(stats);
+		}
+	}
+	
 	/**
 	 *  Train the network in according to a set of inputs values and a set
 	 *  of outputs values.
+	 *  The registered training listeners are notified at the start and at 
+	 *  the end of the run, after each epoch and after each instance.
+	 *  The backward stops on the last frozen layer: it and the previous 
+	 *  layers aren't upgraded and their outputs for each instance are 
+	 *  processed by the first epoch only, the next ones start from the
+	 *  following layer.
 	 *
 	 * @param	inputs	inputs data to elaborate.
 	 * @param	outputs	expected output (training set).
+	 * @see		ITrainingListener interface.
+	 * @see		Layer#setFrozen(boolean)
 	 */
 	@Override
 	public void train(double[][] inputs, double[][] outputs) {
@@ -280,18 +915,74 @@ public class NeuralNetwork implements IReteNeurale {
 		//END FOR 
 		
 		double errorsThreshold;
+		boolean listening = !listeners.isEmpty();
+		stopRequested = false;
+
+		/* the frozen layers don't change during the run: their outputs are
+		 * computed by the first epoch only, the output layer is always 
+		 * processed for the error */
+		frozenCacheLayer = getFrozenLayer();
+		if (frozenCacheLayer >= 0 && frozenCacheLayer < layers.size()-1)
+			frozenOutputs = new double[inputs.length][];
 
 		Date date1 = new Date();		
 		System.out.println("start network " + this.getNome() + " training at " + 
 						   date1.getTime());
 		
+		if (listening) {
+			/* clear the updates done out of the run */
+			for (Layer l : layers) {
+				l.pollSquaredUpdate();
+			}
+			stats.startRun(getNome(), lr, inputs.length);
+			for (int i=0; i < listeners.size(); i++) {
+				listeners.get(i).onRunStart(stats);
+			}
+		}
+		
+		int epoch = 0;
 		do {
+			TrainEpochEvent event = null;
+			if (TrainEpochEvent.TYPE.isEnabled()) {
+				event = new TrainEpochEvent();
+				event.begin();
+			}
+			
 			errorsThreshold = 0;
-			for (int x=0; x < inputs.length; x++) {
-				errorsThreshold += trainIstanza(inputs[x], outputs[x]);		
+			if (listening == false) {
+				for (int x=0; x < inputs.length; x++) {
+					errorsThreshold += trainIstanza(inputs[x], null, outputs[x], false, x);		
+				}
+				trainedEpochs++;
+			} else {
+				stats.startEpoch();
+				for (int x=0; x < inputs.length; x++) {
+					stats.startBatch();
+					errorsThreshold += trainIstanza(inputs[x], null, outputs[x], true, x);
+				}
+				trainedEpochs++;
+				stats.endEpoch(errorsThreshold);
+				for (int i=0; i < listeners.size(); i++) {
+					listeners.get(i).onEpochEnd(stats);
+				}
 			}
 			//System.out.println("errorsThreshold " + errorsThreshold);			
-		} while (errorsThreshold > 0.01); 
+			
+			epoch++;
+			if (event != null) {
+				event.epoch = epoch;
+				event.errors = errorsThreshold;
+				commitEvent(event, inputs.length);
+			}
+		} while (errorsThreshold > 0.01 && stopRequested == false); 
+		frozenOutputs = null;
+		
+		if (listening) {
+			stats.endRun();
+			for (int i=0; i < listeners.size(); i++) {
+				listeners.get(i).onRunEnd(stats);
+			}
+		}
 		
 		Date date2 = new Date();
 		System.out.println("training completed in " + 
@@ -21,6 +21,13 @@ public class Neuron {
 	private double[] weights;
 	private double weightSum;
 	private HashMap<Integer, Double> bFactor;
+	private double squaredUpdate;
+	private double lastActivationInput = Double.NaN;
+	private double lastActivationOutput;
+	private int weightsVersion;
+	private boolean sharedWeights;
+	private SparseWeights sparseRows;
+	private int sparseRow;
 	
 	/**
 	 * Create the neuron object 
@@ -34,15 +41,84 @@ public class Neuron {
 		this.weights = Arrays.copyOf(weights, inputs.length);
 		
 		/* if the threshold isn't present into the weights list, generate
-		 * a random one */
+		 * a random one, the layer size isn't known here */
 		if (inputs.length == weights.length)
-			this.threshold = Math.random();
+			this.threshold = WeightInitializer.getDefault().threshold(inputs.length, 1);
 		else
 			this.threshold = weights[weights.length - 1];
 		
 		bFactor = new HashMap<Integer, Double>();
 	}
 
+	/* copy-on-write clone: the weights array is shared until the first
+	 * write of one of the two neurons */
+	private Neuron(Neuron source) {
+		this.threshold = source.threshold;
+		this.inputs = source.inputs;
+		this.weights = source.weights;
+		this.sparseRows = source.sparseRows;
+		this.sparseRow = source.sparseRow;
+		this.weightsVersion = source.weightsVersion;
+		this.sharedWeights = true;
+		bFactor = new HashMap<Integer, Double>();
+	}
+
+	/**
+	 * Create a copy of the current Neuron object. The weights are shared
+	 * with the copy and each neuron copies them on its first change, so the
+	 * copy is cheap and the two neurons are independent.
+	 *
+	 * @return	the new neuron.
+	 */
+	public Neuron copy() {
+		sharedWeights = true;
+		return new Neuron(this);
+	}
+
+	/**
+	 * Check if the weights array is shared with a copy.
+	 *
+	 * @return	true until the first change of the weights.
+	 */
+	boolean isWeightsShared() {
+		return sharedWeights;
+	}
+
+	/* the row of the CSR weights becomes the storage of the weights, the
+	 * dense array is dropped until the first change */
+	void compact(SparseWeights sparse, int row) {
+		if (sparse.isCurrent(row, this) == false)
+			return;
+		sparseRows = sparse;
+		sparseRow = row;
+		weights = null;
+		sharedWeights = false;
+	}
+
+	/**
+	 * Return the CSR weights keeping the weights of the current Neuron
+	 * object, in place of the dense array.
+	 *
+	 * @return	the CSR weights, null after the first change of the weights.
+	 * @see		Layer#compact()
+	 */
+	SparseWeights getCompactedWeights() {
+		return sparseRows;
+	}
+
+	/* the weights array ready for a change: built again from the CSR row
+	 * or copied when shared */
+	private double[] writableWeights() {
+		if (sparseRows != null) {
+			weights = sparseRows.getRow(sparseRow);
+			sparseRows = null;
+		} else if (sharedWeights) {
+			weights = Arrays.copyOf(weights, weights.length);
+		}
+		sharedWeights = false;
+		return weights;
+	}
+
 	/**
 	 * Set the weights for the current Neuron object.
 	 * The previously values will be overwritten.
@@ -51,6 +127,9 @@ public class Neuron {
 	 */
 	public void setWeights(double[] weigths) {
 		this.weights = weigths;
+		sparseRows = null;
+		sharedWeights = false;
+		weightsVersion++;
 	}
 
 	/**
@@ -73,7 +152,11 @@ public class Neuron {
 	 * @param	i  channel index
 	 */
 	public void setWeight(double weigth, int i) {
-		this.weights[i] = weigth;
+		double[] w = writableWeights();
+		double delta = weigth - w[i];
+		squaredUpdate += delta * delta;
+		w[i] = weigth;
+		weightsVersion++;
 	}
 	
 	/**
@@ -114,6 +197,8 @@ public class Neuron {
 	 * @return	weight value. 
 	 */
 	public double getWeight(int i) {
+		if (sparseRows != null)
+			return sparseRows.get(sparseRow, i);
 		return weights[i];
 	}
 
@@ -142,6 +227,8 @@ public class Neuron {
 	 * @return	array of weigths. 
 	 */
 	public double[] getWeights() {
+		if (sparseRows != null)
+			return sparseRows.getRow(sparseRow);
 		return Arrays.copyOf(weights, weights.length);
 	}
 
@@ -152,7 +239,7 @@ public class Neuron {
 	 * @return	array of weigths. 
 	 */
 	public double[] getWeightsAndThreshold() {
-		double[] wt = Arrays.copyOf(weights, weights.length+1);
+		double[] wt = Arrays.copyOf(getWeights(), inputs.length+1);
 		wt[wt.length-1] = threshold;
 		return wt;
 	}
@@ -164,10 +251,25 @@ public class Neuron {
 	 * @param	threshold	the new value. 
 	 */
 	public void setThreshold(double threshold) {
+		double delta = threshold - this.threshold;
+		squaredUpdate += delta * delta;
 		this.threshold = threshold;
 		return;
 	}
 
+	/**
+	 * Retrieve the sum of the squared changes applied to the weights and to 
+	 * the threshold by setWeight and setThreshold since the last call.
+	 * The counter is cleared.
+	 *
+	 * @return	sum of the squared updates.
+	 */
+	public double pollSquaredUpdate() {
+		double ret = squaredUpdate;
+		squaredUpdate = 0;
+		return ret;
+	}
+
 	/**
 	 * Calculate and store the transfer function value.
 	 * The transfer function is the balanced sum of all channel inputs for the
@@ -191,14 +293,16 @@ public class Neuron {
 												inputs.length + "]");
 
 		/* generate random values for the weights */
-		if (weights == null || weights.length == 0) {
+		if (sparseRows == null && (weights == null || weights.length == 0)) {
 			weights = new double[inputsValues.length];
 			for (int i=0; i < weights.length; i++) { 
-				weights[i] = Math.random();
+				weights[i] = WeightInitializer.getDefault().weight(weights.length, 1);
 			}
 		}
 		
 		inputs = Arrays.copyOf(inputsValues, inputsValues.length);
+		if (sparseRows != null)
+			return sparseRows.dot(sparseRow, inputs);
 		
 		for (int i=0; i < weights.length; i++) {
 			weightSum += weights[i] * inputs[i];
@@ -206,6 +310,71 @@ public class Neuron {
 		return weightSum;
 	}
 	
+	/**
+	 * Calculate the transfer function value for a sparse inputs vector,
+	 * only the weights of the present features are multiplied.
+	 * The inputs kept by the neuron aren't changed.
+	 *
+	 * @param	inputsValues	neuron inputs.
+	 * @return	transfer function value.
+	 */
+	public double transferFunction(SparseVector inputsValues) throws ActivateFunctionException {
+
+		if (inputsValues.getDimension() != inputs.length)
+			throw new ActivateFunctionException("Input values mismatch with" + 
+												" expected numbers from" + 
+												" current neuron [" + 
+												inputsValues.getDimension() + " vs " + 
+												inputs.length + "]");
+		if (sparseRows != null) {
+			double sum = 0;
+			for (int k=0; k < inputsValues.getNonZeroCount(); k++)
+				sum += getWeight(inputsValues.getIndex(k)) * inputsValues.getValue(k);
+			return sum;
+		}
+		return inputsValues.dot(weights);
+	}
+
+	/**
+	 * Calculate the transfer function value from the CSR weights of the 
+	 * weights, only the non zero weights are multiplied.
+	 * The inputs are kept by reference instead of being copied, they are
+	 * read by the upgrading functions during the same training step.
+	 *
+	 * @param	inputsValues neuron inputs.
+	 * @param	sparse	weights of the layer.
+	 * @param	row	row of the current neuron.
+	 * @return	transfer function value.
+	 */
+	double transferFunction(double[] inputsValues, SparseWeights sparse, int row) 
+			throws ActivateFunctionException {
+
+		if (inputsValues.length != inputs.length)
+			throw new ActivateFunctionException("Input values mismatch with" + 
+												" expected numbers from" + 
+												" current neuron [" + 
+												inputsValues.length + " vs " + 
+												inputs.length + "]");
+		inputs = inputsValues;
+		return sparse.dot(row, inputsValues);
+	}
+
+	/* the inputs copy is dropped for a shared array of the same length, the
+	 * length is the number of inputs channels */
+	void releaseInputs(double[] shared) {
+		if (shared.length == inputs.length)
+			inputs = shared;
+	}
+
+	/**
+	 * Return the version of the weights, increased by each change.
+	 *
+	 * @return	weights version.
+	 */
+	int getWeightsVersion() {
+		return weightsVersion;
+	}
+
 	/**
 	 * Calculate the "step" function.
 	 * Invoked by the activation function on the current Neuron object.
@@ -260,7 +429,8 @@ public class Neuron {
 	 * @return	output.
 	 */
 	public double logistic_f1(double x) { 
-		return logistic(x) * (1 - logistic(x));
+		double s = logistic(x);
+		return s * (1 - s);
 	}
 
 	/**
@@ -282,7 +452,66 @@ public class Neuron {
 	 * @return	output.
 	 */
 	public double tanh_f1(double x) { 
-		return 1 - Math.pow(tanh(x), 2);
+		double t = tanh(x);
+		return 1 - t * t;
+	}
+
+	/* the approximated logistic of the last input, kept for the derivates:
+	 * the training calls F and F1 with the same input */
+	private double cachedLogistic(double x) {
+		if (x != lastActivationInput) {
+			lastActivationOutput = ApproximateActivation.logistic(x);
+			lastActivationInput = x;
+		}
+		return lastActivationOutput;
+	}
+
+	/**
+	 * Calculate the approximated "logistic" function, see the
+	 * ApproximateActivation class for the error bound.
+	 * Invoked by the activation function on the current Neuron object.
+	 *
+	 * @param	x	input.
+	 * @return	output.
+	 */
+	public double fastlogistic(double x) {
+		return cachedLogistic(x);
+	}
+
+	/**
+	 * Calculate the approximated "logistic" defivate F1 function, from the
+	 * forward value.
+	 * Invoked by the activation function on the current Neuron object.
+	 *
+	 * @param	x	input.
+	 * @return	output.
+	 */
+	public double fastlogistic_f1(double x) {
+		return ApproximateActivation.logisticF1(cachedLogistic(x));
+	}
+
+	/**
+	 * Calculate the approximated "tanh" function, see the
+	 * ApproximateActivation class for the error bound.
+	 * Invoked by the activation function on the current Neuron object.
+	 *
+	 * @param	x	input.
+	 * @return	output.
+	 */
+	public double fasttanh(double x) {
+		return 2 * cachedLogistic(2 * x) - 1;
+	}
+
+	/**
+	 * Calculate the approximated "tanh" defivate F1 function, from the
+	 * forward value.
+	 * Invoked by the activation function on the current Neuron object.
+	 *
+	 * @param	x	input.
+	 * @return	output.
+	 */
+	public double fasttanh_f1(double x) {
+		return ApproximateActivation.tanhF1(2 * cachedLogistic(2 * x) - 1);
 	}
 
 	/**
@@ -307,4 +536,32 @@ public class Neuron {
 		return x < 0 ? 0 : 1;
 	}
 
+	/**
+	 * Calculate the "softmax" function for a single neuron.
+	 * The softmax is a layer function: the neuron returns the raw value
+	 * (logit) and the layer normalizes all the outputs together.
+	 * Invoked by the activation function on the current Neuron object.
+	 *
+	 * @param	x	input.
+	 * @return	output.
+	 * @see		Layer#activateLayer()
+	 */
+	public double softmax(double x) {
+		return x;
+	}
+
+	/**
+	 * Calculate the "softmax" defivate F1 function.
+	 * The softmax is always paired with the cross-entropy loss, the derivate
+	 * of the couple with respect to the logit is (Oi - Yi), so the factor
+	 * applied by the upgrading functions is 1.
+	 * Invoked by the activation function on the current Neuron object.
+	 *
+	 * @param	x	input.
+	 * @return	output.
+	 */
+	public double softmax_f1(double x) {
+		return 1;
+	}
+
 }
@@ -8,6 +8,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.SplittableRandom;
 
 /**
  * The parser.
@@ -25,6 +26,8 @@ public class Parser {
 	private LinkedList<Map<String, String>> lines = new LinkedList<Map<String, String>>();
 	private Set<Entry<String, String>> entries;
 	private Map<String, String> tokensMap;
+	/* open until the first getNN */
+	private LoadEvent event;
 	
 	/**
 	 * Create the parser object and load the file.
@@ -38,12 +41,40 @@ public class Parser {
 			throw new ParserException("Invalid filename");
 		}
 
-		file = new File(filename);
-		if (file.exists() == false) {
-			throw new ParserException("File " + filename + " not found");
+		if (LoadEvent.TYPE.isEnabled()) {
+			event = new LoadEvent();
+			event.begin();
 		}
+
+		boolean parsed = false;
+		try {
+			file = new File(filename);
+			if (file.exists() == false) {
+				throw new ParserException("File " + filename + " not found");
+			}
+			
+			verifyTemplate();
+			parsed = true;
+		} finally {
+			if (parsed == false)
+				commitEvent(filename, null);
+		}
+	}
+	
+	private void commitEvent(String filename, NeuralNetwork nn) {
 		
-		verifyTemplate();
+		if (event == null)
+			return;
+		event.end();
+		if (event.shouldCommit()) {
+			event.fileName = filename;
+			event.networkName = lines.isEmpty() ? null : 
+				lines.getFirst().get(ParserTokens.NETWORK_NAME.toString());
+			event.layerCount = (nn != null) ? nn.getLayerCount() : Math.max(0, lines.size() - 1);
+			event.success = nn != null;
+			event.commit();
+		}
+		event = null;
 	}
 	
 	private void newLayer() {
@@ -99,13 +130,25 @@ public class Parser {
 					/* verify all mandatory tokens */
 					for (Entry<String, String> entry : entries) {
 						if (entry.getValue() == null && 
-							entry.getKey().compareTo(ParserTokens.WEIGHTS.toString()) != 0) {
+							entry.getKey().compareTo(ParserTokens.WEIGHTS.toString()) != 0 &&
+							entry.getKey().compareTo(ParserTokens.INITIALIZER.toString()) != 0) {
 							throw new ParserException("File " + file.getName() + 
 									  " has an invalid template," + 
 									  " incomplete layer, expected token: " + 
 									  entry.getKey());							
 						}
 					}
+
+					/* verify the optional initializer */
+					String init = tokensMap.get(ParserTokens.INITIALIZER.toString());
+					if (init != null) {
+						try {
+							WeightInitializer.parse(init);
+						} catch (IllegalArgumentException e) {
+							throw new ParserException("File " + file.getName() + 
+									  " has an invalid template, " + e.getMessage());
+						}
+					}
 				}
 			}
 			
@@ -146,16 +189,51 @@ public class Parser {
 	/**
 	 * Retrieve the Neural Network object created on the schema loaded from
 	 * the file specified at the parser creation time.
+	 * The layers without weights and without the init token are initialized
+	 * by the default initializer.
 	 *
 	 * @return	the neural network object. 
+	 * @see		WeightInitializer#getDefault()
 	 */
 	public NeuralNetwork getNN() {
+		return getNN(WeightInitializer.getDefault());
+	}
+
+	/**
+	 * Retrieve the Neural Network object created on the schema loaded from
+	 * the file specified at the parser creation time.
+	 * The layers without weights are initialized by the initializer given
+	 * with their init token, the others by the initializer passed.
+	 * A seeded WeightInitializer restarts from its seed at each call, so the
+	 * same initializer gives the same network every time.
+	 *
+	 * @param	initializer	the initializer of the layers without weights.
+	 * @return	the neural network object. 
+	 * @since	1.1
+	 */
+	public NeuralNetwork getNN(IWeightInitializer initializer) {
+
+		NeuralNetwork myNN = null;
+		try {
+			myNN = buildNN(initializer);
+			return myNN;
+		} finally {
+			/* null on failure */
+			commitEvent(file.toString(), myNN);
+		}
+	}
+	
+	private NeuralNetwork buildNN(IWeightInitializer initializer) {
 
 		NeuralNetwork myNN = null;
 		double[][] weights;
 		int inputs;
 		int maxNeurons;
 		Layer layer;
+		/* roots of the seeded initializers, split by each layer, and the 
+		 * initializer given for this network */
+		Map<Long, SplittableRandom> roots = new HashMap<Long, SplittableRandom>();
+		IWeightInitializer given = null;
 		
 		for (Map<String, String> line : lines) {
 
@@ -174,11 +252,19 @@ public class Parser {
 			maxNeurons = Integer.parseInt(line.get(ParserTokens.OUTPUT_UNITS.toString()));
 
 			if(line.get(ParserTokens.WEIGHTS.toString()) == null) {
-				/* generate randomically weights and threshold for the neuron */
-				weights = new double[maxNeurons][inputs + 1];
+				/* generate weights and threshold for the neuron */
+				IWeightInitializer init;
+				if (line.get(ParserTokens.INITIALIZER.toString()) != null)
+					init = WeightInitializer.parse(line.get(ParserTokens.INITIALIZER.toString()), roots);
+				else {
+					if (given == null)
+						given = (initializer instanceof WeightInitializer) ? 
+								((WeightInitializer) initializer).forNetwork(roots) : initializer;
+					init = given;
+				}
+				weights = new double[maxNeurons][];
 				for (int n=0; n < maxNeurons; n++)
-					for (int i=0; i < weights[n].length; i++)
-						weights[n][i] = Math.random();
+					weights[n] = init.init(inputs, maxNeurons);
 			} else
 				weights = parseOptionalWeights(line.get(ParserTokens.WEIGHTS.toString()),
 											   maxNeurons, inputs); 
@@ -187,6 +273,9 @@ public class Parser {
 				layer.addNeuron(new Neuron(new double[inputs], weights[i]));
 			}
 			
+			/* weights mostly at zero are kept and multiplied as CSR arrays */
+			layer.compact();
+			
 			/* add layer into the network */
 			myNN.addLayer(layer);
 		}
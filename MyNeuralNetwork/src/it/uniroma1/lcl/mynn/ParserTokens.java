@@ -15,7 +15,8 @@ public enum ParserTokens {
 	ACTIVATION_FUNCTION("activationFunction="), 
 	INPUT_UNITS("inputUnits="),
 	OUTPUT_UNITS("outputUnits="), 
-	WEIGHTS("weights=");
+	WEIGHTS("weights="),
+	INITIALIZER("init=");
 	
 	private final String currentToken;
 	
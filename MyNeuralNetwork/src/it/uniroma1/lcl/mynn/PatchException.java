@@ -0,0 +1,23 @@
+package it.uniroma1.lcl.mynn;
+
+/**
+ * The exception class to raise and catch errors reading a weights patch or
+ * applying it to a network.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ */
+public class PatchException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Exception halted by the NetworkPatch  
+	 *
+	 * @param  errMsg error description developed inside the patch
+	 * @see    NetworkPatch class
+	 */
+	public PatchException(String errMsg) {
+		super(errMsg);
+	}
+}
@@ -0,0 +1,28 @@
+package it.uniroma1.lcl.mynn;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event emitted by NeuralNetwork.process.
+ * The event is disabled by default, enable it into the recording settings
+ * with the name it.uniroma1.lcl.mynn.Process.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ */
+@Name("it.uniroma1.lcl.mynn.Process")
+@Label("Network Process")
+@Description("Processing of an instance through all the layers")
+@Category({"MyNN", "Inference"})
+@Enabled(false)
+@StackTrace(false)
+class ProcessEvent extends NetworkEvent {
+
+	static final EventType TYPE = EventType.getEventType(ProcessEvent.class);
+}
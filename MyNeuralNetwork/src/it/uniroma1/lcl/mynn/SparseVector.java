@@ -0,0 +1,142 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Arrays;
+
+/**
+ * Sparse input vector of a network: the indexes and the values of the
+ * features different from zero, all the others are zero.
+ * The first layer of the network multiplies only the weights of the
+ * present features and the training upgrades only those weights.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			NeuralNetwork#process(SparseVector)
+ * @see			NeuralNetwork#trainIstanza(SparseVector, double[])
+ */
+public class SparseVector {
+
+	private final int dimension;
+	private final int[] indexes;
+	private final double[] values;
+
+	/**
+	 * Create the sparse vector.
+	 *
+	 * @param	dimension	size of the dense vector.
+	 * @param	indexes	positions of the present features, in ascending order.
+	 * @param	values	values of the present features.
+	 */
+	public SparseVector(int dimension, int[] indexes, double[] values) {
+		if (indexes.length != values.length)
+			throw new IllegalArgumentException("Indexes and values mismatch [" +
+											   indexes.length + " vs " +
+											   values.length + "]");
+		for (int k=0; k < indexes.length; k++) {
+			if (indexes[k] < 0 || indexes[k] >= dimension ||
+				(k > 0 && indexes[k] <= indexes[k - 1]))
+				throw new IllegalArgumentException("Invalid index " + indexes[k] +
+												   " at position " + k);
+		}
+		this.dimension = dimension;
+		this.indexes = Arrays.copyOf(indexes, indexes.length);
+		this.values = Arrays.copyOf(values, values.length);
+	}
+
+	/**
+	 * Create the one-hot vector.
+	 *
+	 * @param	dimension	size of the dense vector.
+	 * @param	index	position of the feature set to one.
+	 * @return	the sparse vector.
+	 */
+	public static SparseVector oneHot(int dimension, int index) {
+		return new SparseVector(dimension, new int[] {index}, new double[] {1.0});
+	}
+
+	/**
+	 * Create the sparse vector of the non zero values of a dense vector.
+	 *
+	 * @param	dense	the dense vector.
+	 * @return	the sparse vector.
+	 */
+	public static SparseVector of(double[] dense) {
+		int count = 0;
+		for (double v : dense) {
+			if (v != 0)
+				count++;
+		}
+		int[] indexes = new int[count];
+		double[] values = new double[count];
+		for (int i=0, k=0; i < dense.length; i++) {
+			if (dense[i] != 0) {
+				indexes[k] = i;
+				values[k] = dense[i];
+				k++;
+			}
+		}
+		return new SparseVector(dense.length, indexes, values);
+	}
+
+	/**
+	 * Return the size of the dense vector.
+	 *
+	 * @return	dimension.
+	 */
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * Return the number of present features.
+	 *
+	 * @return	non zero counter.
+	 */
+	public int getNonZeroCount() {
+		return indexes.length;
+	}
+
+	/**
+	 * Return the position of a present feature.
+	 *
+	 * @param	k	feature, between 0 and getNonZeroCount.
+	 * @return	index into the dense vector.
+	 */
+	public int getIndex(int k) {
+		return indexes[k];
+	}
+
+	/**
+	 * Return the value of a present feature.
+	 *
+	 * @param	k	feature, between 0 and getNonZeroCount.
+	 * @return	feature value.
+	 */
+	public double getValue(int k) {
+		return values[k];
+	}
+
+	/**
+	 * Calculate the product with a dense vector of weights.
+	 *
+	 * @param	weights	a weight for each dimension.
+	 * @return	sum of the weights of the present features for their values.
+	 */
+	public double dot(double[] weights) {
+		double sum = 0;
+		for (int k=0; k < indexes.length; k++)
+			sum += weights[indexes[k]] * values[k];
+		return sum;
+	}
+
+	/**
+	 * Return the dense vector.
+	 *
+	 * @return	array with a value for each dimension.
+	 */
+	public double[] toDense() {
+		double[] dense = new double[dimension];
+		for (int k=0; k < indexes.length; k++)
+			dense[indexes[k]] = values[k];
+		return dense;
+	}
+}
@@ -0,0 +1,175 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compressed sparse row (CSR) copy of the weights of a layer: a row for
+ * each neuron, only the non zero weights are stored with their input
+ * index. The thresholds stay into the neurons.
+ * Once built the rows are the storage of the weights: the neurons drop
+ * their dense arrays and build them again from their row only on the first
+ * change (training or pruning), from then the row isn't current anymore and
+ * the layer falls back to the dense weights of that neuron.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			Layer#compact()
+ */
+public class SparseWeights {
+
+	private final int columns;
+	private final int[] rowStart;
+	private final int[] columnIndex;
+	private final double[] values;
+	private final int[] versions;
+
+	/**
+	 * Create the CSR weights from the neurons.
+	 *
+	 * @param	neurons	the rows of the matrix.
+	 * @param	columns	number of inputs of each neuron.
+	 */
+	public SparseWeights(List<Neuron> neurons, int columns) {
+
+		int rows = neurons.size();
+		int nonZero = 0;
+		for (Neuron n : neurons) {
+			for (int i=0; i < columns; i++) {
+				if (n.getWeight(i) != 0)
+					nonZero++;
+			}
+		}
+
+		this.columns = columns;
+		this.rowStart = new int[rows + 1];
+		this.columnIndex = new int[nonZero];
+		this.values = new double[nonZero];
+		this.versions = new int[rows];
+
+		int k = 0;
+		int r = 0;
+		for (Neuron n : neurons) {
+			versions[r] = n.getWeightsVersion();
+			rowStart[r] = k;
+			for (int i=0; i < columns; i++) {
+				double w = n.getWeight(i);
+				if (w != 0) {
+					columnIndex[k] = i;
+					values[k] = w;
+					k++;
+				}
+			}
+			r++;
+		}
+		rowStart[rows] = k;
+	}
+
+	/**
+	 * Check if a row still matches the weights of its neuron.
+	 *
+	 * @param	row	row index.
+	 * @param	n	the neuron of the row.
+	 * @return	true if the weights haven't been changed.
+	 */
+	boolean isCurrent(int row, Neuron n) {
+		return versions[row] == n.getWeightsVersion();
+	}
+
+	/**
+	 * Calculate the product between a row and the inputs.
+	 *
+	 * @param	row	row index.
+	 * @param	x	inputs values.
+	 * @return	sum of the non zero weights for the related inputs.
+	 */
+	public double dot(int row, double[] x) {
+		double sum = 0;
+		for (int k=rowStart[row]; k < rowStart[row + 1]; k++)
+			sum += values[k] * x[columnIndex[k]];
+		return sum;
+	}
+
+	/**
+	 * Return a weight of a row, zero if it isn't stored.
+	 *
+	 * @param	row	row index.
+	 * @param	column	input index.
+	 * @return	weight value.
+	 */
+	public double get(int row, int column) {
+		int k = Arrays.binarySearch(columnIndex, rowStart[row], rowStart[row + 1], column);
+		return k < 0 ? 0 : values[k];
+	}
+
+	/**
+	 * Return the dense weights of a row.
+	 *
+	 * @param	row	row index.
+	 * @return	new array with a weight for each column.
+	 */
+	public double[] getRow(int row) {
+		double[] dense = new double[columns];
+		for (int k=rowStart[row]; k < rowStart[row + 1]; k++)
+			dense[columnIndex[k]] = values[k];
+		return dense;
+	}
+
+	/**
+	 * Calculate the product between the matrix and the inputs, y = W x.
+	 *
+	 * @param	x	inputs values.
+	 * @param	y	output array, one value for each row.
+	 */
+	public void multiply(double[] x, double[] y) {
+		for (int r=0; r < y.length; r++)
+			y[r] = dot(r, x);
+	}
+
+	/**
+	 * Return the number of rows (neurons).
+	 *
+	 * @return	rows counter.
+	 */
+	public int getRows() {
+		return versions.length;
+	}
+
+	/**
+	 * Return the number of columns (inputs).
+	 *
+	 * @return	columns counter.
+	 */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Return the number of stored weights.
+	 *
+	 * @return	non zero weights.
+	 */
+	public int getNonZeroCount() {
+		return values.length;
+	}
+
+	/**
+	 * Return the ratio between the non zero weights and all the weights.
+	 *
+	 * @return	density, between 0 and 1.
+	 */
+	public double getDensity() {
+		long all = (long) getRows() * columns;
+		return all == 0 ? 1 : (double) values.length / all;
+	}
+
+	/**
+	 * Return the bytes of the arrays of the matrix.
+	 *
+	 * @return	bytes of the values, indexes and rows offsets.
+	 */
+	public long getBytes() {
+		return (long) values.length * (Double.BYTES + Integer.BYTES) +
+			   (long) rowStart.length * Integer.BYTES;
+	}
+}
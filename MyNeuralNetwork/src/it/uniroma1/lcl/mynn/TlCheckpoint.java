@@ -0,0 +1,235 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Training listener that writes periodic checkpoints of the network.
+ * Every given number of epochs the listener takes a snapshot of the
+ * network (a copy-on-write copy, the weights are copied only by the next
+ * change of the training) and a background thread writes it, so the
+ * training never waits for the disk. The checkpoint is written to a
+ * temporary file, synced and renamed over the previous one: a crash leaves
+ * the previous checkpoint or the new one, never a partial file. A snapshot
+ * is skipped if the previous one is still written; the last epoch of the
+ * run is always written.
+ * A checkpoint keeps the layers with their frozen flag, the exact weights
+ * and thresholds, the learning rate and the trained epochs. The upgrade functions have no
+ * state and the training walks the set in order without random numbers,
+ * so the training of a loaded checkpoint continues as the interrupted one.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			NeuralNetwork#getTrainedEpochs()
+ */
+public class TlCheckpoint implements ITrainingListener {
+
+	/* "JNNC" */
+	private static final int MAGIC = 0x4A4E4E43;
+	private static final int FORMAT = 2;
+	/* the first format hasn't the frozen flag of the layers */
+	private static final int FORMAT_UNFROZEN = 1;
+
+	private final NeuralNetwork nn;
+	private final Path file;
+	private final int every;
+
+	private ExecutorService executor;
+	private Future<?> running;
+	private int lastEpoch;
+	private int skipped;
+	private volatile int written;
+	private volatile IOException lastError;
+
+	/**
+	 * Create the checkpoint listener, it must be added to the network.
+	 *
+	 * @param	nn	the trained network.
+	 * @param	filename	the checkpoint file.
+	 * @param	every	number of epochs between two checkpoints.
+	 */
+	public TlCheckpoint(NeuralNetwork nn, String filename, int every) {
+		this.nn = nn;
+		this.file = Paths.get(filename).toAbsolutePath();
+		this.every = every < 1 ? 1 : every;
+	}
+
+	@Override
+	public void onRunStart(TrainingStats stats) {
+		skipped = 0;
+		lastEpoch = -1;
+		running = null;
+		executor = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "TlCheckpoint " + stats.getNetworkName());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@Override
+	public void onEpochEnd(TrainingStats stats) {
+		if (stats.getEpoch() % every != 0)
+			return;
+		if (running != null && running.isDone() == false) {
+			skipped++;
+			return;
+		}
+		NeuralNetwork snapshot = nn.copy();
+		lastEpoch = stats.getEpoch();
+		running = executor.submit(() -> write(snapshot));
+	}
+
+	@Override
+	public void onRunEnd(TrainingStats stats) {
+		try {
+			if (running != null)
+				running.get();
+			if (lastEpoch != stats.getEpoch())
+				write(nn.copy());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void write(NeuralNetwork snapshot) {
+		try {
+			save(snapshot, file.toString());
+			written++;
+			lastError = null;
+		} catch (IOException e) {
+			/* the training goes on, the previous checkpoint is kept */
+			lastError = e;
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Write the checkpoint of a network: temporary file, sync and rename.
+	 *
+	 * @param	nn	the network.
+	 * @param	filename	the checkpoint file.
+	 * @throws	IOException	on write errors, the previous checkpoint is
+	 * 			kept.
+	 */
+	public static void save(NeuralNetwork nn, String filename) throws IOException {
+		Path target = Paths.get(filename).toAbsolutePath();
+		Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+		try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+			out.writeInt(MAGIC);
+			out.writeByte(FORMAT);
+			out.writeUTF(nn.getNome());
+			out.writeDouble(nn.getLearningRate());
+			out.writeInt(nn.getTrainedEpochs());
+			out.writeInt(nn.getLayerCount());
+			for (Layer l : nn.getLayers()) {
+				out.writeUTF(l.getName());
+				out.writeUTF(l.getActivationFunction());
+				out.writeInt(l.getNeuronInputUnits_j7());
+				out.writeInt(l.getOutputUnits());
+				out.writeBoolean(l.isFrozen());
+				for (Neuron n : l.getNeurons()) {
+					for (double w : n.getWeightsAndThreshold())
+						out.writeDouble(w);
+				}
+			}
+			out.flush();
+			fos.getFD().sync();
+		}
+		try {
+			Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE,
+					   StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Load a checkpoint, the network is ready to continue the training.
+	 *
+	 * @param	filename	the checkpoint file.
+	 * @return	the network.
+	 * @throws	IOException	on read errors.
+	 * @throws	ParserException	if the file isn't a checkpoint.
+	 */
+	public static NeuralNetwork load(String filename) throws IOException, ParserException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(filename)))) {
+			if (in.readInt() != MAGIC)
+				throw new ParserException("File " + filename + " isn't a checkpoint");
+			int format = in.readUnsignedByte();
+			if (format != FORMAT && format != FORMAT_UNFROZEN)
+				throw new ParserException("Unknown checkpoint format " + format);
+
+			NeuralNetwork nn = new NeuralNetwork(in.readUTF());
+			nn.setLearningRate(in.readDouble());
+			nn.setTrainedEpochs(in.readInt());
+			int layers = in.readInt();
+			for (int k=0; k < layers; k++) {
+				Layer l = new Layer(in.readUTF(), in.readUTF());
+				int inputs = in.readInt();
+				int outputs = in.readInt();
+				if (inputs < 0 || outputs < 0)
+					throw new ParserException("Layer " + l.getName() + " has invalid units");
+				if (format != FORMAT_UNFROZEN)
+					l.setFrozen(in.readBoolean());
+				for (int n=0; n < outputs; n++) {
+					double[] wt = new double[inputs + 1];
+					for (int i=0; i < wt.length; i++)
+						wt[i] = in.readDouble();
+					l.addNeuron(new Neuron(new double[inputs], wt));
+				}
+				/* as the parser */
+				l.compact();
+				nn.addLayer(l);
+			}
+			return nn;
+		}
+	}
+
+	/**
+	 * Return the number of checkpoints written by the listener.
+	 *
+	 * @return	written checkpoints.
+	 */
+	public int getWritten() {
+		return written;
+	}
+
+	/**
+	 * Return the number of snapshots skipped because the previous one was
+	 * still written.
+	 *
+	 * @return	skipped snapshots.
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * Return the error of the last write, null if it succeeded.
+	 *
+	 * @return	the error.
+	 */
+	public IOException getLastError() {
+		return lastError;
+	}
+}
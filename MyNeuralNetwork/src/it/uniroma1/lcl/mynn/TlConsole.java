@@ -0,0 +1,91 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Training listener that reports the progress of the training on the console.
+ * A line is printed every given number of epochs and at the end of the run,
+ * with loss, gradient norm, learning rate, throughput and the time spent into 
+ * each phase.
+ *  
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * 
+ */
+public class TlConsole implements ITrainingListener {
+
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private PrintStream out;
+	private int every;
+
+	/**
+	 * Create a console reporter printing every epoch.
+	 */
+	public TlConsole() {
+		this(1);
+	}
+
+	/**
+	 * Create a console reporter.
+	 *
+	 * @param	every	number of epochs between two reports.
+	 */
+	public TlConsole(int every) {
+		this(System.out, every);
+	}
+
+	/**
+	 * Create a reporter on a generic stream.
+	 *
+	 * @param	out		the stream where the report is printed.
+	 * @param	every	number of epochs between two reports.
+	 */
+	public TlConsole(PrintStream out, int every) {
+		this.out = out;
+		this.every = every < 1 ? 1 : every;
+	}
+
+	@Override
+	public void onRunStart(TrainingStats stats) {
+		out.println(String.format(Locale.US, 
+				"network %s: training on %d instances, learning rate %.4f",
+				stats.getNetworkName(), stats.getSetSize(), 
+				stats.getLearningRate()));
+	}
+
+	@Override
+	public void onEpochEnd(TrainingStats stats) {
+		if (stats.getEpoch() % every != 0)
+			return;
+		
+		out.println(String.format(Locale.US, 
+				"network %s: epoch %d loss %.6f grad %.6f lr %.4f " + 
+				"%.1f samples/s %.3f ms [forward %.3f loss %.3f " + 
+				"update %.3f]",
+				stats.getNetworkName(), stats.getEpoch(), stats.getEpochLoss(),
+				stats.getEpochGradientNorm(), stats.getLearningRate(),
+				stats.getSamplesPerSecond(), 
+				stats.getEpochNanos() / NANOS_PER_MILLI,
+				stats.getEpochPhaseNanos(TrainingPhase.FORWARD) / NANOS_PER_MILLI,
+				stats.getEpochPhaseNanos(TrainingPhase.LOSS) / NANOS_PER_MILLI,
+				stats.getEpochPhaseNanos(TrainingPhase.UPDATE) / NANOS_PER_MILLI));
+	}
+
+	@Override
+	public void onRunEnd(TrainingStats stats) {
+		double seconds = stats.getRunNanos() / (NANOS_PER_MILLI * 1000);
+		out.println(String.format(Locale.US, 
+				"network %s: training completed in %.3f s, %d epochs, " + 
+				"%d samples, %.1f samples/s, last loss %.6f " + 
+				"[forward %.3f loss %.3f update %.3f ms]",
+				stats.getNetworkName(), seconds, stats.getEpoch(), 
+				stats.getTotalSamples(), 
+				seconds == 0 ? 0 : stats.getTotalSamples() / seconds,
+				stats.getEpochLoss(),
+				stats.getRunPhaseNanos(TrainingPhase.FORWARD) / NANOS_PER_MILLI,
+				stats.getRunPhaseNanos(TrainingPhase.LOSS) / NANOS_PER_MILLI,
+				stats.getRunPhaseNanos(TrainingPhase.UPDATE) / NANOS_PER_MILLI));
+	}
+}
@@ -0,0 +1,71 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Training listener that writes one CSV row for each epoch.
+ * The file is created (or truncated) at the start of each training run and
+ * closed at its end. Times are expressed in milliseconds.
+ *  
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * 
+ */
+public class TlCsv implements ITrainingListener {
+
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	private static final String HEADER = "network,epoch,loss,gradient_norm," +
+										 "learning_rate,samples,samples_per_sec," +
+										 "epoch_ms,forward_ms,loss_ms,update_ms";
+
+	private String filename;
+	private PrintWriter out;
+
+	/**
+	 * Create the CSV reporter.
+	 *
+	 * @param	filename	file where the rows are written.
+	 */
+	public TlCsv(String filename) {
+		this.filename = filename;
+	}
+
+	@Override
+	public void onRunStart(TrainingStats stats) {
+		try {
+			out = new PrintWriter(new FileWriter(filename, false));
+			out.println(HEADER);
+		} catch (IOException e) {
+			e.printStackTrace();
+			out = null;
+		}
+	}
+
+	@Override
+	public void onEpochEnd(TrainingStats stats) {
+		if (out == null)
+			return;
+		
+		out.println(String.format(Locale.US, 
+				"%s,%d,%.9f,%.9f,%.6f,%d,%.3f,%.6f,%.6f,%.6f,%.6f",
+				stats.getNetworkName(), stats.getEpoch(), stats.getEpochLoss(),
+				stats.getEpochGradientNorm(), stats.getLearningRate(),
+				stats.getSamples(), stats.getSamplesPerSecond(), 
+				stats.getEpochNanos() / NANOS_PER_MILLI,
+				stats.getEpochPhaseNanos(TrainingPhase.FORWARD) / NANOS_PER_MILLI,
+				stats.getEpochPhaseNanos(TrainingPhase.LOSS) / NANOS_PER_MILLI,
+				stats.getEpochPhaseNanos(TrainingPhase.UPDATE) / NANOS_PER_MILLI));
+	}
+
+	@Override
+	public void onRunEnd(TrainingStats stats) {
+		if (out == null)
+			return;
+		
+		out.close();
+		out = null;
+	}
+}
@@ -0,0 +1,204 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Training listener that validates the network in background.
+ * Every given number of epochs the listener takes a snapshot of the
+ * network (a copy-on-write copy, the weights are copied only by the next
+ * change of the training) and a background thread evaluates it on the
+ * validation set while the training goes on. A snapshot is skipped if the
+ * previous one is still evaluated.
+ * The snapshot with the best value is kept; after the given number of
+ * validations without improvements the training is stopped at the end of
+ * its current epoch. At the end of the run the listener waits for the
+ * running validation and validates the final weights.
+ * The validation metric is an error: LOSS, MAE, MSE or ACCURACY as error
+ * rate (1 - accuracy).
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			NeuralNetwork#stopTraining()
+ */
+public class TlValidation implements ITrainingListener {
+
+	private final NeuralNetwork nn;
+	private final double[][] inputs;
+	private final double[][] outputs;
+	private final Metric metric;
+	private final int every;
+	private final int patience;
+
+	private ExecutorService executor;
+	private Future<?> running;
+	private int lastEpoch;
+	private int skipped;
+
+	/* written by the validation thread */
+	private final List<double[]> history = new ArrayList<double[]>();
+	private NeuralNetwork best;
+	private int bestEpoch;
+	private double bestValue;
+	private int sinceBest;
+
+	/**
+	 * Create the validation listener, it must be added to the network.
+	 *
+	 * @param	nn	the trained network.
+	 * @param	inputs	validation inputs.
+	 * @param	outputs	validation expected outputs.
+	 * @param	metric	the validation error.
+	 * @param	every	number of epochs between two validations.
+	 * @param	patience	validations without improvements before the
+	 * 			training is stopped, 0 to never stop it.
+	 */
+	public TlValidation(NeuralNetwork nn, double[][] inputs, double[][] outputs,
+						Metric metric, int every, int patience) {
+		if (metric == Metric.CONFUSION)
+			throw new IllegalArgumentException("Invalid validation metric " + metric);
+		if (inputs.length != outputs.length)
+			throw new IllegalArgumentException("Validation set with " + inputs.length +
+											   " inputs and " + outputs.length + " outputs");
+		this.nn = nn;
+		this.inputs = inputs;
+		this.outputs = outputs;
+		this.metric = metric;
+		this.every = every < 1 ? 1 : every;
+		this.patience = patience;
+	}
+
+	@Override
+	public void onRunStart(TrainingStats stats) {
+		synchronized (this) {
+			history.clear();
+			best = null;
+			bestEpoch = 0;
+			bestValue = Double.POSITIVE_INFINITY;
+			sinceBest = 0;
+		}
+		skipped = 0;
+		lastEpoch = -1;
+		running = null;
+		executor = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "TlValidation " + stats.getNetworkName());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@Override
+	public void onEpochEnd(TrainingStats stats) {
+		if (stats.getEpoch() % every != 0)
+			return;
+		if (running != null && running.isDone() == false) {
+			skipped++;
+			return;
+		}
+		NeuralNetwork snapshot = nn.copy();
+		int epoch = stats.getEpoch();
+		lastEpoch = epoch;
+		running = executor.submit(() -> validate(snapshot, epoch));
+	}
+
+	@Override
+	public void onRunEnd(TrainingStats stats) {
+		try {
+			if (running != null)
+				running.get();
+			if (lastEpoch != stats.getEpoch())
+				validate(nn.copy(), stats.getEpoch());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void validate(NeuralNetwork snapshot, int epoch) {
+		Evaluation e = snapshot.evaluate(inputs, outputs, metric);
+		double value;
+		switch (metric) {
+		case LOSS:
+			value = e.getLoss();
+			break;
+		case MAE:
+			value = e.getMae();
+			break;
+		case MSE:
+			value = e.getMse();
+			break;
+		default:
+			value = 1 - e.getAccuracy();
+		}
+
+		boolean stop = false;
+		synchronized (this) {
+			history.add(new double[] {epoch, value});
+			if (value < bestValue) {
+				best = snapshot;
+				bestEpoch = epoch;
+				bestValue = value;
+				sinceBest = 0;
+			} else {
+				sinceBest++;
+				stop = patience > 0 && sinceBest >= patience;
+			}
+		}
+		if (stop)
+			nn.stopTraining();
+	}
+
+	/**
+	 * Return a copy of the snapshot with the best validation value.
+	 *
+	 * @return	the best network, null if none was validated.
+	 */
+	public synchronized NeuralNetwork getBestNetwork() {
+		return best == null ? null : best.copy();
+	}
+
+	/**
+	 * Return the epoch of the best snapshot.
+	 *
+	 * @return	epoch number.
+	 */
+	public synchronized int getBestEpoch() {
+		return bestEpoch;
+	}
+
+	/**
+	 * Return the validation value of the best snapshot.
+	 *
+	 * @return	the validation error.
+	 */
+	public synchronized double getBestValue() {
+		return bestValue;
+	}
+
+	/**
+	 * Return the completed validations: for each one the epoch and the
+	 * validation value.
+	 *
+	 * @return	the validations in order.
+	 */
+	public synchronized double[][] getHistory() {
+		return history.toArray(new double[0][]);
+	}
+
+	/**
+	 * Return the number of snapshots skipped because the previous one was
+	 * still evaluated.
+	 *
+	 * @return	skipped snapshots.
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+}
@@ -0,0 +1,34 @@
+package it.uniroma1.lcl.mynn;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event emitted by NeuralNetwork.train for each epoch.
+ * The event is disabled by default, enable it into the recording settings
+ * with the name it.uniroma1.lcl.mynn.TrainEpoch.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ */
+@Name("it.uniroma1.lcl.mynn.TrainEpoch")
+@Label("Network Train Epoch")
+@Description("Walk of the whole training set")
+@Category({"MyNN", "Training"})
+@Enabled(false)
+@StackTrace(false)
+class TrainEpochEvent extends NetworkEvent {
+
+	static final EventType TYPE = EventType.getEventType(TrainEpochEvent.class);
+
+	@Label("Epoch")
+	int epoch;
+
+	@Label("Errors Sum")
+	double errors;
+}
@@ -0,0 +1,31 @@
+package it.uniroma1.lcl.mynn;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event emitted by NeuralNetwork.trainIstanza.
+ * The event is disabled by default, enable it into the recording settings
+ * with the name it.uniroma1.lcl.mynn.TrainIstanza.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ */
+@Name("it.uniroma1.lcl.mynn.TrainIstanza")
+@Label("Network Train Instance")
+@Description("Processing and weights upgrade of a training instance")
+@Category({"MyNN", "Training"})
+@Enabled(false)
+@StackTrace(false)
+class TrainIstanzaEvent extends NetworkEvent {
+
+	static final EventType TYPE = EventType.getEventType(TrainIstanzaEvent.class);
+
+	@Label("Error")
+	double errors;
+}
@@ -0,0 +1,21 @@
+package it.uniroma1.lcl.mynn;
+
+/**
+ * The phases of a training step measured by the network and reported to the
+ * training listeners.
+ * 
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			TrainingStats class.
+ */
+public enum TrainingPhase {
+
+	/** processing of the inputs through all the layers */
+	FORWARD,
+	/** calculation of the error between processed and expected output */
+	LOSS,
+	/** backward and update fused: the walk of the layers by the upgrading 
+	 *  function, derivates and new weights are calculated together by the
+	 *  Uf rules */
+	UPDATE;
+}
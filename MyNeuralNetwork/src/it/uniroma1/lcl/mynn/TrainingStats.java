@@ -0,0 +1,290 @@
+package it.uniroma1.lcl.mynn;
+
+/**
+ * Statistics of a training run, filled by the network and given to the
+ * training listeners.
+ * A single object is kept by each network and updated in place, so the
+ * training loop doesn't allocate memory for the reporting.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			ITrainingListener interface.
+ */
+public class TrainingStats {
+
+	private static final double NANOS_PER_SECOND = 1000000000.0;
+
+	private String networkName;
+	private double lr;
+	private int setSize;
+	private int epoch;
+	private int batch;
+	private double batchLoss;
+	private double epochLoss;
+	private double gradientNorm;
+	private double epochGradientNorm;
+	private long samples;
+	private long totalSamples;
+	private long runStart;
+	private long epochStart;
+	private long epochNanos;
+	private long runNanos;
+	private long[] batchPhaseNanos = new long[TrainingPhase.values().length];
+	private long[] epochPhaseNanos = new long[TrainingPhase.values().length];
+	private long[] runPhaseNanos = new long[TrainingPhase.values().length];
+
+	/**
+	 * Reset the statistics for a new training run.
+	 *
+	 * @param	networkName	name of the trained network.
+	 * @param	lr		the learning rate constant.
+	 * @param	setSize	number of instances into the training set.
+	 */
+	void startRun(String networkName, double lr, int setSize) {
+		this.networkName = networkName;
+		this.lr = lr;
+		this.setSize = setSize;
+		this.epoch = 0;
+		this.totalSamples = 0;
+		this.runNanos = 0;
+		this.runStart = System.nanoTime();
+		for (int i=0; i < runPhaseNanos.length; i++)
+			runPhaseNanos[i] = 0;
+		startEpoch();
+	}
+
+	/**
+	 * Reset the epoch counters.
+	 */
+	void startEpoch() {
+		this.batch = 0;
+		this.samples = 0;
+		this.epochLoss = 0;
+		this.epochGradientNorm = 0;
+		this.epochNanos = 0;
+		this.epochStart = System.nanoTime();
+		for (int i=0; i < epochPhaseNanos.length; i++)
+			epochPhaseNanos[i] = 0;
+	}
+
+	/**
+	 * Add the time spent into a phase for the current batch.
+	 *
+	 * @param	phase	the training phase.
+	 * @param	nanos	elapsed time in nanoseconds.
+	 */
+	void addPhase(TrainingPhase phase, long nanos) {
+		batchPhaseNanos[phase.ordinal()] += nanos;
+	}
+
+	/**
+	 * Close the current batch.
+	 *
+	 * @param	loss	error of the trained instance.
+	 * @param	gradientNorm	norm of the applied update divided by the
+	 * 			learning rate.
+	 */
+	void endBatch(double loss, double gradientNorm) {
+
+		/* direct trainIstanza calls, out of a train run */
+		if (epochStart == 0)
+			startEpoch();
+
+		this.batchLoss = loss;
+		this.gradientNorm = gradientNorm;
+		this.epochLoss += loss;
+		this.epochGradientNorm += gradientNorm * gradientNorm;
+		this.batch++;
+		this.samples++;
+		this.totalSamples++;
+		this.epochNanos = System.nanoTime() - epochStart;
+		for (int i=0; i < batchPhaseNanos.length; i++) {
+			epochPhaseNanos[i] += batchPhaseNanos[i];
+			runPhaseNanos[i] += batchPhaseNanos[i];
+		}
+	}
+
+	/**
+	 * Clear the phases of the last batch, called before a new batch.
+	 */
+	void startBatch() {
+		for (int i=0; i < batchPhaseNanos.length; i++)
+			batchPhaseNanos[i] = 0;
+	}
+
+	/**
+	 * Close the current epoch.
+	 *
+	 * @param	loss	sum of the errors reported by the epoch.
+	 */
+	void endEpoch(double loss) {
+		this.epochLoss = loss;
+		this.epochNanos = System.nanoTime() - epochStart;
+		this.epoch++;
+	}
+
+	/**
+	 * Close the run.
+	 */
+	void endRun() {
+		this.runNanos = System.nanoTime() - runStart;
+	}
+
+	/**
+	 * Return the name of the trained network.
+	 *
+	 * @return	network name.
+	 */
+	public String getNetworkName() {
+		return networkName;
+	}
+
+	/**
+	 * Return the learning rate used by the training.
+	 *
+	 * @return	learning rate constant.
+	 */
+	public double getLearningRate() {
+		return lr;
+	}
+
+	/**
+	 * Return the number of instances into the training set.
+	 *
+	 * @return	training set size.
+	 */
+	public int getSetSize() {
+		return setSize;
+	}
+
+	/**
+	 * Return the number of completed epochs.
+	 *
+	 * @return	epochs counter.
+	 */
+	public int getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Return the number of batches trained into the current epoch.
+	 *
+	 * @return	batches counter.
+	 */
+	public int getBatch() {
+		return batch;
+	}
+
+	/**
+	 * Return the error of the last trained instance.
+	 *
+	 * @return	batch loss.
+	 */
+	public double getBatchLoss() {
+		return batchLoss;
+	}
+
+	/**
+	 * Return the sum of the errors of the current (or last completed) epoch.
+	 *
+	 * @return	epoch loss.
+	 */
+	public double getEpochLoss() {
+		return epochLoss;
+	}
+
+	/**
+	 * Return the norm of the weights and thresholds update applied by the last
+	 * batch, divided by the learning rate. For the plain delta rules used by
+	 * the Uf classes this is the norm of the gradient.
+	 *
+	 * @return	gradient norm.
+	 */
+	public double getGradientNorm() {
+		return gradientNorm;
+	}
+
+	/**
+	 * Return the root mean square of the gradient norms of the current epoch.
+	 *
+	 * @return	epoch gradient norm.
+	 */
+	public double getEpochGradientNorm() {
+		return samples == 0 ? 0 : Math.sqrt(epochGradientNorm / samples);
+	}
+
+	/**
+	 * Return the number of instances trained into the current epoch.
+	 *
+	 * @return	samples counter.
+	 */
+	public long getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Return the number of instances trained since the start of the run.
+	 *
+	 * @return	samples counter.
+	 */
+	public long getTotalSamples() {
+		return totalSamples;
+	}
+
+	/**
+	 * Return the throughput of the current epoch.
+	 *
+	 * @return	trained instances per second.
+	 */
+	public double getSamplesPerSecond() {
+		return epochNanos == 0 ? 0 : samples * NANOS_PER_SECOND / epochNanos;
+	}
+
+	/**
+	 * Return the elapsed time of the current epoch.
+	 *
+	 * @return	nanoseconds.
+	 */
+	public long getEpochNanos() {
+		return epochNanos;
+	}
+
+	/**
+	 * Return the elapsed time of the run, available at the run end.
+	 *
+	 * @return	nanoseconds.
+	 */
+	public long getRunNanos() {
+		return runNanos;
+	}
+
+	/**
+	 * Return the time spent into a phase by the last batch.
+	 *
+	 * @param	phase	the training phase.
+	 * @return	nanoseconds.
+	 */
+	public long getBatchPhaseNanos(TrainingPhase phase) {
+		return batchPhaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * Return the time spent into a phase by the current epoch.
+	 *
+	 * @param	phase	the training phase.
+	 * @return	nanoseconds.
+	 */
+	public long getEpochPhaseNanos(TrainingPhase phase) {
+		return epochPhaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * Return the time spent into a phase since the start of the run.
+	 *
+	 * @param	phase	the training phase.
+	 * @return	nanoseconds.
+	 */
+	public long getRunPhaseNanos(TrainingPhase phase) {
+		return runPhaseNanos[phase.ordinal()];
+	}
+}
@@ -1,6 +1,7 @@
 package it.uniroma1.lcl.mynn;
 
 import java.util.LinkedList;
+import java.util.function.DoubleUnaryOperator;
 
 /**
  * Upgrading weights algorithm for the multi-layer neural network.
@@ -41,7 +42,9 @@ public class UfMultiLayer implements IUpgradeFunction {
 		 * Generic Layer
 		 * 
 		 * Wki = Wki + n * Bk * Hk
-		 * Bk = B(k-1) * W(k-1)i * F1(E(Wk*Hk))
+		 * Bk = E(B(k+1)j * W(k+1)jk) * F1(E(Wk*Hk))
+		 * the sum walks the neurons j of the next layer, each with its
+		 * weight for the output of the neuron k
 		 * 
 		 * */
 		
@@ -59,10 +62,10 @@ public class UfMultiLayer implements IUpgradeFunction {
 
 			Neuron n = currentLayer.getNeuron(neuronIndex);
 			
-			for (int weightIndex=0; weightIndex < n.getInputsCount(); weightIndex++) {
-				if (outputLayer == true) {
-					double[] outputPrevLayer = layers.get(i-1).getProcessedLayer();
-					
+			if (outputLayer == true) {
+				double[] outputPrevLayer = layers.get(i-1).getProcessedLayer();
+				
+				for (int weightIndex=0; weightIndex < n.getInputsCount(); weightIndex++) {
 					try {
 						f1 = currentLayer.activateNeuronF1(neuronIndex, outputPrevLayer);
 					} catch (ActivateFunctionException e) {
@@ -80,36 +83,109 @@ public class UfMultiLayer implements IUpgradeFunction {
 					/* upgrade threshold */
 					double threshold = n.getThreshold() + lr * bi;
 					n.setThreshold(threshold);
-				} else {
+				}
+				continue;
+			}
 
-					/* hidden layers */
-					Layer nextLayer = layers.get(i+1);
-					double bk = 0;
-					for (Neuron nn : nextLayer.getNeurons()) {
-						for (int wi=0; wi < nn.getInputsCount(); wi++) {
-							bk += nn.getBfactor(wi) * nn.getWeight(wi);
-						}
-					}
-					
-					try {
-						f1 = currentLayer.activateNeuronF1(neuronIndex, input);
-					} catch (ActivateFunctionException e) {
-						throw new UpgradeFunctionException(
-								"Failed to activate the derivate F1 function " +
-								 "on the neuron id " + neuronIndex + " of the " + 
-								 "hidden layer " + currentLayer.getName());
-					}
-					
-					bk = bk * f1;
-					double w = n.getWeight(weightIndex) + lr * bk * n.getInput(weightIndex);
-					n.setWeight(w, weightIndex);
-					
-					double threshold = n.getThreshold() + lr * bk;
-					n.setThreshold(threshold);
+			/* the transfer value follows the changes of the weights and of
+			 * the threshold, the derivate is applied to it */
+			double b = backwardFactor(layers.get(i+1), neuronIndex);
+			DoubleUnaryOperator derivate;
+			double transfer;
+			try {
+				derivate = currentLayer.getNeuronF1(neuronIndex);
+				transfer = n.transferFunction(input) + n.getThreshold();
+			} catch (ActivateFunctionException e) {
+				throw new UpgradeFunctionException(
+						"Failed to activate the derivate F1 function " +
+						 "on the neuron id " + neuronIndex + " of the " + 
+						 "hidden layer " + currentLayer.getName());
+			}
+			
+			for (int weightIndex=0; weightIndex < n.getInputsCount(); weightIndex++) {
+				double bk = b * derivate.applyAsDouble(transfer);
+				/* read by the upgrade of the previous layer */
+				n.setBfactor(bk, weightIndex);
+				double step = lr * bk * n.getInput(weightIndex);
+				n.setWeight(n.getWeight(weightIndex) + step, weightIndex);
+				transfer += step * n.getInput(weightIndex);
+				
+				n.setThreshold(n.getThreshold() + lr * bk);
+				transfer += lr * bk;
+			}	
+		}
+		
+		return null;
+	}
+
+	/**
+	 * Update the weights of the first hidden layer for a sparse inputs
+	 * vector, only the weights of the present features are visited: the 
+	 * others have a zero input and they wouldn't change. The threshold is
+	 * still upgraded once for each input, as by the dense upgrade, from the
+	 * transfer value kept up to date without walking the inputs again.
+	 * 
+	 * @param	layers	the network layers.
+	 * @param	i		current working layer. 
+	 * @param	input	sparse inputs for the current layer.
+	 * @param	output 	the expected output for the current layer. 
+	 * @param	lr		the learning rate constant.
+	 * @return	null	reserved for future use	
+	 */
+	@Override
+	public double[] upgrade(LinkedList<Layer> layers, int i, SparseVector input, 
+							double[] output, double lr) 
+									throws UpgradeFunctionException {
+
+		/* the output layer receives the dense outputs of the previous one */
+		if (i == layers.size()-1)
+			return upgrade(layers, i, input.toDense(), output, lr);
+
+		Layer currentLayer = layers.get(i);
+		Layer nextLayer = layers.get(i+1);
+
+		for (int neuronIndex=0; neuronIndex < currentLayer.getOutputUnits(); neuronIndex++) {
+
+			Neuron n = currentLayer.getNeuron(neuronIndex);
+			double b = backwardFactor(nextLayer, neuronIndex);
+			
+			DoubleUnaryOperator f1;
+			double transfer;
+			try {
+				f1 = currentLayer.getNeuronF1(neuronIndex);
+				transfer = n.transferFunction(input) + n.getThreshold();
+			} catch (ActivateFunctionException e) {
+				throw new UpgradeFunctionException(
+						"Failed to activate the derivate F1 function " +
+						 "on the neuron id " + neuronIndex + " of the " + 
+						 "hidden layer " + currentLayer.getName());
+			}
+			
+			int k = 0;
+			for (int weightIndex=0; weightIndex < n.getInputsCount(); weightIndex++) {
+				double bk = b * f1.applyAsDouble(transfer);
+				if (k < input.getNonZeroCount() && input.getIndex(k) == weightIndex) {
+					double step = lr * bk * input.getValue(k);
+					n.setWeight(n.getWeight(weightIndex) + step, weightIndex);
+					transfer += step * input.getValue(k);
+					k++;
 				}
+				
+				n.setThreshold(n.getThreshold() + lr * bk);
+				transfer += lr * bk;
 			}	
 		}
 		
 		return null;
-	}	
+	}
+
+	/* the error reaching the output of a hidden neuron: the B factors of
+	 * the next layer neurons, each for its weight of that output */
+	private static double backwardFactor(Layer nextLayer, int column) {
+		double b = 0;
+		for (Neuron nn : nextLayer.getNeurons()) {
+			b += nn.getBfactor(column) * nn.getWeight(column);
+		}
+		return b;
+	}
 }
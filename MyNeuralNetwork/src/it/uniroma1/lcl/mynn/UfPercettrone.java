@@ -69,4 +69,51 @@ public class UfPercettrone implements IUpgradeFunction {
 		return null;
 	}
 
+	/**
+	 * Update the weights of the neurons for a sparse inputs vector, only the
+	 * weights of the present features are visited: the others have a zero
+	 * input and they wouldn't change. The threshold is still upgraded once
+	 * for each input, as by the dense upgrade.
+	 * 
+	 * @param	layers	the network layers.
+	 * @param	i		current working layer. 
+	 * @param	input	sparse inputs for the current layer.
+	 * @param	output 	the expected output for the current layer. 
+	 * @param	lr		the learning rate constant.
+	 * @return	null	reserved for future use	
+	 */
+	@Override
+	public double[] upgrade(LinkedList<Layer> layers, int i, SparseVector input, 
+							double[] output, double lr) throws UpgradeFunctionException {
+
+		Layer currentLayer = layers.get(i);
+		double[] process = currentLayer.getProcessedLayer();
+
+		for (int ni=0; ni < currentLayer.getOutputUnits(); ni++) {
+			Neuron n = currentLayer.getNeuron(ni);
+
+			/* check data integrity */
+			if (n.getInputsCount() != input.getDimension())
+				throw new UpgradeFunctionException("Expected Neuron input mismatch with "
+											 + "input set " + n.getInputsCount() + 
+											 " vs " + input.getDimension());
+
+			for (int k=0; k < input.getNonZeroCount(); k++) {
+				int weightIndex = input.getIndex(k);
+
+				/* upgrade weight */
+				double w = n.getWeight(weightIndex);
+				w = w + (lr*(output[ni] - process [ni])) * input.getValue(k);
+				n.setWeight(w, weightIndex);
+			}
+			
+			/* upgrade threshold, once for each input */
+			double threshold = n.getThreshold();
+			for (int weightIndex=0; weightIndex < n.getInputsCount(); weightIndex++)
+				threshold = threshold + (lr*(output[ni] - process[ni]));
+			n.setThreshold(threshold);
+		}
+		
+		return null;
+	}
 }
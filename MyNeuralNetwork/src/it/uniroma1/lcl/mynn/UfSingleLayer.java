@@ -1,6 +1,7 @@
 package it.uniroma1.lcl.mynn;
 
 import java.util.LinkedList;
+import java.util.function.DoubleUnaryOperator;
 
 /**
  * Upgrading weights algorithm for a generic single layer neural network.
@@ -48,42 +49,100 @@ public class UfSingleLayer implements IUpgradeFunction {
 											 + "input set " + n.getInputsCount() + 
 											 " vs " + input.length);
 			
+			/* the transfer value follows the changes of the weights and of
+			 * the threshold, the derivate is applied to it */
+			DoubleUnaryOperator f1;
+			double transfer;
+			try {
+				f1 = currentLayer.getNeuronF1(neuronIndex);
+				transfer = n.transferFunction(input) + n.getThreshold();
+			} catch (ActivateFunctionException e) {
+				throw new UpgradeFunctionException(
+						"Failed to activate the derivate F1 function " +
+						 "on the neuron id " + neuronIndex + " of the " + 
+						 "single layer " + currentLayer.getName());				
+			} 
+			double error = lr * (output[neuronIndex] - process[neuronIndex]);
+			
 			for (int weightIndex=0; weightIndex < n.getInputsCount(); weightIndex++) {
 
 				/* upgrade weight */
-				double w = n.getWeight(weightIndex);
-				double f1;
-				
-				try {
-					f1 = currentLayer.activateNeuronF1(neuronIndex, input);
-				} catch (ActivateFunctionException e) {
-					throw new UpgradeFunctionException(
-							"Failed to activate the derivate F1 function " +
-							 "on the neuron id " + neuronIndex + " of the " + 
-							 "single layer " + currentLayer.getName());				
-				} 
-				
-				w = w + (lr * (output[neuronIndex] - process[neuronIndex])) * f1 * input[weightIndex];
-				n.setWeight(w, weightIndex);
+				double step = error * f1.applyAsDouble(transfer) * input[weightIndex];
+				n.setWeight(n.getWeight(weightIndex) + step, weightIndex);
+				transfer += step * input[weightIndex];
 
 				/* upgrade threshold */
-				double threshold = n.getThreshold();
+				step = error * f1.applyAsDouble(transfer);
+				n.setThreshold(n.getThreshold() + step);
+				transfer += step;
+			}	
+		}
+		
+		return null;
+	}
 
-				try {
-					f1 = currentLayer.activateNeuronF1(neuronIndex, input);
-				} catch (ActivateFunctionException e) {
-					throw new UpgradeFunctionException(
-							"Threshold: failed to activate the derivate F1 function " +
-							 "on the neuron id " + neuronIndex + " of the " + 
-							 "single layer " + currentLayer.getName());				
+	/**
+	 * Update the weights of the neurons for a sparse inputs vector, only the
+	 * weights of the present features are visited: the others have a zero
+	 * input and they wouldn't change. The threshold is still upgraded once
+	 * for each input, as by the dense upgrade, from the transfer value kept
+	 * up to date without walking the inputs again.
+	 * 
+	 * @param	layers	the network layers.
+	 * @param	i		current working layer. 
+	 * @param	input	sparse inputs for the current layer.
+	 * @param	output 	the expected output for the current layer. 
+	 * @param	lr		the learning rate constant.
+	 * @return	null	reserved for future use	
+	 */
+	@Override
+	public double[] upgrade(LinkedList<Layer> layers, int i, SparseVector input, 
+							double[] output, double lr) 
+									throws UpgradeFunctionException {
+
+		Layer currentLayer = layers.get(i);
+		double[] process = currentLayer.getProcessedLayer();
+		
+		for (int neuronIndex=0; neuronIndex < currentLayer.getOutputUnits(); neuronIndex++) {
+			Neuron n = currentLayer.getNeuron(neuronIndex);
+
+			/* check data integrity */
+			if (n.getInputsCount() != input.getDimension())
+				throw new UpgradeFunctionException("Expected Neuron input mismatch with "
+											 + "input set " + n.getInputsCount() + 
+											 " vs " + input.getDimension());
+			
+			DoubleUnaryOperator f1;
+			double transfer;
+			try {
+				f1 = currentLayer.getNeuronF1(neuronIndex);
+				transfer = n.transferFunction(input) + n.getThreshold();
+			} catch (ActivateFunctionException e) {
+				throw new UpgradeFunctionException(
+						"Failed to activate the derivate F1 function " +
+						 "on the neuron id " + neuronIndex + " of the " + 
+						 "single layer " + currentLayer.getName());				
+			}
+			double error = lr * (output[neuronIndex] - process[neuronIndex]);
+			
+			int k = 0;
+			for (int weightIndex=0; weightIndex < n.getInputsCount(); weightIndex++) {
+
+				if (k < input.getNonZeroCount() && input.getIndex(k) == weightIndex) {
+					/* upgrade weight */
+					double step = error * f1.applyAsDouble(transfer) * input.getValue(k);
+					n.setWeight(n.getWeight(weightIndex) + step, weightIndex);
+					transfer += step * input.getValue(k);
+					k++;
 				}
-				
-				threshold = threshold + (lr*(output[neuronIndex] - process[neuronIndex])) * f1;
-				n.setThreshold(threshold);
+
+				/* upgrade threshold */
+				double step = error * f1.applyAsDouble(transfer);
+				n.setThreshold(n.getThreshold() + step);
+				transfer += step;
 			}	
 		}
 		
 		return null;
 	}
-
 }
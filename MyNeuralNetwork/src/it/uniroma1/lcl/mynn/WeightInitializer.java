@@ -0,0 +1,229 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * The weights initialization schemes:
+ * UNIFORM generates weights and thresholds in [0, 1), the values of the
+ * previous versions; XAVIER (Glorot) generates weights in
+ * [-sqrt(6 / (fanIn + fanOut)), sqrt(6 / (fanIn + fanOut))] and HE weights
+ * from a normal distribution with standard deviation sqrt(2 / fanIn), both
+ * with the thresholds at zero.
+ * An unseeded initializer draws on each thread from its own 
+ * SplittableRandom, split from the generator of the initializer, so no 
+ * generator is shared between threads. A seeded initializer restarts from
+ * its seed for each network built by the parser, so the same file gives the
+ * same weights on any thread and however many times the initializer has
+ * been used; used directly it continues its single sequence.
+ * The network file chooses the initializer of a layer with the optional
+ * token init=scheme or init=scheme:seed, example: init=xavier:42. The 
+ * layers of a network with the same seed split their generators from a 
+ * single root, in the order of the layers, so they don't draw the same 
+ * values.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ * @see			Parser#getNN(IWeightInitializer)
+ */
+public class WeightInitializer implements IWeightInitializer {
+
+	/**
+	 * The initialization schemes.
+	 */
+	public enum Scheme {
+		UNIFORM,
+		XAVIER,
+		HE
+	}
+
+	private static volatile IWeightInitializer defaultInitializer = uniform();
+
+	private final Scheme scheme;
+	private final Long seed;
+	/* seeded: the generator of the values, unseeded: the root of the 
+	 * generators of the threads */
+	private final SplittableRandom root;
+	private final ThreadLocal<SplittableRandom> random;
+
+	private WeightInitializer(Scheme scheme, Long seed) {
+		this(scheme, seed, seed == null ? new SplittableRandom() : new SplittableRandom(seed).split());
+	}
+
+	private WeightInitializer(Scheme scheme, Long seed, SplittableRandom root) {
+		this.scheme = scheme;
+		this.seed = seed;
+		this.root = root;
+		this.random = (seed == null) ? ThreadLocal.withInitial(this::split) : null;
+	}
+
+	private SplittableRandom split() {
+		synchronized (root) {
+			return root.split();
+		}
+	}
+
+	/* the initializer of the layers of a network: a seeded one draws from a
+	 * split of the root of its seed, shared with the other layers of the 
+	 * network, the unseeded one is the current object */
+	WeightInitializer forNetwork(Map<Long, SplittableRandom> roots) {
+		if (seed == null)
+			return this;
+		return new WeightInitializer(scheme, seed, 
+									 roots.computeIfAbsent(seed, SplittableRandom::new).split());
+	}
+
+	/**
+	 * Return the UNIFORM initializer, weights and thresholds in [0, 1).
+	 *
+	 * @return	the initializer.
+	 */
+	public static WeightInitializer uniform() {
+		return new WeightInitializer(Scheme.UNIFORM, null);
+	}
+
+	/**
+	 * Return the XAVIER initializer, for the logistic and tanh layers.
+	 *
+	 * @return	the initializer.
+	 */
+	public static WeightInitializer xavier() {
+		return new WeightInitializer(Scheme.XAVIER, null);
+	}
+
+	/**
+	 * Return the HE initializer, for the relu layers.
+	 *
+	 * @return	the initializer.
+	 */
+	public static WeightInitializer he() {
+		return new WeightInitializer(Scheme.HE, null);
+	}
+
+	/**
+	 * Return an initializer with the same scheme and the given seed.
+	 *
+	 * @param	seed	the seed of the generator.
+	 * @return	the seeded initializer.
+	 */
+	public WeightInitializer seeded(long seed) {
+		return new WeightInitializer(scheme, seed);
+	}
+
+	/**
+	 * Parse the value of the init token: the scheme name, case insensitive,
+	 * and optionally ':' and the seed.
+	 *
+	 * @param	value	the token value, example: he:7
+	 * @return	the initializer.
+	 * @throws	IllegalArgumentException	on unknown schemes or invalid
+	 * 			seeds.
+	 */
+	public static WeightInitializer parse(String value) {
+		String[] parts = value.split(":", 2);
+		Scheme scheme;
+		try {
+			scheme = Scheme.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown initialization scheme " + parts[0]);
+		}
+		if (parts.length == 1)
+			return new WeightInitializer(scheme, null);
+		try {
+			return new WeightInitializer(scheme, Long.parseLong(parts[1].trim()));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid initialization seed " + parts[1]);
+		}
+	}
+
+	/* the init token of a layer of a network */
+	static WeightInitializer parse(String value, Map<Long, SplittableRandom> roots) {
+		return parse(value).forNetwork(roots);
+	}
+
+	/**
+	 * Return the initializer used by the parser when the file and the
+	 * caller don't give one, and by the neurons created without threshold.
+	 *
+	 * @return	the default initializer, UNIFORM if never set.
+	 */
+	public static IWeightInitializer getDefault() {
+		return defaultInitializer;
+	}
+
+	/**
+	 * Set the default initializer.
+	 *
+	 * @param	initializer	the new default.
+	 */
+	public static void setDefault(IWeightInitializer initializer) {
+		if (initializer == null)
+			throw new IllegalArgumentException("Invalid initializer");
+		defaultInitializer = initializer;
+	}
+
+	@Override
+	public double weight(int fanIn, int fanOut) {
+		if (random != null)
+			return weight(random.get(), fanIn, fanOut);
+		/* seeded, the values follow the order of the calls */
+		synchronized (root) {
+			return weight(root, fanIn, fanOut);
+		}
+	}
+
+	private double weight(SplittableRandom rnd, int fanIn, int fanOut) {
+		switch (scheme) {
+		case XAVIER:
+			double limit = Math.sqrt(6.0 / Math.max(1, fanIn + fanOut));
+			return rnd.nextDouble(-limit, limit);
+		case HE:
+			return gaussian(rnd) * Math.sqrt(2.0 / Math.max(1, fanIn));
+		default:
+			return rnd.nextDouble();
+		}
+	}
+
+	@Override
+	public double threshold(int fanIn, int fanOut) {
+		if (scheme != Scheme.UNIFORM)
+			return 0;
+		if (random != null)
+			return random.get().nextDouble();
+		synchronized (root) {
+			return root.nextDouble();
+		}
+	}
+
+	/* polar method, SplittableRandom has no nextGaussian before Java 17 */
+	private static double gaussian(SplittableRandom rnd) {
+		double u, v, s;
+		do {
+			u = rnd.nextDouble(-1, 1);
+			v = rnd.nextDouble(-1, 1);
+			s = u * u + v * v;
+		} while (s >= 1 || s == 0);
+		return u * Math.sqrt(-2 * Math.log(s) / s);
+	}
+
+	/**
+	 * Return the scheme of the initializer.
+	 *
+	 * @return	the scheme.
+	 */
+	public Scheme getScheme() {
+		return scheme;
+	}
+
+	/**
+	 * Print the initializer in the format of the init token.
+	 *
+	 * @return	scheme and seed.
+	 */
+	@Override
+	public String toString() {
+		String name = scheme.name().toLowerCase(Locale.ROOT);
+		return seed == null ? name : name + ":" + seed;
+	}
+}
@@ -0,0 +1,86 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Networks built by the tests: a layer for each pair {inputs, outputs} of
+ * units, named "layer" followed by its index. The weights and the threshold
+ * of each neuron are drawn in order, layer by layer and neuron by neuron,
+ * so the same generator gives the same network.
+ *
+ * @author      Nunzio Castelli
+ * @since       1.1
+ */
+final class NetworkFixtures {
+
+	private NetworkFixtures() {
+	}
+
+	/**
+	 * Create a network with the weights given by a function.
+	 *
+	 * @param	name	the network name.
+	 * @param	af	activation function of each layer.
+	 * @param	units	inputs and outputs of each layer.
+	 * @param	weight	the next weight or threshold, from the inputs of the
+	 * 			layer.
+	 * @return	the network.
+	 */
+	static NeuralNetwork create(String name, String[] af, int[][] units, IntToDoubleFunction weight) {
+		NeuralNetwork rete = new NeuralNetwork(name);
+		for (int k=0; k < units.length; k++) {
+			Layer l = new Layer("layer" + k, af[k]);
+			for (int n=0; n < units[k][1]; n++) {
+				double[] wt = new double[units[k][0] + 1];
+				for (int i=0; i < wt.length; i++)
+					wt[i] = weight.applyAsDouble(units[k][0]);
+				l.addNeuron(new Neuron(new double[units[k][0]], wt));
+			}
+			rete.addLayer(l);
+		}
+		return rete;
+	}
+
+	/**
+	 * Create a network with gaussian weights and thresholds.
+	 *
+	 * @param	name	the network name.
+	 * @param	rnd	the generator.
+	 * @param	af	activation function of each layer.
+	 * @param	units	inputs and outputs of each layer.
+	 * @param	scale	standard deviation of the weights.
+	 * @return	the network.
+	 */
+	static NeuralNetwork random(String name, Random rnd, String[] af, int[][] units, double scale) {
+		return create(name, af, units, inputs -> rnd.nextGaussian() * scale);
+	}
+
+	/**
+	 * Create a network with gaussian weights and thresholds from a seed.
+	 *
+	 * @param	name	the network name.
+	 * @param	seed	seed of the generator.
+	 * @param	af	activation function of each layer.
+	 * @param	units	inputs and outputs of each layer.
+	 * @param	scale	standard deviation of the weights.
+	 * @return	the network.
+	 */
+	static NeuralNetwork random(String name, long seed, String[] af, int[][] units, double scale) {
+		return random(name, new Random(seed), af, units, scale);
+	}
+
+	/**
+	 * Repeat the activation function for all the layers.
+	 *
+	 * @param	af	the activation function.
+	 * @param	layers	number of layers.
+	 * @return	activation function of each layer.
+	 */
+	static String[] same(String af, int layers) {
+		String[] all = new String[layers];
+		Arrays.fill(all, af);
+		return all;
+	}
+}
@@ -0,0 +1,58 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestApproximateActivation {
+
+	@Test
+	public void testSweep() {
+		Neuron n = new Neuron(new double[0], new double[] {0.0});
+		double maxError = 0;
+		double maxErrorF1 = 0;
+		for (double x=-40; x <= 40; x += 1e-4) {
+			maxError = Math.max(maxError, Math.abs(n.fastlogistic(x) - n.logistic(x)));
+			maxErrorF1 = Math.max(maxErrorF1, Math.abs(n.fastlogistic_f1(x) - n.logistic_f1(x)));
+			maxError = Math.max(maxError, Math.abs(n.fasttanh(x) - n.tanh(x)));
+			maxErrorF1 = Math.max(maxErrorF1, Math.abs(n.fasttanh_f1(x) - n.tanh_f1(x)));
+		}
+		Assert.assertTrue("max error " + maxError, maxError <= ApproximateActivation.MAX_ERROR);
+		Assert.assertTrue("max error F1 " + maxErrorF1, maxErrorF1 <= ApproximateActivation.MAX_ERROR_F1);
+	}
+
+	@Test
+	public void testLimits() {
+		Assert.assertEquals(1, ApproximateActivation.logistic(Double.POSITIVE_INFINITY), 1e-6);
+		Assert.assertEquals(0, ApproximateActivation.logistic(Double.NEGATIVE_INFINITY), 1e-6);
+		Assert.assertEquals(-1, ApproximateActivation.tanh(-Double.MAX_VALUE), 1e-6);
+		Assert.assertEquals(0.5, ApproximateActivation.logistic(0), 0);
+		Assert.assertTrue(Double.isNaN(ApproximateActivation.logistic(Double.NaN)));
+	}
+
+	@Test
+	public void testCompiledFastLayer() {
+		try {
+			NeuralNetwork rete = new NeuralNetwork("ReteFast");
+			Layer l1 = new Layer("hidden", "FastTanh");
+			l1.addNeuron(new Neuron(new double[2], new double[] {1.5, -2.0, 0.3}));
+			l1.addNeuron(new Neuron(new double[2], new double[] {-0.7, 0.4, -0.1}));
+			Layer l2 = new Layer("output", "FastLogistic");
+			l2.addNeuron(new Neuron(new double[2], new double[] {2.0, -3.0, 0.5}));
+			rete.addLayer(l1);
+			rete.addLayer(l2);
+
+			IReteNeurale compiled = NetworkCompiler.compile(rete);
+			Random rnd = new Random(1);
+			for (int k=0; k < 1000; k++) {
+				double[] values = {rnd.nextGaussian() * 3, rnd.nextGaussian() * 3};
+				Assert.assertArrayEquals(rete.process(values), compiled.process(values), 0);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+}
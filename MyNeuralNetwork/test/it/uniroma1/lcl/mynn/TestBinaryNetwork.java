@@ -0,0 +1,82 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBinaryNetwork {
+
+	private static final double[][] INPUTS = {{0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}};
+
+	private NeuralNetwork rete(Random rnd, boolean binaryWeights) {
+		String[] af = {"step", "step", "logistic"};
+		int[][] units = {{100, 70}, {70, 10}, {10, 1}};
+		if (binaryWeights)
+			return NetworkFixtures.create("ReteRules", af, units, inputs -> rnd.nextInt(3) - 1);
+		return NetworkFixtures.random("ReteRules", rnd, af, units, 1);
+	}
+
+	private double[][] binaryInputs(Random rnd, int count) {
+		double[][] inputs = new double[count][100];
+		for (double[] values : inputs) {
+			for (int i=0; i < values.length; i++)
+				values[i] = rnd.nextInt(2);
+		}
+		return inputs;
+	}
+
+	@Test
+	public void testReteOr() throws IOException {
+		try {
+			NeuralNetwork rete = (NeuralNetwork) IReteNeurale.carica(new File(".").getCanonicalPath() + "/reteOr");
+			BinaryNetwork binary = BinaryNetwork.convert(rete, false);
+			Assert.assertEquals(0, binary.compare(rete, INPUTS).length);
+			Assert.assertArrayEquals(new double[] {0.0}, binary.process(INPUTS[0]), 0);
+			Assert.assertArrayEquals(new double[] {1.0}, binary.process(INPUTS[3]), 0);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testSameOutputs() throws ActivateFunctionException {
+		Random rnd = new Random(3);
+		for (boolean binaryWeights : new boolean[] {true, false}) {
+			NeuralNetwork rete = rete(rnd, binaryWeights);
+			BinaryNetwork binary = BinaryNetwork.convert(rete, false);
+			Assert.assertEquals(0, binary.compare(rete, binaryInputs(rnd, 200)).length);
+
+			/* not binary inputs, dense first layer */
+			double[] values = new double[100];
+			for (int i=0; i < values.length; i++)
+				values[i] = rnd.nextDouble();
+			Assert.assertArrayEquals(rete.process(values), binary.process(values), 0);
+		}
+	}
+
+	@Test
+	public void testBinarizedWeights() throws ActivateFunctionException {
+		Random rnd = new Random(5);
+		NeuralNetwork rete = rete(rnd, false);
+		BinaryNetwork binary = BinaryNetwork.convert(rete, true);
+
+		double[][] inputs = binaryInputs(rnd, 200);
+		int[] different = binary.compare(rete, inputs);
+		Assert.assertTrue(different.length <= inputs.length);
+		for (int i : different)
+			Assert.assertNotEquals(rete.process(inputs[i])[0], binary.process(inputs[i])[0], 0);
+		Assert.assertTrue(binary.getReport().contains("binarized"));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testTrain() throws Exception {
+		BinaryNetwork binary = BinaryNetwork.convert(
+				(NeuralNetwork) IReteNeurale.carica(new File(".").getCanonicalPath() + "/reteAnd"), false);
+		binary.trainIstanza(INPUTS[3], new double[] {1.0});
+	}
+
+}
@@ -0,0 +1,124 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCachedNetwork {
+
+	private static final double[][] INPUTS = {{0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}};
+
+	private NeuralNetwork carica(String filename) throws Exception {
+		return (NeuralNetwork) IReteNeurale.carica(new File(".").getCanonicalPath() + "/" + filename);
+	}
+
+	@Test
+	public void testHits() throws IOException {
+		try {
+			NeuralNetwork rete = carica("reteAnd");
+			CachedNetwork cache = new CachedNetwork(rete, 16);
+			for (int k=0; k < 10; k++) {
+				for (double[] values : INPUTS)
+					Assert.assertArrayEquals(rete.process(values), cache.process(values), 0);
+			}
+			Assert.assertEquals(36, cache.getHitCount());
+			Assert.assertEquals(4, cache.getMissCount());
+			Assert.assertEquals(4, cache.size());
+			Assert.assertEquals(0.9, cache.getHitRate(), 1e-12);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testConcurrentMisses() {
+		try {
+			NeuralNetwork rete = carica("reteXor");
+			Random rnd = new Random(9);
+			double[][] inputs = new double[20000][2];
+			double[][] expected = new double[inputs.length][];
+			NeuralNetwork single = rete.copy();
+			for (int i=0; i < inputs.length; i++) {
+				inputs[i][0] = rnd.nextDouble();
+				inputs[i][1] = rnd.nextDouble();
+				expected[i] = single.process(inputs[i]);
+			}
+
+			/* every request is a miss, processed by four threads together */
+			CachedNetwork cache = new CachedNetwork(rete, 4 * inputs.length);
+			ExecutorService pool = Executors.newFixedThreadPool(4);
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int t=0; t < 4; t++) {
+				int from = t;
+				results.add(pool.submit(() -> {
+					boolean same = true;
+					for (int i=from; i < inputs.length; i += 4)
+						same &= cache.process(inputs[i])[0] == expected[i][0];
+					return same;
+				}));
+			}
+			for (Future<Boolean> f : results)
+				Assert.assertTrue(f.get());
+			pool.shutdown();
+			Assert.assertEquals(inputs.length, cache.getMissCount());
+
+			/* and the stored outputs are the right ones */
+			for (int i=0; i < inputs.length; i++)
+				Assert.assertArrayEquals(expected[i], cache.process(inputs[i]), 0);
+			Assert.assertEquals(inputs.length, cache.getHitCount());
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		try {
+			CachedNetwork cache = new CachedNetwork(carica("reteOr"), 2);
+			for (double[] values : INPUTS)
+				cache.process(values);
+			Assert.assertEquals(2, cache.size());
+			Assert.assertEquals(2, cache.getEvictionCount());
+
+			/* the last two are kept */
+			cache.process(INPUTS[3]);
+			cache.process(INPUTS[2]);
+			Assert.assertEquals(2, cache.getHitCount());
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testInvalidation() throws IOException {
+		try {
+			NeuralNetwork rete = carica("reteAnd");
+			CachedNetwork cache = new CachedNetwork(rete, 16);
+			double[] before = cache.process(INPUTS[3]);
+
+			/* the and becomes always false */
+			rete.getLayers().getFirst().getNeuron(0).setThreshold(-100);
+			rete.weightsChanged();
+
+			double[] after = cache.process(INPUTS[3]);
+			Assert.assertEquals(2, cache.getMissCount());
+			Assert.assertNotEquals(before[0], after[0], 0);
+			Assert.assertArrayEquals(rete.process(INPUTS[3]), after, 0);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+}
@@ -0,0 +1,138 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestEvaluation {
+
+	private static final double[][] INPUTS = {{0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}};
+
+	private NeuralNetwork rete(Random rnd) {
+		return NetworkFixtures.random("ReteClassi", rnd, new String[] {"tanh", "softmax"},
+									  new int[][] {{8, 16}, {16, 3}}, 1);
+	}
+
+	@Test
+	public void testReteXor() {
+		try {
+			NeuralNetwork rete = (NeuralNetwork) IReteNeurale.carica(new File(".").getCanonicalPath() + "/reteXor");
+			double[][] outputs = {{0.0}, {1.0}, {1.0}, {0.0}};
+			Evaluation e = rete.evaluate(INPUTS, outputs);
+
+			double mse = 0;
+			int correct = 0;
+			for (int i=0; i < INPUTS.length; i++) {
+				double y = rete.process(INPUTS[i])[0];
+				mse += (y - outputs[i][0]) * (y - outputs[i][0]);
+				if ((y >= 0.5 ? 1 : 0) == outputs[i][0])
+					correct++;
+			}
+			Assert.assertEquals(4, e.getCount());
+			Assert.assertEquals(mse / 4, e.getMse(), 1e-12);
+			Assert.assertEquals(correct / 4.0, e.getAccuracy(), 0);
+			long[][] confusion = e.getConfusionMatrix();
+			Assert.assertEquals(correct, confusion[0][0] + confusion[1][1]);
+
+			/* only the requested metrics */
+			e = rete.evaluate(INPUTS, outputs, Metric.MAE);
+			Assert.assertFalse(Double.isNaN(e.getMae()));
+			Assert.assertTrue(Double.isNaN(e.getLoss()));
+			Assert.assertNull(e.getConfusionMatrix());
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testParallel() {
+		Random rnd = new Random(23);
+		NeuralNetwork rete = rete(rnd);
+		double[][] inputs = new double[100000][8];
+		double[][] outputs = new double[inputs.length][3];
+		for (int i=0; i < inputs.length; i++) {
+			for (int j=0; j < 8; j++)
+				inputs[i][j] = rnd.nextDouble();
+			outputs[i][rnd.nextInt(3)] = 1;
+		}
+
+		Evaluation parallel = rete.evaluate(inputs, outputs);
+		/* without replicas the evaluation is sequential */
+		IReteNeurale single = new IReteNeurale() {
+			public double[] process(double[] values) { return rete.process(values); }
+			public double trainIstanza(double[] values, double[] output) { return 0; }
+			public void train(double[][] inputs, double[][] outputs) { }
+			public String getNome() { return rete.getNome(); }
+		};
+		Evaluation sequential = single.evaluate(inputs, outputs);
+
+		Assert.assertEquals(inputs.length, parallel.getCount());
+		Assert.assertEquals(sequential.getLoss(), parallel.getLoss(), 1e-9);
+		Assert.assertEquals(sequential.getAccuracy(), parallel.getAccuracy(), 0);
+		Assert.assertEquals(sequential.getMae(), parallel.getMae(), 1e-9);
+		Assert.assertEquals(sequential.getMse(), parallel.getMse(), 1e-9);
+		Assert.assertArrayEquals(sequential.getConfusionMatrix(), parallel.getConfusionMatrix());
+	}
+
+	/* a slow network, the pool threads steal the tasks of the evaluation */
+	private IReteNeurale slow(IReteNeurale rete, List<WeakReference<IReteNeurale>> replicas) {
+		return new IReteNeurale() {
+			public double[] process(double[] values) {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return rete.process(values);
+			}
+			public double trainIstanza(double[] values, double[] output) { return 0; }
+			public void train(double[][] inputs, double[][] outputs) { }
+			public String getNome() { return rete.getNome(); }
+			public IReteNeurale replica() {
+				IReteNeurale replica = slow(rete.replica(), replicas);
+				synchronized (replicas) {
+					replicas.add(new WeakReference<IReteNeurale>(replica));
+				}
+				return replica;
+			}
+		};
+	}
+
+	@Test
+	public void testReplicasReleased() {
+		Random rnd = new Random(29);
+		NeuralNetwork rete = rete(rnd);
+		double[][] inputs = new double[2048][8];
+		double[][] outputs = new double[inputs.length][3];
+		for (int i=0; i < inputs.length; i++) {
+			for (int j=0; j < 8; j++)
+				inputs[i][j] = rnd.nextDouble();
+			outputs[i][rnd.nextInt(3)] = 1;
+		}
+
+		List<WeakReference<IReteNeurale>> replicas = new ArrayList<WeakReference<IReteNeurale>>();
+		Evaluation e = slow(rete, replicas).evaluate(inputs, outputs);
+		Assert.assertEquals(inputs.length, e.getCount());
+		Assert.assertFalse(replicas.isEmpty());
+
+		/* no pool thread keeps a replica after the evaluation */
+		for (int k=0; k < 10; k++) {
+			System.gc();
+			boolean released = true;
+			synchronized (replicas) {
+				for (WeakReference<IReteNeurale> r : replicas)
+					released &= r.get() == null;
+			}
+			if (released)
+				return;
+		}
+		Assert.fail(replicas.size() + " replicas kept after the evaluation");
+	}
+
+}
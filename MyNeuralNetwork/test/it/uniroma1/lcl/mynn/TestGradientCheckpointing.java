@@ -0,0 +1,67 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestGradientCheckpointing {
+
+	private static final int UNITS = 6;
+	private static final int LAYERS = 8;
+
+	private NeuralNetwork rete() {
+		String[] af = NetworkFixtures.same("tanh", LAYERS);
+		af[LAYERS-1] = "logistic";
+		int[][] units = new int[LAYERS][];
+		for (int k=0; k < LAYERS; k++)
+			units[k] = new int[] {UNITS, k == LAYERS-1 ? 2 : UNITS};
+		return NetworkFixtures.random("ReteProfonda", 5, af, units, 0.5);
+	}
+
+	private long train(NeuralNetwork rete) {
+		Random rnd = new Random(9);
+		for (int k=0; k < 50; k++) {
+			double[] x = new double[UNITS];
+			for (int i=0; i < UNITS; i++)
+				x[i] = rnd.nextDouble();
+			double[] y = {x[0] > 0.5 ? 1 : 0, x[1] > 0.5 ? 1 : 0};
+			rete.trainIstanza(x, y);
+		}
+		return NetworkPatch.checksum(rete);
+	}
+
+	@Test
+	public void testSameWeights() {
+		NeuralNetwork full = rete();
+		long expected = train(full);
+		Assert.assertEquals(0, full.getRecomputedLayers());
+
+		long fullBytes = full.getTrainingActivationBytes();
+		for (int every : new int[] {2, 3, 4}) {
+			NeuralNetwork rete = rete();
+			rete.setCheckpointEvery(every);
+			Assert.assertEquals(expected, train(rete));
+			Assert.assertTrue(rete.getRecomputedLayers() > 0);
+			long bytes = rete.getTrainingActivationBytes();
+			Assert.assertTrue(every + ": " + bytes, bytes < fullBytes);
+			/* the network processes as the trained one */
+			Assert.assertArrayEquals(full.process(new double[UNITS]), rete.process(new double[UNITS]), 0);
+		}
+	}
+
+	@Test
+	public void testSparseInput() {
+		NeuralNetwork full = rete();
+		NeuralNetwork rete = rete();
+		rete.setCheckpointEvery(3);
+		SparseVector x = new SparseVector(UNITS, new int[] {1, 4}, new double[] {1.0, 0.5});
+		for (int k=0; k < 20; k++) {
+			full.trainIstanza(x, new double[] {1.0, 0.0});
+			rete.trainIstanza(x, new double[] {1.0, 0.0});
+		}
+		Assert.assertEquals(NetworkPatch.checksum(full), NetworkPatch.checksum(rete));
+		Assert.assertTrue(rete.getRecomputedLayers() > 0);
+	}
+
+}
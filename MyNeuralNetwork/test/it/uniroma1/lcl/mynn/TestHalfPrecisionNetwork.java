@@ -0,0 +1,94 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma1.lcl.mynn.HalfPrecisionNetwork.Format;
+
+public class TestHalfPrecisionNetwork {
+
+	private NeuralNetwork rete(Random rnd) {
+		return NetworkFixtures.create("ReteHalf", new String[] {"tanh", "relu", "softmax"},
+									  new int[][] {{64, 32}, {32, 16}, {16, 4}},
+									  inputs -> rnd.nextGaussian() / Math.sqrt(inputs));
+	}
+
+	private double[][] inputs(Random rnd, int count) {
+		double[][] inputs = new double[count][64];
+		for (double[] values : inputs) {
+			for (int i=0; i < values.length; i++)
+				values[i] = rnd.nextDouble() * 2 - 1;
+		}
+		return inputs;
+	}
+
+	@Test
+	public void testFloat16Encoding() {
+		/* every value is encoded to itself */
+		for (int h=0; h < (1 << 16); h++) {
+			double v = HalfPrecisionNetwork.decode(Format.FLOAT16, (short) h);
+			if (Double.isNaN(v) == false)
+				Assert.assertEquals(h, HalfPrecisionNetwork.encode(Format.FLOAT16, v) & 0xFFFF);
+		}
+		Assert.assertEquals(65504, HalfPrecisionNetwork.decode(Format.FLOAT16, (short) 0x7BFF), 0);
+		Assert.assertEquals(Double.POSITIVE_INFINITY, HalfPrecisionNetwork.decode(Format.FLOAT16,
+							HalfPrecisionNetwork.encode(Format.FLOAT16, 1e6)), 0);
+		/* ties to even */
+		Assert.assertEquals(1.0, HalfPrecisionNetwork.decode(Format.FLOAT16,
+							HalfPrecisionNetwork.encode(Format.FLOAT16, 1 + Math.scalb(1.0, -11))), 0);
+		Assert.assertEquals(Math.scalb(1.0, -24), HalfPrecisionNetwork.decode(Format.FLOAT16,
+							HalfPrecisionNetwork.encode(Format.FLOAT16, Math.scalb(1.0, -24))), 0);
+		Assert.assertEquals(1.0, HalfPrecisionNetwork.decode(Format.BFLOAT16,
+							HalfPrecisionNetwork.encode(Format.BFLOAT16, 1 + Math.scalb(1.0, -8))), 0);
+	}
+
+	@Test
+	public void testAccuracy() {
+		try {
+			Random rnd = new Random(17);
+			NeuralNetwork rete = rete(rnd);
+			double[][] inputs = inputs(rnd, 500);
+			HalfPrecisionNetwork float16 = HalfPrecisionNetwork.convert(rete, Format.FLOAT16);
+			HalfPrecisionNetwork bfloat16 = HalfPrecisionNetwork.convert(rete, Format.BFLOAT16);
+
+			Assert.assertEquals(rete.getWeightsBytes(), 4 * float16.getWeightsBytes());
+			Assert.assertTrue(float16.getMaxWeightError() < bfloat16.getMaxWeightError());
+			double float16Error = float16.getMaxOutputError(rete, inputs);
+			double bfloat16Error = bfloat16.getMaxOutputError(rete, inputs);
+			Assert.assertTrue(float16Error + " < " + bfloat16Error, float16Error < bfloat16Error);
+			Assert.assertTrue(float16Error < 1e-3);
+			Assert.assertTrue(bfloat16Error < 2e-2);
+
+			/* the expanded network has the decoded weights */
+			Assert.assertEquals(0, float16.getMaxOutputError(float16.toNeuralNetwork(), inputs), 1e-12);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testSaveLoad() {
+		try {
+			Random rnd = new Random(19);
+			HalfPrecisionNetwork half = HalfPrecisionNetwork.convert(rete(rnd), Format.BFLOAT16);
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			half.write(bos);
+			HalfPrecisionNetwork loaded = HalfPrecisionNetwork.read(new ByteArrayInputStream(bos.toByteArray()));
+			Assert.assertEquals(Format.BFLOAT16, loaded.getFormat());
+			Assert.assertEquals(half.getNome(), loaded.getNome());
+			Assert.assertTrue(bos.size() < half.getWeightsBytes() + 100);
+			double[][] inputs = inputs(rnd, 20);
+			for (double[] values : inputs)
+				Assert.assertArrayEquals(half.process(values), loaded.process(values), 0);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+}
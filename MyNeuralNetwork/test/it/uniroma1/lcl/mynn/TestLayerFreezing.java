@@ -0,0 +1,80 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLayerFreezing {
+
+	private static final int UNITS = 4;
+	private static final double[][] INPUTS = {{0, 0, 1, 1}, {0, 1, 0, 1}, {1, 0, 0, 1}, {1, 1, 1, 0}};
+	private static final double[][] OUTPUTS = {{0}, {1}, {1}, {0}};
+
+	private NeuralNetwork rete() {
+		NeuralNetwork rete = NetworkFixtures.random("RetePreAddestrata", 17,
+				new String[] {"tanh", "tanh", "tanh", "logistic"},
+				new int[][] {{UNITS, UNITS}, {UNITS, UNITS}, {UNITS, UNITS}, {UNITS, 1}}, 0.5);
+		/* fine-tuning of the output layers only */
+		rete.getLayers().get(1).setFrozen(true);
+		return rete;
+	}
+
+	@Test
+	public void testFineTuning() {
+		NeuralNetwork rete = rete();
+		double[][] before = new double[4][];
+		for (int k=0; k < 4; k++)
+			before[k] = rete.getLayers().get(k).getNeuron(0).getWeightsAndThreshold();
+
+		rete.setProfiling(true);
+		rete.addTrainingListener(new ITrainingListener() {
+			@Override
+			public void onEpochEnd(TrainingStats stats) {
+				if (stats.getEpoch() == 30)
+					rete.stopTraining();
+			}
+		});
+		rete.train(INPUTS, OUTPUTS);
+
+		/* the frozen layer and the previous one aren't upgraded */
+		for (int k=0; k < 4; k++) {
+			double[] after = rete.getLayers().get(k).getNeuron(0).getWeightsAndThreshold();
+			if (k < 2)
+				Assert.assertArrayEquals(before[k], after, 0);
+			else
+				Assert.assertFalse(Arrays.equals(before[k], after));
+		}
+
+		/* the frozen layers are processed by the first epoch only */
+		NetworkProfile profile = rete.getProfile();
+		Assert.assertEquals(INPUTS.length, profile.getForwardCalls(0));
+		Assert.assertEquals(INPUTS.length, profile.getForwardCalls(1));
+		Assert.assertTrue(profile.getForwardCalls(2) > INPUTS.length);
+		Assert.assertEquals(0, profile.getBackwardCalls(1));
+		Assert.assertEquals(0, profile.getBackwardCalls(0));
+	}
+
+	@Test
+	public void testCachedOutputs() {
+		/* the cached run trains as the instance by instance one */
+		NeuralNetwork cached = rete();
+		cached.addTrainingListener(new ITrainingListener() {
+			@Override
+			public void onEpochEnd(TrainingStats stats) {
+				if (stats.getEpoch() == 20)
+					cached.stopTraining();
+			}
+		});
+		cached.train(INPUTS, OUTPUTS);
+
+		NeuralNetwork rete = rete();
+		rete.setCheckpointEvery(2);
+		for (int epoch=0; epoch < cached.getTrainedEpochs(); epoch++) {
+			for (int x=0; x < INPUTS.length; x++)
+				rete.trainIstanza(INPUTS[x], OUTPUTS[x]);
+		}
+		Assert.assertEquals(NetworkPatch.checksum(rete), NetworkPatch.checksum(cached));
+	}
+
+}
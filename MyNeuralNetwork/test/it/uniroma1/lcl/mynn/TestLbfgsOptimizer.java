@@ -0,0 +1,125 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLbfgsOptimizer {
+
+	private static final double[][] INPUTS = {{0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}};
+	private static final double[][] XOR = {{0.0}, {1.0}, {1.0}, {0.0}};
+
+	private NeuralNetwork rete(String[] af, int[][] units) {
+		return NetworkFixtures.random("ReteLbfgs", 31, af, units, 1);
+	}
+
+	/* the gradient against the central finite differences */
+	private void checkGradient(NeuralNetwork rete, double[][] outputs) throws Exception {
+		int size = (int) rete.getWeightsBytes() / Double.BYTES;
+		double[] grad = new double[size];
+		LbfgsOptimizer.loss(rete, INPUTS, outputs, grad);
+
+		int p = 0;
+		double h = 1e-6;
+		for (Layer l : rete.getLayers()) {
+			for (Neuron n : l.getNeurons()) {
+				for (int i=0; i <= n.getInputsCount(); i++) {
+					double[] wt = n.getWeightsAndThreshold();
+					double[] g = new double[size];
+					set(n, wt, i, wt[i] + h);
+					double plus = LbfgsOptimizer.loss(rete, INPUTS, outputs, g);
+					set(n, wt, i, wt[i] - h);
+					double minus = LbfgsOptimizer.loss(rete, INPUTS, outputs, g);
+					set(n, wt, i, wt[i]);
+					Assert.assertEquals("parameter " + p, (plus - minus) / (2 * h), grad[p], 1e-7);
+					p++;
+				}
+			}
+		}
+		Assert.assertEquals(size, p);
+	}
+
+	private void set(Neuron n, double[] wt, int i, double value) {
+		double[] w = wt.clone();
+		w[i] = value;
+		n.setWeights(Arrays.copyOf(w, w.length - 1));
+		n.setThreshold(w[w.length - 1]);
+	}
+
+	@Test
+	public void testGradient() {
+		try {
+			checkGradient(rete(new String[] {"tanh", "logistic"}, new int[][] {{2, 3}, {3, 1}}), XOR);
+			double[][] classes = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}, {1, 0, 0}};
+			checkGradient(rete(new String[] {"logistic", "tanh", "softmax"},
+							   new int[][] {{2, 4}, {4, 4}, {4, 3}}), classes);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testXor() {
+		try {
+			NeuralNetwork rete = rete(new String[] {"tanh", "logistic"}, new int[][] {{2, 3}, {3, 1}});
+			LbfgsOptimizer lbfgs = new LbfgsOptimizer(10, 500, 1e-8);
+			double loss = lbfgs.optimize(rete, INPUTS, XOR);
+
+			Assert.assertTrue("loss " + loss, loss < 1e-4);
+			Assert.assertTrue(lbfgs.getEvaluations() < 1000);
+			for (int i=0; i < INPUTS.length; i++)
+				Assert.assertEquals(XOR[i][0], rete.process(INPUTS[i])[0], 0.05);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testFrozenLayer() {
+		try {
+			NeuralNetwork rete = rete(new String[] {"tanh", "logistic"}, new int[][] {{2, 3}, {3, 1}});
+			rete.getLayers().getFirst().setFrozen(true);
+			double[] before = rete.getLayers().getFirst().getNeuron(0).getWeightsAndThreshold();
+			new LbfgsOptimizer().optimize(rete, INPUTS, XOR);
+			Assert.assertArrayEquals(before, rete.getLayers().getFirst().getNeuron(0).getWeightsAndThreshold(), 0);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testReteSquared() {
+		try {
+			double[][] inputs = new double[17][1];
+			double[][] outputs = new double[17][1];
+			for (int i=0; i < inputs.length; i++) {
+				inputs[i][0] = i / 16.0;
+				outputs[i][0] = inputs[i][0] * inputs[i][0];
+			}
+			NeuralNetwork rete = new Parser(new File(".").getCanonicalPath() + "/reteSquared")
+					.getNN(WeightInitializer.xavier().seeded(1));
+			LbfgsOptimizer lbfgs = new LbfgsOptimizer();
+			double loss = lbfgs.optimize(rete, inputs, outputs);
+
+			Assert.assertTrue("loss " + loss, loss < 1e-4);
+			Assert.assertEquals(0.09, rete.process(new double[] {0.3})[0], 0.01);
+			Assert.assertEquals(0.25, rete.process(new double[] {0.5})[0], 0.01);
+			Assert.assertEquals(0.49, rete.process(new double[] {0.7})[0], 0.01);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test(expected = ActivateFunctionException.class)
+	public void testStepLayer() throws Exception {
+		IReteNeurale rete = IReteNeurale.carica(new File(".").getCanonicalPath() + "/reteAnd");
+		new LbfgsOptimizer().optimize((NeuralNetwork) rete, INPUTS, XOR);
+	}
+
+}
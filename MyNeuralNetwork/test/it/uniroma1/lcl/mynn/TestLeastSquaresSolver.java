@@ -0,0 +1,74 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLeastSquaresSolver {
+
+	private NeuralNetwork rete(String af, int inputs, int outputs) {
+		NeuralNetwork rete = new NeuralNetwork("ReteLineare");
+		Layer l = new Layer("output", af);
+		for (int n=0; n < outputs; n++)
+			l.addNeuron(new Neuron(new double[inputs], new double[inputs + 1]));
+		rete.addLayer(l);
+		return rete;
+	}
+
+	@Test
+	public void testIdentity() {
+		Random rnd = new Random(3);
+		double[][] inputs = new double[20000][3];
+		double[][] outputs = new double[inputs.length][2];
+		for (int i=0; i < inputs.length; i++) {
+			for (int j=0; j < 3; j++)
+				inputs[i][j] = rnd.nextDouble() * 2 - 1;
+			outputs[i][0] = 2 * inputs[i][0] - 3 * inputs[i][1] + 0.5;
+			outputs[i][1] = inputs[i][2] - 1;
+		}
+
+		NeuralNetwork rete = rete("identity", 3, 2);
+		double mse = LeastSquaresSolver.fit(rete, inputs, outputs);
+		Assert.assertEquals(0, mse, 1e-12);
+		Layer l = rete.getLayers().getFirst();
+		Assert.assertArrayEquals(new double[] {2, -3, 0, 0.5}, l.getNeuron(0).getWeightsAndThreshold(), 1e-9);
+		Assert.assertArrayEquals(new double[] {0, 0, 1, -1}, l.getNeuron(1).getWeightsAndThreshold(), 1e-9);
+		Assert.assertEquals(0, rete.evaluate(inputs, outputs, Metric.MSE).getMse(), 1e-12);
+
+		/* the ridge shrinks the weights, not the thresholds */
+		LeastSquaresSolver.fit(rete, inputs, outputs, 1000);
+		double[] wt = l.getNeuron(0).getWeightsAndThreshold();
+		Assert.assertTrue(Math.abs(wt[0]) < 2 && Math.abs(wt[1]) < 3);
+		Assert.assertEquals(0.5, wt[3], 0.05);
+	}
+
+	@Test
+	public void testDependentInputs() {
+		/* the second input is a copy of the first one */
+		double[][] inputs = {{0, 0}, {1, 1}, {2, 2}, {3, 3}};
+		double[][] outputs = {{1}, {3}, {5}, {7}};
+		NeuralNetwork rete = rete("identity", 2, 1);
+		Assert.assertEquals(0, LeastSquaresSolver.fit(rete, inputs, outputs), 1e-9);
+		Assert.assertArrayEquals(new double[] {9}, rete.process(new double[] {4, 4}), 1e-6);
+	}
+
+	@Test
+	public void testLogisticWarmStart() {
+		double[][] inputs = {{0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}};
+		double[][] outputs = {{0.0}, {1.0}, {1.0}, {1.0}};
+		NeuralNetwork rete = rete("logistic", 2, 1);
+		LeastSquaresSolver.fit(rete, inputs, outputs);
+		Assert.assertEquals(1.0, rete.evaluate(inputs, outputs, Metric.ACCURACY).getAccuracy(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMultiLayer() {
+		NeuralNetwork rete = rete("identity", 2, 2);
+		Layer l = new Layer("output", "identity");
+		l.addNeuron(new Neuron(new double[2], new double[3]));
+		rete.addLayer(l);
+		LeastSquaresSolver.fit(rete, new double[][] {{0, 0}}, new double[][] {{0}});
+	}
+
+}
@@ -0,0 +1,122 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestModelHandle {
+
+	private static final double[] INPUT = {1.0, 1.0};
+
+	private Path rete(Path dir, String name, String outputWeights) throws Exception {
+		return write(dir, name, "nome=ReteXor\n" +
+						  "layer={ nome=input activationFunction=Logistic inputUnits=2 outputUnits=2 weights=[[1,1,0],[2,2,0]] }\n" +
+						  "layer={ nome=output activationFunction=Logistic inputUnits=2 outputUnits=1 weights=[" + outputWeights + "] }\n");
+	}
+
+	private Path write(Path dir, String name, String template) throws Exception {
+		Path file = dir.resolve(name);
+		Path tmp = dir.resolve(name + ".tmp");
+		Files.write(tmp, template.getBytes(StandardCharsets.UTF_8));
+		return Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+						  StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	@Test
+	public void testReload() {
+		try {
+			Path dir = Files.createTempDirectory("handle");
+			Path file = rete(dir, "rete", "[-1000,850,0]");
+			ModelHandle handle = new ModelHandle(file.toString());
+			Assert.assertEquals(1, handle.getVersion());
+			NeuralNetwork rete = (NeuralNetwork) IReteNeurale.carica(new File(".").getCanonicalPath() + "/reteXor");
+			Assert.assertArrayEquals(rete.process(INPUT), handle.process(INPUT), 0);
+
+			rete(dir, "rete", "[1,1,0]");
+			Assert.assertEquals(2, handle.reload());
+			Assert.assertNotEquals(rete.process(INPUT)[0], handle.process(INPUT)[0], 0);
+			Assert.assertNull(handle.getLastError());
+
+			/* invalid files are refused, the served version doesn't change */
+			double[] served = handle.process(INPUT);
+			String[] invalid = {"", "nome=ReteXor\n", "[1]", "[1,x,0]"};
+			for (String template : invalid) {
+				if (template.startsWith("["))
+					rete(dir, "rete", template);
+				else
+					write(dir, "rete", template);
+				try {
+					handle.reload();
+					Assert.fail(template);
+				} catch (ParserException e) {
+					Assert.assertSame(e, handle.getLastError());
+				}
+				Assert.assertEquals(2, handle.getVersion());
+				Assert.assertArrayEquals(served, handle.process(INPUT), 0);
+			}
+			Assert.assertEquals(invalid.length, handle.getFailureCount());
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testThreadReplica() {
+		try {
+			Path dir = Files.createTempDirectory("handle");
+			Path file = rete(dir, "rete", "[-1000,850,0]");
+			ModelHandle handle = new ModelHandle(file.toString());
+			ExecutorService worker = Executors.newSingleThreadExecutor();
+			double[] first = worker.submit(() -> handle.process(INPUT)).get();
+			Assert.assertArrayEquals(handle.process(INPUT), first, 0);
+
+			/* the copy of the worker is replaced by the new version */
+			rete(dir, "rete", "[1,1,0]");
+			handle.reload();
+			double[] second = worker.submit(() -> handle.process(INPUT)).get();
+			Assert.assertNotEquals(first[0], second[0], 0);
+			Assert.assertArrayEquals(handle.getNetwork().process(INPUT), second, 0);
+			worker.shutdown();
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testWatching() {
+		try {
+			Path dir = Files.createTempDirectory("handle");
+			Path file = rete(dir, "rete", "[-1000,850,0]");
+			try (ModelHandle handle = new ModelHandle(file.toString())) {
+				handle.startWatching();
+				double[] first = handle.process(INPUT);
+
+				rete(dir, "rete", "[1,1,0]");
+				long timeout = System.currentTimeMillis() + 30000;
+				while (handle.getVersion() == 1 && System.currentTimeMillis() < timeout)
+					Thread.sleep(50);
+				Assert.assertEquals(2, handle.getVersion());
+				Assert.assertNotEquals(first[0], handle.process(INPUT)[0], 0);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testTrain() throws Exception {
+		ModelHandle handle = new ModelHandle(new File(".").getCanonicalPath() + "/reteXor");
+		handle.trainIstanza(INPUT, new double[] {1.0});
+	}
+
+}
@@ -0,0 +1,84 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestNetworkCompiler {
+	
+	private void assertSameOutputs(String filename) throws Exception {
+		NeuralNetwork rete = (NeuralNetwork) IReteNeurale.carica(new File(".").getCanonicalPath() + "/" + filename);
+		IReteNeurale compiled = NetworkCompiler.compile(rete);
+		
+		Assert.assertEquals(rete.getNome(), compiled.getNome());
+		
+		Random rnd = new Random(1);
+		int inputs = rete.getLayers().getFirst().getNeuronInputUnits();
+		for (int k=0; k < 1000; k++) {
+			double[] values = new double[inputs];
+			for (int i=0; i < inputs; i++)
+				values[i] = rnd.nextGaussian() * 3;
+			Assert.assertArrayEquals(rete.process(values), compiled.process(values), 0);
+		}
+	}
+	
+	@Test
+	public void testCompileReteAnd() throws IOException {
+		try {
+			assertSameOutputs("reteAnd");
+			assertSameOutputs("reteOr");
+			assertSameOutputs("retePercettrone");
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+	
+	@Test
+	public void testCompileReteXor() throws IOException {
+		try {
+			assertSameOutputs("reteXor");
+			assertSameOutputs("reteSquared");
+			assertSameOutputs("reteSum");
+			assertSameOutputs("reteSoftmax");
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+	
+	@Test
+	public void testCompiledReplica() {
+		try {
+			NeuralNetwork rete = (NeuralNetwork) IReteNeurale.carica(new File(".").getCanonicalPath() + "/reteXor");
+			IReteNeurale compiled = NetworkCompiler.compile(rete);
+			Assert.assertSame(compiled, compiled.replica());
+			
+			/* evaluated in parallel on the same instance */
+			Random rnd = new Random(2);
+			double[][] inputs = new double[5000][2];
+			double[][] outputs = new double[inputs.length][1];
+			for (int k=0; k < inputs.length; k++) {
+				inputs[k][0] = rnd.nextInt(2);
+				inputs[k][1] = rnd.nextInt(2);
+				outputs[k][0] = (inputs[k][0] != inputs[k][1]) ? 1.0 : 0.0;
+			}
+			Assert.assertEquals(rete.evaluate(inputs, outputs).getMse(), 
+								compiled.evaluate(inputs, outputs).getMse(), 1e-12);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testCompiledTrain() throws Exception {
+		IReteNeurale compiled = NetworkCompiler.compile(
+				(NeuralNetwork) IReteNeurale.carica(new File(".").getCanonicalPath() + "/reteAnd"));
+		compiled.trainIstanza(new double[]{1.0, 1.0}, new double[]{0.0});
+	}
+
+}
@@ -0,0 +1,77 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestNetworkCopy {
+
+	private static final double[][] INPUTS = {{0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}};
+
+	private NeuralNetwork carica(String filename) throws Exception {
+		return (NeuralNetwork) IReteNeurale.carica(new File(".").getCanonicalPath() + "/" + filename);
+	}
+
+	@Test
+	public void testCopyOnWrite() throws IOException {
+		try {
+			NeuralNetwork rete = carica("reteXor");
+			NeuralNetwork copy = rete.copy();
+			Neuron source = rete.getLayers().getFirst().getNeuron(0);
+			Neuron copied = copy.getLayers().getFirst().getNeuron(0);
+			Assert.assertTrue(source.isWeightsShared());
+			Assert.assertTrue(copied.isWeightsShared());
+
+			double[] expected = rete.process(INPUTS[1]);
+			Assert.assertArrayEquals(expected, copy.process(INPUTS[1]), 0);
+
+			/* the write copies the weights of the written neuron only */
+			copied.setWeight(-5, 0);
+			Assert.assertFalse(copied.isWeightsShared());
+			Assert.assertTrue(copy.getLayers().getFirst().getNeuron(1).isWeightsShared());
+			Assert.assertEquals(1, source.getWeight(0), 0);
+			Assert.assertArrayEquals(expected, rete.process(INPUTS[1]), 0);
+
+			/* the source writes on its own array */
+			source.setWeight(3, 1);
+			Assert.assertEquals(1, copied.getWeight(1), 0);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testReplicas() throws IOException {
+		try {
+			NeuralNetwork rete = carica("reteSquared");
+			List<NeuralNetwork> replicas = new ArrayList<NeuralNetwork>();
+			for (int i=0; i < 64; i++)
+				replicas.add(rete.copy());
+
+			double[][] inputs = new double[1000][];
+			Random rnd = new Random(1);
+			for (int i=0; i < inputs.length; i++)
+				inputs[i] = new double[] {rnd.nextDouble()};
+			double[][] expected = new double[inputs.length][];
+			for (int i=0; i < inputs.length; i++)
+				expected[i] = rete.process(inputs[i]);
+
+			/* each thread uses its own replica */
+			IntStream.range(0, replicas.size()).parallel().forEach(r -> {
+				for (int i=0; i < inputs.length; i++)
+					Assert.assertArrayEquals(expected[i], replicas.get(r).process(inputs[i]), 0);
+			});
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+}
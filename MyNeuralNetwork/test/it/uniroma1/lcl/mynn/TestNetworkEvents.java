@@ -0,0 +1,124 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestNetworkEvents {
+
+	private static final String PREFIX = "it.uniroma1.lcl.mynn.";
+
+	/* the events of the package written by the recording */
+	private List<RecordedEvent> events(Recording recording) throws Exception {
+		Path dump = Files.createTempFile("events", ".jfr");
+		try {
+			recording.dump(dump);
+			List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+			for (RecordedEvent e : RecordingFile.readAllEvents(dump)) {
+				if (e.getEventType().getName().startsWith(PREFIX))
+					events.add(e);
+			}
+			return events;
+		} finally {
+			Files.delete(dump);
+		}
+	}
+
+	private void workload(String filename) throws Exception {
+		IReteNeurale rete = IReteNeurale.carica(filename);
+		double[][] inputs = {{0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}};
+		double[][] outputs = {{0.0}, {1.0}, {1.0}, {0.0}};
+		for (double[] x : inputs)
+			rete.process(x);
+		rete.train(inputs, outputs);
+	}
+
+	@Test
+	public void testDisabledByDefault() {
+		try (Recording recording = new Recording()) {
+			recording.start();
+			workload(new File(".").getCanonicalPath() + "/reteXor");
+			recording.stop();
+			Assert.assertTrue(events(recording).isEmpty());
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testEnabled() {
+		try (Recording recording = new Recording()) {
+			recording.enable(PREFIX + "Load");
+			recording.enable(PREFIX + "Process");
+			recording.enable(PREFIX + "TrainEpoch");
+			recording.start();
+			String filename = new File(".").getCanonicalPath() + "/reteXor";
+			workload(filename);
+			recording.stop();
+
+			int loads = 0, processes = 0, epochs = 0;
+			for (RecordedEvent e : events(recording)) {
+				Assert.assertEquals("ReteXor", e.getString("networkName"));
+				Assert.assertEquals(2, e.getInt("layerCount"));
+				switch (e.getEventType().getName()) {
+				case PREFIX + "Load":
+					Assert.assertEquals(filename, e.getString("fileName"));
+					Assert.assertTrue(e.getBoolean("success"));
+					loads++;
+					break;
+				case PREFIX + "Process":
+					Assert.assertEquals(1, e.getInt("batchSize"));
+					processes++;
+					break;
+				case PREFIX + "TrainEpoch":
+					Assert.assertEquals(4, e.getInt("batchSize"));
+					Assert.assertEquals(++epochs, e.getInt("epoch"));
+					break;
+				default:
+					Assert.fail(e.getEventType().getName() + " isn't enabled");
+				}
+			}
+			Assert.assertEquals(1, loads);
+			/* the forwards of the training are processes too */
+			Assert.assertTrue(processes > 4);
+			Assert.assertTrue(epochs > 0);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testFailedLoad() {
+		try (Recording recording = new Recording()) {
+			recording.enable(PREFIX + "Load");
+			recording.start();
+			String filename = new File(".").getCanonicalPath() + "/reteMancante";
+			try {
+				IReteNeurale.carica(filename);
+				Assert.fail();
+			} catch (ParserException e) {
+			}
+			recording.stop();
+
+			List<RecordedEvent> events = events(recording);
+			Assert.assertEquals(1, events.size());
+			Assert.assertEquals(filename, events.get(0).getString("fileName"));
+			Assert.assertFalse(events.get(0).getBoolean("success"));
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+}
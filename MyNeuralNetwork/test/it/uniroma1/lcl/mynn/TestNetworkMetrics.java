@@ -0,0 +1,108 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestNetworkMetrics {
+
+	@Test
+	public void testBuckets() {
+		int previous = -1;
+		for (long v=0; v < 1 << 20; v += 1 + v / 64) {
+			int i = LatencyHistogram.bucketIndex(v);
+			/* the buckets are ordered and the value is inside its bucket */
+			Assert.assertTrue(i >= previous);
+			Assert.assertTrue(v <= LatencyHistogram.bucketUpperBound(i));
+			if (i > 0)
+				Assert.assertTrue(v > LatencyHistogram.bucketUpperBound(i - 1));
+			/* each bucket covers at most 1/16 of its value */
+			Assert.assertTrue(LatencyHistogram.bucketUpperBound(i) - v <= Math.max(1, v / 16));
+			previous = i;
+		}
+		for (int i=0; i <= LatencyHistogram.bucketIndex(Long.MAX_VALUE); i++)
+			Assert.assertEquals(i, LatencyHistogram.bucketIndex(LatencyHistogram.bucketUpperBound(i)));
+		Assert.assertEquals(Long.MAX_VALUE,
+							LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram h = new LatencyHistogram();
+		for (long v=1; v <= 100000; v++)
+			h.record(v);
+		Assert.assertEquals(100000, h.getCount());
+		Assert.assertEquals(50000.5, h.getMean(), 1e-9);
+		for (double p : new double[] {50, 90, 99, 99.9}) {
+			long expected = (long) (p * 1000);
+			long value = h.getValueAtPercentile(p);
+			Assert.assertTrue(p + ": " + value, value >= expected && value <= expected * 17 / 16);
+		}
+		Assert.assertTrue(h.getMax() >= 100000 && h.getMax() <= 100000 * 17 / 16);
+		h.reset();
+		Assert.assertEquals(0, h.getValueAtPercentile(50));
+	}
+
+	@Test
+	public void testMBean() {
+		try {
+			NeuralNetwork rete = (NeuralNetwork) IReteNeurale.carica(
+					new File(".").getCanonicalPath() + "/reteXor");
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName query = new ObjectName("it.uniroma1.lcl.mynn:type=NeuralNetwork,*");
+			int before = server.queryNames(query, null).size();
+
+			NetworkMetrics metrics = rete.registerMBean();
+			Set<ObjectName> names = server.queryNames(query, null);
+			Assert.assertEquals(before + 1, names.size());
+
+			double[][] inputs = {{0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}};
+			double[][] outputs = {{0.0}, {1.0}, {1.0}, {0.0}};
+			for (double[] x : inputs)
+				rete.process(x);
+			rete.evaluate(inputs, outputs);
+
+			ObjectName name = null;
+			for (ObjectName n : names) {
+				if (server.isInstanceOf(n, NetworkMetrics.class.getName()) &&
+					server.getAttribute(n, "InferenceCount").equals(5L))
+					name = n;
+			}
+			Assert.assertNotNull(name);
+			long[] batches = (long[]) server.getAttribute(name, "BatchSizeDistribution");
+			/* four single instances and one batch of four */
+			Assert.assertEquals(4, batches[0]);
+			Assert.assertEquals(1, batches[2]);
+			Assert.assertEquals(rete.getWeightsBytes(), metrics.getWeightsHeapBytes());
+
+			rete.unregisterMBean();
+			Assert.assertFalse(server.isRegistered(name));
+			Assert.assertEquals(before, server.queryNames(query, null).size());
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testSparseHeapBytes() {
+		NeuralNetwork rete = new NeuralNetwork("ReteSparsa");
+		Layer l = new Layer("output", "logistic");
+		double[] wt = new double[101];
+		wt[3] = 1;
+		l.addNeuron(new Neuron(new double[100], wt));
+		rete.addLayer(l);
+		l.compact();
+		Assert.assertTrue(l.isSparse());
+		/* the CSR arrays are the only copy of the weights */
+		Assert.assertTrue(l.getWeightsHeapBytes() < l.getParameterCount() * Double.BYTES);
+		Assert.assertEquals(l.getWeightsBytes(), l.getWeightsHeapBytes());
+	}
+
+}
@@ -0,0 +1,58 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestNetworkOptimizer {
+
+	private Layer layer(String name, String af, double[][] weightsAndThresholds) {
+		Layer l = new Layer(name, af);
+		for (double[] wt : weightsAndThresholds)
+			l.addNeuron(new Neuron(new double[wt.length - 1], wt));
+		return l;
+	}
+
+	@Test
+	public void testOptimizeIdentityChain() {
+		try {
+			NeuralNetwork rete = new NeuralNetwork("ReteChain");
+			/* the third neuron is constant, the fourth one is dead */
+			rete.addLayer(layer("layer1", "identity", new double[][] {
+				{0.5, -1.0, 0.1},
+				{2.0, 0.25, -0.3},
+				{0.0, 0.0, 0.7},
+				{1.0, 1.0, 1.0}}));
+			rete.addLayer(layer("layer2", "logistic", new double[][] {
+				{1.0, -2.0, 0.5, 0.0, 0.2},
+				{-0.5, 1.5, 1.0, 0.0, -0.1}}));
+
+			NeuralNetwork optimized = NetworkOptimizer.optimize(rete);
+
+			Assert.assertEquals(1, optimized.getLayers().size());
+			Assert.assertEquals(2, optimized.getLayers().getFirst().getOutputUnits());
+			Assert.assertTrue(NetworkOptimizer.verify(rete, optimized, 1000, 1e-12));
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testOptimizeReteXor() throws IOException {
+		try {
+			NeuralNetwork rete = (NeuralNetwork) IReteNeurale.carica(new File(".").getCanonicalPath() + "/reteXor");
+			NeuralNetwork optimized = NetworkOptimizer.optimize(rete);
+
+			Assert.assertEquals(rete.getLayers().size(), optimized.getLayers().size());
+			Assert.assertEquals(0, NetworkOptimizer.verify(rete, optimized, new double[][] {
+				{0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}}), 0);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+}
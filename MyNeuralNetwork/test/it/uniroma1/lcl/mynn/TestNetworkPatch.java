@@ -0,0 +1,136 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestNetworkPatch {
+
+	private NeuralNetwork rete(Random rnd) {
+		return NetworkFixtures.random("ReteFineTuning", rnd, NetworkFixtures.same("logistic", 2),
+									  new int[][] {{100, 50}, {50, 10}}, 1);
+	}
+
+	/* change a fraction of the weights and of the thresholds */
+	private NeuralNetwork fineTune(NeuralNetwork rete, Random rnd, double fraction) {
+		NeuralNetwork tuned = rete.copy();
+		for (Layer l : tuned.getLayers()) {
+			for (Neuron n : l.getNeurons()) {
+				for (int i=0; i < n.getInputsCount(); i++) {
+					if (rnd.nextDouble() < fraction)
+						n.setWeight(n.getWeight(i) + rnd.nextGaussian() * 0.01, i);
+				}
+				if (rnd.nextDouble() < fraction)
+					n.setThreshold(n.getThreshold() + 0.01);
+			}
+		}
+		return tuned;
+	}
+
+	private NetworkPatch roundTrip(NetworkPatch patch) throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		patch.write(bos);
+		Assert.assertEquals(bos.size(), patch.getBytes());
+		return NetworkPatch.read(new ByteArrayInputStream(bos.toByteArray()));
+	}
+
+	@Test
+	public void testExactPatch() {
+		try {
+			Random rnd = new Random(7);
+			NeuralNetwork base = rete(rnd);
+			NeuralNetwork target = fineTune(base, rnd, 0.05);
+			NetworkPatch patch = NetworkPatch.diff(base, target, 0, false);
+			Assert.assertEquals(0, patch.getMaxError(), 0);
+			Assert.assertEquals(NetworkPatch.checksum(target), patch.getResultChecksum());
+			Assert.assertTrue(patch.getBytes() * 10 < base.getWeightsBytes());
+
+			NeuralNetwork deployed = base.copy();
+			Assert.assertEquals(patch.getChangeCount(), roundTrip(patch).apply(deployed));
+			Assert.assertEquals(NetworkPatch.checksum(target), NetworkPatch.checksum(deployed));
+			double[] x = new double[100];
+			for (int i=0; i < x.length; i++)
+				x[i] = rnd.nextDouble();
+			Assert.assertArrayEquals(target.process(x), deployed.process(x), 0);
+			Assert.assertArrayEquals(base.process(x), base.copy().process(x), 0);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testQuantizedSequence() {
+		try {
+			Random rnd = new Random(9);
+			NeuralNetwork v1 = rete(rnd);
+			NeuralNetwork deployed = v1.copy();
+
+			/* each patch is computed from the result of the previous one */
+			NeuralNetwork base = v1;
+			for (int k=0; k < 3; k++) {
+				NeuralNetwork target = fineTune(base, rnd, 0.1);
+				NetworkPatch patch = NetworkPatch.diff(base, target, 0, true);
+				Assert.assertTrue(patch.isQuantized());
+				Assert.assertTrue(patch.getMaxError() < 0.001);
+				Assert.assertTrue(patch.getBytes() < NetworkPatch.diff(base, target, 0, false).getBytes());
+
+				roundTrip(patch).apply(deployed);
+				Assert.assertEquals(patch.getResultChecksum(), NetworkPatch.checksum(deployed));
+				base = deployed.copy();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testSparseLayers() {
+		try {
+			Random rnd = new Random(17);
+			NeuralNetwork base = rete(rnd);
+			NetworkPruner.pruneByMagnitude(base, 1.5);
+			NeuralNetwork target = fineTune(base, rnd, 0.05);
+			NetworkPatch patch = NetworkPatch.diff(base, target, 0, false);
+
+			NeuralNetwork deployed = base.copy();
+			for (Layer l : deployed.getLayers())
+				Assert.assertTrue(l.isSparse());
+			patch.apply(deployed);
+			/* the patched layers are compacted again */
+			for (Layer l : deployed.getLayers())
+				Assert.assertTrue(l.isSparse());
+			Assert.assertEquals(NetworkPatch.checksum(target), NetworkPatch.checksum(deployed));
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testVersionCheck() {
+		try {
+			Random rnd = new Random(13);
+			NeuralNetwork base = rete(rnd);
+			NetworkPatch patch = NetworkPatch.diff(base, fineTune(base, rnd, 0.05), 0, false);
+			NeuralNetwork deployed = base.copy();
+			patch.apply(deployed);
+			long checksum = NetworkPatch.checksum(deployed);
+			try {
+				patch.apply(deployed);
+				Assert.fail();
+			} catch (PatchException e) {
+				/* the network isn't changed */
+				Assert.assertEquals(checksum, NetworkPatch.checksum(deployed));
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+}
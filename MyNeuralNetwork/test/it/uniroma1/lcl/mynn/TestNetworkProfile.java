@@ -0,0 +1,109 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestNetworkProfile {
+
+	/* 3 inputs, 4 tanh hidden units, 2 logistic outputs, dense weights */
+	private NeuralNetwork rete() {
+		Random rnd = new Random(5);
+		return NetworkFixtures.create("ReteProfilo", new String[] {"tanh", "logistic"},
+									  new int[][] {{3, 4}, {4, 2}}, inputs -> 0.5 + rnd.nextDouble());
+	}
+
+	@Test
+	public void testCostReport() {
+		NeuralNetwork rete = rete();
+		Layer hidden = rete.getLayers().get(0);
+		Layer output = rete.getLayers().get(1);
+		Assert.assertFalse(hidden.isSparse());
+
+		/* 4 * (3 + 1) and 2 * (4 + 1) parameters */
+		Assert.assertEquals(16, hidden.getParameterCount());
+		Assert.assertEquals(10, output.getParameterCount());
+		/* a multiply-add for each weight plus the threshold and the activation */
+		Assert.assertEquals(4 * (2 * 3 + 2), hidden.getForwardFlops());
+		Assert.assertEquals(2 * (2 * 4 + 2), output.getForwardFlops());
+		/* weights, copy of the inputs for each neuron, boxed outputs */
+		Assert.assertEquals(16 * 8 + 4 * 3 * 8 + 4 * 24, hidden.getFootprintBytes());
+		Assert.assertEquals(10 * 8 + 2 * 4 * 8 + 2 * 24, output.getFootprintBytes());
+		Assert.assertEquals(26 * 8, rete.getWeightsBytes());
+
+		String[] lines = rete.getCostReport().split("\n");
+		Assert.assertEquals(4, lines.length);
+		String[] total = lines[3].trim().split("\\s+");
+		Assert.assertArrayEquals(new String[] {"total", "26", "0.512", "52", "48"}, total);
+	}
+
+	@Test
+	public void testProfile() {
+		NeuralNetwork rete = rete();
+		Assert.assertNull(rete.getProfile());
+
+		rete.setProfiling(true);
+		double[] x = {0.1, -0.2, 0.3};
+		for (int i=0; i < 5; i++)
+			rete.process(x);
+		NetworkProfile profile = rete.getProfile();
+		for (int k=0; k < 2; k++) {
+			Assert.assertEquals(5, profile.getForwardCalls(k));
+			Assert.assertEquals(0, profile.getBackwardCalls(k));
+		}
+		Assert.assertEquals(5 * 32, profile.getFlops(0));
+		Assert.assertEquals(5 * 20, profile.getFlops(1));
+		Assert.assertEquals(5 * 16 * 8, profile.getWeightsBytes(0));
+		Assert.assertEquals(5 * 4 * 8, profile.getActivationBytes(0));
+		Assert.assertEquals(5 * 2 * 8, profile.getActivationBytes(1));
+
+		/* one training step far from the outputs: a forward and a backward
+		 * walk of each layer, the backward counted twice */
+		double[] y = rete.process(x);
+		rete.trainIstanza(x, new double[] {1 - Math.round(y[0]), 1 - Math.round(y[1])});
+		for (int k=0; k < 2; k++) {
+			Assert.assertEquals(7, profile.getForwardCalls(k));
+			Assert.assertEquals(1, profile.getBackwardCalls(k));
+		}
+		Assert.assertEquals((7 + 2) * 32, profile.getFlops(0));
+		Assert.assertEquals((7 + 2) * 20, profile.getFlops(1));
+		Assert.assertEquals((7 + 2) * 10 * 8, profile.getWeightsBytes(1));
+
+		/* enabling again clears the counters */
+		rete.setProfiling(true);
+		Assert.assertNotSame(profile, rete.getProfile());
+		for (int k=0; k < 2; k++) {
+			Assert.assertEquals(0, rete.getProfile().getForwardCalls(k));
+			Assert.assertEquals(0, rete.getProfile().getBackwardCalls(k));
+			Assert.assertEquals(0, rete.getProfile().getFlops(k));
+		}
+		rete.setProfiling(false);
+		Assert.assertNull(rete.getProfile());
+	}
+
+	@Test
+	public void testLayerAdded() {
+		NeuralNetwork rete = rete();
+		rete.setProfiling(true);
+		double[] x = {0.1, -0.2, 0.3};
+		rete.process(x);
+
+		/* a layer added while profiling */
+		Layer l = new Layer("layer2", "logistic");
+		l.addNeuron(new Neuron(new double[2], new double[] {0.5, -0.5, 0.1}));
+		rete.addLayer(l);
+		NetworkProfile profile = rete.getProfile();
+		Assert.assertEquals(0, profile.getForwardCalls(2));
+		rete.process(x);
+		rete.trainIstanza(x, new double[] {1.0});
+
+		/* the counters of the first layers are kept */
+		Assert.assertEquals(3, profile.getForwardCalls(0));
+		Assert.assertEquals(2, profile.getForwardCalls(2));
+		Assert.assertEquals(1, profile.getBackwardCalls(2));
+		Assert.assertEquals((2 + 2) * (2 * 2 + 2), profile.getFlops(2));
+		Assert.assertEquals(4, profile.toString().split("\n").length);
+	}
+
+}
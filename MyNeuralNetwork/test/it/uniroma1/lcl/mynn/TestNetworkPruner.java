@@ -0,0 +1,115 @@
+package it.uniroma1.lcl.mynn;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestNetworkPruner {
+
+	private NeuralNetwork rete(long seed) {
+		return NetworkFixtures.random("ReteSparse", seed, NetworkFixtures.same("logistic", 2),
+									  new int[][] {{40, 20}, {20, 3}}, 1);
+	}
+
+	@Test
+	public void testPruneTopK() {
+		NeuralNetwork sparse = rete(7);
+		NeuralNetwork dense = rete(7);
+
+		Assert.assertEquals(20 * 36 + 3 * 16, NetworkPruner.pruneTopK(sparse, 4));
+		Assert.assertTrue(sparse.getLayers().getFirst().isSparse());
+		Assert.assertTrue(sparse.getLayers().getLast().isSparse());
+		Assert.assertEquals(20 * 4, sparse.getLayers().getFirst().getNonZeroCount());
+		Assert.assertTrue(sparse.getWeightsBytes() < dense.getWeightsBytes());
+
+		/* same pruned weights, dense product */
+		for (int k=0; k < 2; k++) {
+			Layer s = sparse.getLayers().get(k);
+			Layer d = dense.getLayers().get(k);
+			for (int n=0; n < s.getOutputUnits(); n++)
+				d.getNeuron(n).setWeights(s.getNeuron(n).getWeights());
+			Assert.assertFalse(d.isSparse());
+		}
+
+		Random rnd = new Random(1);
+		for (int k=0; k < 100; k++) {
+			double[] values = new double[40];
+			for (int i=0; i < values.length; i++)
+				values[i] = rnd.nextGaussian();
+			Assert.assertArrayEquals(dense.process(values), sparse.process(values), 1e-12);
+		}
+	}
+
+	@Test
+	public void testPruneByMagnitude() {
+		NeuralNetwork rete = rete(3);
+		long nonZero = 0;
+		for (Layer l : rete.getLayers())
+			nonZero += l.getNonZeroCount();
+
+		long pruned = NetworkPruner.pruneByMagnitude(rete, 1.5);
+		long left = 0;
+		for (Layer l : rete.getLayers()) {
+			for (Neuron n : l.getNeurons()) {
+				for (double w : n.getWeights())
+					Assert.assertTrue(w == 0 || Math.abs(w) >= 1.5);
+			}
+			left += l.getNonZeroCount();
+		}
+		Assert.assertEquals(nonZero, pruned + left);
+		Assert.assertTrue(rete.getLayers().getFirst().isSparse());
+	}
+
+	@Test
+	public void testWeightsChange() {
+		NeuralNetwork rete = rete(5);
+		NetworkPruner.pruneTopK(rete, 2);
+		Layer l = rete.getLayers().getFirst();
+		Assert.assertTrue(l.isSparse());
+
+		/* a training update builds again the dense weights of the neuron */
+		long heap = l.getWeightsHeapBytes();
+		double[] w = l.getNeuron(0).getWeights();
+		l.getNeuron(0).setWeight(0.5, 0);
+		w[0] = 0.5;
+		Assert.assertFalse(l.isSparse());
+		Assert.assertArrayEquals(w, l.getNeuron(0).getWeights(), 0);
+		Assert.assertEquals(heap + 40 * 8, l.getWeightsHeapBytes());
+		Assert.assertTrue(l.compact());
+		Assert.assertTrue(l.getWeightsHeapBytes() < heap + 40 * 8);
+	}
+
+	@Test
+	public void testHeapBytes() {
+		NeuralNetwork rete = rete(9);
+		NeuralNetwork dense = rete(9);
+		long before = NetworkPruner.getWeightsHeapBytes(rete);
+		Assert.assertEquals((20 * 41 + 3 * 21) * 8, before);
+
+		NetworkPruner.pruneTopK(rete, 4);
+		long after = NetworkPruner.getWeightsHeapBytes(rete);
+		/* CSR values, indexes and rows offsets plus the thresholds */
+		long expected = (20 * 4 + 3 * 4) * (8 + 4) + (21 + 4) * 4 + (20 + 3) * 8;
+		Assert.assertEquals(expected, after);
+		Assert.assertTrue(after < before / 2);
+		for (Layer l : rete.getLayers()) {
+			for (Neuron n : l.getNeurons())
+				Assert.assertNotNull(n.getCompactedWeights());
+		}
+
+		/* the weights read from the CSR arrays are the pruned ones */
+		for (int k=0; k < 2; k++) {
+			Layer s = rete.getLayers().get(k);
+			Layer d = dense.getLayers().get(k);
+			for (int n=0; n < s.getOutputUnits(); n++) {
+				double[] w = s.getNeuron(n).getWeights();
+				for (int i=0; i < w.length; i++) {
+					Assert.assertEquals(w[i], s.getNeuron(n).getWeight(i), 0);
+					Assert.assertTrue(w[i] == 0 || w[i] == d.getNeuron(n).getWeight(i));
+				}
+			}
+		}
+	}
+
+}
@@ -179,4 +179,25 @@ public class TestReteNeurale {
 			Assert.fail();
 		}
 	}
+
+	@Test(timeout = 120000)
+	public void testTrainXorTreLivelli() {
+		try {
+			/* two hidden layers: the error of each hidden neuron comes from
+			 * its own weights into the next layer */
+			NeuralNetwork rete = NetworkFixtures.random("ReteXorTreLivelli", 3, 
+					NetworkFixtures.same("logistic", 3), new int[][] {{2, 4}, {4, 4}, {4, 1}}, 1);
+			double[][] inputs = {{0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}};
+			double[][] outputs = {{0.0}, {1.0}, {1.0}, {0.0}};
+			
+			rete.train(inputs, outputs);
+			
+			for (int x=0; x < inputs.length; x++)
+				Assert.assertEquals(outputs[x][0], rete.process(inputs[x])[0], 0.01);
+		
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
 }
@@ -0,0 +1,84 @@
+package it.uniroma1.lcl.mynn;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSparseInput {
+
+	private static final int FEATURES = 1000;
+
+	private NeuralNetwork rete() {
+		return NetworkFixtures.random("ReteOneHot", 11, NetworkFixtures.same("logistic", 2),
+									  new int[][] {{FEATURES, 8}, {8, 2}}, 0.5);
+	}
+
+	@Test
+	public void testProcess() {
+		NeuralNetwork rete = rete();
+		SparseVector x = new SparseVector(FEATURES, new int[] {3, 250, 999}, new double[] {1.0, 2.0, -0.5});
+		Assert.assertArrayEquals(rete.process(x.toDense()), rete.process(x), 1e-12);
+		Assert.assertArrayEquals(rete.process(new double[FEATURES]),
+								 rete.process(new SparseVector(FEATURES, new int[0], new double[0])), 1e-12);
+	}
+
+	@Test
+	public void testTrainIstanza() {
+		NeuralNetwork rete = rete();
+		SparseVector x = SparseVector.oneHot(FEATURES, 42);
+		double[] y = {1.0, 0.0};
+		double[] before = rete.getLayers().getFirst().getNeuron(0).getWeights();
+
+		double first = rete.trainIstanza(x, y);
+		double last = first;
+		for (int k=0; k < 200; k++)
+			last = rete.trainIstanza(x, y);
+		Assert.assertTrue(first + " -> " + last, last < first);
+
+		/* only the column of the present feature is changed */
+		double[] after = rete.getLayers().getFirst().getNeuron(0).getWeights();
+		for (int i=0; i < FEATURES; i++) {
+			if (i != 42)
+				Assert.assertEquals(before[i], after[i], 0);
+		}
+		Assert.assertNotEquals(before[42], after[42], 0);
+	}
+
+	private NeuralNetwork rete(String af, int[][] layers) {
+		return NetworkFixtures.random("ReteEquivalente", 13, NetworkFixtures.same(af, layers.length),
+									  layers, 0.5);
+	}
+
+	@Test
+	public void testDenseEquivalence() {
+		SparseVector[] x = {
+			new SparseVector(40, new int[] {0, 7, 39}, new double[] {1.0, -2.0, 0.5}),
+			SparseVector.oneHot(40, 21),
+			new SparseVector(40, new int[] {5, 6}, new double[] {0.25, 1.0})
+		};
+		double[][] y = {{1.0, 0.0}, {0.0, 1.0}, {1.0, 1.0}};
+		/* perceptron, single layer and multi layer upgrades */
+		String[] af = {"step", "logistic", "tanh"};
+		int[][][] layers = {{{40, 2}}, {{40, 2}}, {{40, 6}, {6, 2}}};
+
+		for (int r=0; r < af.length; r++) {
+			NeuralNetwork dense = rete(af[r], layers[r]);
+			NeuralNetwork sparse = rete(af[r], layers[r]);
+			Assert.assertEquals(NetworkPatch.checksum(dense), NetworkPatch.checksum(sparse));
+			long before = NetworkPatch.checksum(dense);
+			for (int k=0; k < 20; k++) {
+				int i = k % x.length;
+				Assert.assertEquals(dense.trainIstanza(x[i].toDense(), y[i]), 
+									sparse.trainIstanza(x[i], y[i]), 0);
+			}
+			Assert.assertNotEquals(before, NetworkPatch.checksum(dense));
+			Assert.assertEquals(af[r], NetworkPatch.checksum(dense), NetworkPatch.checksum(sparse));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsortedIndexes() {
+		new SparseVector(10, new int[] {5, 2}, new double[] {1.0, 1.0});
+	}
+
+}
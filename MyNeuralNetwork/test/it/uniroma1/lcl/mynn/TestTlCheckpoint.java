@@ -0,0 +1,87 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTlCheckpoint {
+
+	private static final double[][] INPUTS = {{0.0, 0.0}, {0.0, 1.0}, {1.0, 0.0}, {1.0, 1.0}};
+	private static final double[][] OUTPUTS = {{0.0}, {1.0}, {1.0}, {1.0}};
+
+	private NeuralNetwork rete(boolean frozen) {
+		NeuralNetwork rete = new NeuralNetwork("ReteCheckpoint");
+		Layer hidden = new Layer("hidden", "logistic");
+		hidden.addNeuron(new Neuron(new double[2], new double[] {0.3, -0.2, 0.1}));
+		hidden.addNeuron(new Neuron(new double[2], new double[] {-0.4, 0.5, 0.0}));
+		if (frozen) {
+			/* the first hidden neuron already separates the classes */
+			hidden.getNeuron(0).setWeights(new double[] {5.0, 5.0});
+			hidden.getNeuron(0).setThreshold(-2.5);
+			hidden.setFrozen(true);
+		}
+		rete.addLayer(hidden);
+		Layer output = new Layer("output", "logistic");
+		output.addNeuron(new Neuron(new double[2], new double[] {0.2, 0.7, -0.1}));
+		rete.addLayer(output);
+		return rete;
+	}
+
+	@Test(timeout = 120000)
+	public void testResume() {
+		resume(false);
+	}
+
+	@Test(timeout = 120000)
+	public void testResumeFrozen() {
+		resume(true);
+	}
+
+	private void resume(boolean frozen) {
+		try {
+			File dir = Files.createTempDirectory("checkpoint").toFile();
+			String filename = new File(dir, "rete.ckpt").getPath();
+
+			/* uninterrupted run */
+			NeuralNetwork full = rete(frozen);
+			full.train(INPUTS, OUTPUTS);
+
+			/* run interrupted at epoch 20 and resumed from the checkpoint */
+			NeuralNetwork interrupted = rete(frozen);
+			TlCheckpoint checkpoint = new TlCheckpoint(interrupted, filename, 3);
+			interrupted.addTrainingListener(checkpoint);
+			interrupted.addTrainingListener(new ITrainingListener() {
+				@Override
+				public void onEpochEnd(TrainingStats stats) {
+					if (stats.getEpoch() == 20)
+						interrupted.stopTraining();
+				}
+			});
+			interrupted.train(INPUTS, OUTPUTS);
+			Assert.assertNull(checkpoint.getLastError());
+			Assert.assertTrue(checkpoint.getWritten() > 0);
+			Assert.assertFalse(new File(filename + ".tmp").exists());
+
+			NeuralNetwork resumed = TlCheckpoint.load(filename);
+			Assert.assertEquals(20, resumed.getTrainedEpochs());
+			Assert.assertEquals(frozen, resumed.getLayers().getFirst().isFrozen());
+			Assert.assertFalse(resumed.getLayers().getLast().isFrozen());
+			Assert.assertEquals(NetworkPatch.checksum(interrupted), NetworkPatch.checksum(resumed));
+			resumed.train(INPUTS, OUTPUTS);
+
+			Assert.assertEquals(full.getTrainedEpochs(), resumed.getTrainedEpochs());
+			Assert.assertEquals(NetworkPatch.checksum(full), NetworkPatch.checksum(resumed));
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test(expected = ParserException.class)
+	public void testInvalidFile() throws Exception {
+		TlCheckpoint.load(new File(".").getCanonicalPath() + "/reteXor");
+	}
+
+}
@@ -0,0 +1,59 @@
+package it.uniroma1.lcl.mynn;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTlValidation {
+
+	private NeuralNetwork rete() {
+		NeuralNetwork rete = new NeuralNetwork("ReteValidation");
+		Layer l = new Layer("output", "logistic");
+		l.addNeuron(new Neuron(new double[1], new double[] {0.1, 0.0}));
+		rete.addLayer(l);
+		return rete;
+	}
+
+	@Test(timeout = 60000)
+	public void testEarlyStopping() {
+		NeuralNetwork rete = rete();
+		/* contradictory instances, the training error never goes under the
+		 * threshold */
+		double[][] inputs = {{0.0}, {0.0}, {1.0}};
+		double[][] outputs = {{0.0}, {1.0}, {1.0}};
+		/* the validation error grows with the training */
+		double[][] validInputs = {{1.0}};
+		double[][] validOutputs = {{0.0}};
+
+		TlValidation validation = new TlValidation(rete, validInputs, validOutputs, Metric.MSE, 1, 5);
+		rete.addTrainingListener(validation);
+		rete.train(inputs, outputs);
+
+		double[][] history = validation.getHistory();
+		Assert.assertTrue(history.length >= 6);
+		Assert.assertEquals(1, validation.getBestEpoch());
+		NeuralNetwork best = validation.getBestNetwork();
+		Assert.assertEquals(validation.getBestValue(),
+							best.evaluate(validInputs, validOutputs, Metric.MSE).getMse(), 0);
+		/* the last weights are worse than the kept ones */
+		Assert.assertTrue(rete.evaluate(validInputs, validOutputs, Metric.MSE).getMse() >
+						  validation.getBestValue());
+	}
+
+	@Test(timeout = 60000)
+	public void testFinalValidation() {
+		NeuralNetwork rete = rete();
+		double[][] inputs = {{0.0}, {1.0}};
+		double[][] outputs = {{0.0}, {1.0}};
+
+		TlValidation validation = new TlValidation(rete, inputs, outputs, Metric.ACCURACY, 1000000, 0);
+		rete.addTrainingListener(validation);
+		rete.train(inputs, outputs);
+
+		/* only the final weights are validated */
+		double[][] history = validation.getHistory();
+		Assert.assertEquals(1, history.length);
+		Assert.assertEquals(0, validation.getBestValue(), 0);
+		Assert.assertEquals(history[0][0], validation.getBestEpoch(), 0);
+	}
+
+}
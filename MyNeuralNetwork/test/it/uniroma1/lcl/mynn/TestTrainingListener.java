@@ -0,0 +1,110 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTrainingListener {
+	
+	private class CountingListener implements ITrainingListener {
+		int runs;
+		int epochs;
+		int batches;
+		double lastGradient;
+		
+		@Override
+		public void onRunStart(TrainingStats stats) {
+			runs++;
+		}
+		
+		@Override
+		public void onBatchEnd(TrainingStats stats) {
+			batches++;
+			lastGradient = stats.getGradientNorm();
+		}
+		
+		@Override
+		public void onEpochEnd(TrainingStats stats) {
+			epochs++;
+			Assert.assertEquals(epochs, stats.getEpoch());
+			Assert.assertEquals(2, stats.getSamples());
+		}
+		
+		@Override
+		public void onRunEnd(TrainingStats stats) {
+			runs++;
+			Assert.assertTrue(stats.getRunNanos() > 0);
+		}
+	}
+	
+	@Test
+	public void testTrainListener() throws IOException {
+		try {
+			
+			double[][] inputs = {
+					{1.0}, 
+					{0.0}, 
+					};
+			double[][] outputs = {
+				{0.0},
+				{1.0},
+				};
+		
+			NeuralNetwork rete = (NeuralNetwork) IReteNeurale.carica(new File(".").getCanonicalPath() + "/retePercettrone");
+			CountingListener listener = new CountingListener();
+			rete.addTrainingListener(listener);
+		
+			rete.train(inputs, outputs);
+			
+			Assert.assertEquals(2, listener.runs);
+			Assert.assertTrue(listener.epochs > 0);
+			Assert.assertEquals(listener.epochs * 2, listener.batches);
+			/* the last epoch has nothing to learn */
+			Assert.assertEquals(0, listener.lastGradient, 0);
+		
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+	
+	@Test
+	public void testCsvReport() throws IOException {
+		try {
+			
+			double[][] inputs = {
+					{1.0}, 
+					{0.0}, 
+					};
+			double[][] outputs = {
+				{0.0},
+				{1.0},
+				};
+		
+			File csv = File.createTempFile("training", ".csv");
+			csv.deleteOnExit();
+			
+			NeuralNetwork rete = (NeuralNetwork) IReteNeurale.carica(new File(".").getCanonicalPath() + "/retePercettrone");
+			CountingListener listener = new CountingListener();
+			rete.addTrainingListener(listener);
+			rete.addTrainingListener(new TlCsv(csv.getPath()));
+		
+			rete.train(inputs, outputs);
+			
+			List<String> lines = Files.readAllLines(Paths.get(csv.getPath()));
+			/* header plus one row for each epoch */
+			Assert.assertEquals(listener.epochs + 1, lines.size());
+			Assert.assertTrue(lines.get(1).startsWith("RetePercettrone,1,"));
+		
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+}
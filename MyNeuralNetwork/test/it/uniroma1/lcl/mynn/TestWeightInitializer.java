@@ -0,0 +1,147 @@
+package it.uniroma1.lcl.mynn;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestWeightInitializer {
+
+	private String rete(String init) throws Exception {
+		Path file = Files.createTempFile("rete", "");
+		String template = "nome=ReteInit\n" +
+						  "layer={ nome=hidden activationFunction=relu inputUnits=200 outputUnits=100 " + init + " }\n" +
+						  "layer={ nome=output activationFunction=logistic inputUnits=100 outputUnits=1 }\n";
+		Files.write(file, template.getBytes(StandardCharsets.UTF_8));
+		file.toFile().deleteOnExit();
+		return file.toString();
+	}
+
+	private double[] weights(NeuralNetwork rete) {
+		Layer l = rete.getLayers().getFirst();
+		double[] w = new double[l.getOutputUnits() * 200];
+		for (int n=0; n < l.getOutputUnits(); n++)
+			System.arraycopy(l.getNeuron(n).getWeights(), 0, w, n * 200, 200);
+		return w;
+	}
+
+	@Test
+	public void testSeeded() {
+		try {
+			String file = rete("init=he:42");
+			double[] first = weights(new Parser(file).getNN());
+			Assert.assertArrayEquals(first, weights(new Parser(file).getNN()), 0);
+			Assert.assertNotEquals(first[0], weights(new Parser(rete("init=he:43")).getNN())[0], 0);
+
+			/* the same seed from the caller */
+			NeuralNetwork rete = new Parser(rete("")).getNN(WeightInitializer.he().seeded(42));
+			Assert.assertArrayEquals(first, weights(rete), 0);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testSeededLayers() {
+		try {
+			Path file = Files.createTempFile("rete", "");
+			String template = "nome=ReteInit\n" +
+							  "layer={ nome=hidden activationFunction=relu inputUnits=200 outputUnits=100 init=he:42 }\n" +
+							  "layer={ nome=square activationFunction=relu inputUnits=100 outputUnits=100 init=he:42 }\n" +
+							  "layer={ nome=output activationFunction=relu inputUnits=100 outputUnits=100 init=he:42 }\n";
+			Files.write(file, template.getBytes(StandardCharsets.UTF_8));
+			file.toFile().deleteOnExit();
+			NeuralNetwork rete = new Parser(file.toString()).getNN();
+
+			/* the first layer draws as a single seeded initializer */
+			Assert.assertArrayEquals(weights(new Parser(rete("init=he:42")).getNN()), weights(rete), 0);
+
+			/* the layers with the same seed and shape have different weights */
+			Layer square = rete.getLayers().get(1);
+			Layer output = rete.getLayers().get(2);
+			for (int n=0; n < 100; n++)
+				Assert.assertNotEquals(square.getNeuron(n).getWeight(0), output.getNeuron(n).getWeight(0), 0);
+			Assert.assertNotEquals(rete.getLayers().getFirst().getNeuron(0).getWeight(0), 
+								   square.getNeuron(0).getWeight(0), 0);
+
+			/* and the file still loads the same weights */
+			NeuralNetwork again = new Parser(file.toString()).getNN();
+			Assert.assertEquals(NetworkPatch.checksum(rete), NetworkPatch.checksum(again));
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testReusedSeeded() {
+		try {
+			String file = new File(".").getCanonicalPath() + "/reteSquared";
+			WeightInitializer xavier = WeightInitializer.xavier().seeded(42);
+			long first = NetworkPatch.checksum(new Parser(file).getNN(xavier));
+			Assert.assertEquals(first, NetworkPatch.checksum(new Parser(file).getNN(xavier)));
+
+			/* also from another thread and after a direct use */
+			xavier.weight(10, 10);
+			ExecutorService worker = Executors.newSingleThreadExecutor();
+			long other = worker.submit(() -> NetworkPatch.checksum(new Parser(file).getNN(xavier))).get();
+			worker.shutdown();
+			Assert.assertEquals(first, other);
+
+			/* the default initializer too */
+			IWeightInitializer previous = WeightInitializer.getDefault();
+			WeightInitializer.setDefault(WeightInitializer.he().seeded(7));
+			try {
+				double[] weights = weights(new Parser(rete("")).getNN());
+				Assert.assertArrayEquals(weights, weights(new Parser(rete("")).getNN()), 0);
+			} finally {
+				WeightInitializer.setDefault(previous);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test
+	public void testSchemes() {
+		try {
+			/* he: mean 0, variance 2 / fanIn */
+			NeuralNetwork rete = new Parser(rete("init=he:1")).getNN();
+			double[] w = weights(rete);
+			double sum = 0, squares = 0;
+			for (double v : w) {
+				sum += v;
+				squares += v * v;
+			}
+			double mean = sum / w.length;
+			Assert.assertEquals(0, mean, 0.01);
+			Assert.assertEquals(2.0 / 200, squares / w.length - mean * mean, 0.001);
+			Assert.assertEquals(0, rete.getLayers().getFirst().getNeuron(0).getThreshold(), 0);
+
+			/* xavier: inside sqrt(6 / (fanIn + fanOut)) */
+			double limit = Math.sqrt(6.0 / 300);
+			for (double v : weights(new Parser(rete("init=XAVIER")).getNN()))
+				Assert.assertTrue(v >= -limit && v < limit);
+
+			/* the default keeps the weights in [0, 1) */
+			for (double v : weights(new Parser(rete("")).getNN()))
+				Assert.assertTrue(v >= 0 && v < 1);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail();
+		}
+	}
+
+	@Test(expected = ParserException.class)
+	public void testUnknownScheme() throws Exception {
+		new Parser(rete("init=lecun"));
+	}
+
+}